@@ -20,7 +20,7 @@ import morphology.Morphology;
  * 
  *Class to create simple image based charts (only of the first quadrant)
  *
- *@author rick Oliveira Rodrigues (erickr@id.uff.br)
+ *@author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Chart {
 	private boolean[][] chart;
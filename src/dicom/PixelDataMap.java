@@ -5,7 +5,7 @@ package dicom;
  * 
  * Part of the {@link Dicom} class
  * 
- *  @author rick Oliveira Rodrigues (erickr@id.uff.br).
+ *  @author Érick Oliveira Rodrigues (erickr@id.uff.br).
  */
 public class PixelDataMap {
 	private PixelData rawpixeldata;
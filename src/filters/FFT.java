@@ -0,0 +1,157 @@
+package filters;
+
+import java.util.HashMap;
+
+/**
+ * Fast Fourier transform of complex sequences whose length only has the prime factors 2, 3 and 5 (mixed-radix Cooley-Tukey).
+ * Use {@link #getSize(int)} to find such a length and {@link #getInstance(int)} to get the transform, whose tables are shared.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class FFT {
+	private final static HashMap<Integer, FFT> instances = new HashMap<Integer, FFT>();
+
+	private final int n;
+	private final int[] factors;
+	private final double[] cos, sin;
+
+	private FFT(final int n){
+		this.n = n;
+		int count = 0;
+		for (int m=n; m>1; count++) m /= nextFactor(m);
+		factors = new int[count];
+		for (int m=n, f=0; m>1; f++){
+			factors[f] = nextFactor(m);
+			m /= factors[f];
+		}
+		cos = new double[n]; sin = new double[n];
+		for (int k=0; k<n; k++){
+			cos[k] = Math.cos(2*Math.PI*k/n);
+			sin[k] = Math.sin(2*Math.PI*k/n);
+		}
+	}
+	//radix 4 is preferred, since its butterfly is the cheapest per element
+	private static int nextFactor(final int m){
+		if (m % 4 == 0) return 4;
+		if (m % 2 == 0) return 2;
+		if (m % 3 == 0) return 3;
+		if (m % 5 == 0) return 5;
+		throw new IllegalArgumentException("The length of the FFT must only have the factors 2, 3 and 5: " + m);
+	}
+
+	/**
+	 * Returns the transform of the given length, which must only have the prime factors 2, 3 and 5.
+	 * @param n
+	 * @return
+	 */
+	public static synchronized FFT getInstance(final int n){
+		FFT fft = instances.get(n);
+		if (fft == null){
+			fft = new FFT(n);
+			instances.put(n, fft);
+		}
+		return fft;
+	}
+	/**
+	 * Returns the smallest length greater than or equal to minimum that only has the prime factors 2, 3 and 5.
+	 * @param minimum
+	 * @return
+	 */
+	public static int getSize(final int minimum){
+		for (int size=Math.max(1, minimum); ; size++){
+			int m = size;
+			while (m % 2 == 0) m /= 2;
+			while (m % 3 == 0) m /= 3;
+			while (m % 5 == 0) m /= 5;
+			if (m == 1) return size;
+		}
+	}
+	public int getLength(){return n;}
+
+	/**
+	 * Transforms the elements offset, offset + stride, ..., offset + (n-1)*stride of re and im in place.
+	 * The inverse transform is not divided by n.
+	 * @param re
+	 * @param im
+	 * @param offset
+	 * @param stride
+	 * @param inverse
+	 * @param work - array with at least 4*n positions
+	 */
+	public void transform(final double[] re, final double[] im, final int offset, final int stride, final boolean inverse, final double[] work){
+		if (n == 1) return;
+		for (int k=0; k<n; k++){
+			work[k] = re[offset + k*stride];
+			work[n + k] = im[offset + k*stride];
+		}
+		transform(work, 0, 1, work, 2*n, n, 0, inverse ? 1 : -1);
+		for (int k=0; k<n; k++){
+			re[offset + k*stride] = work[2*n + k];
+			im[offset + k*stride] = work[3*n + k];
+		}
+	}
+
+	private final static double SIN_60 = Math.sqrt(3)/2,
+			COS_72 = Math.cos(2*Math.PI/5), SIN_72 = Math.sin(2*Math.PI/5), COS_144 = Math.cos(4*Math.PI/5), SIN_144 = Math.sin(4*Math.PI/5);
+
+	/**
+	 * Transforms m elements of in (real parts at inOffset, imaginary parts n positions later) into out, recursively.
+	 */
+	private void transform(final double[] in, final int inOffset, final int inStride, final double[] out, final int outOffset,
+			final int m, final int factor, final int sign){
+		final int p = factors[factor], length = m/p, step = n/m;
+		if (length == 1){
+			for (int q=0; q<p; q++){
+				out[outOffset + q] = in[inOffset + q*inStride];
+				out[outOffset + q + n] = in[inOffset + q*inStride + n];
+			}
+		}else{
+			for (int q=0; q<p; q++) transform(in, inOffset + q*inStride, inStride*p, out, outOffset + q*length, length, factor + 1, sign);
+		}
+
+		for (int k=0; k<length; k++){
+			//twiddled inputs of the butterfly
+			final int a0 = outOffset + k, a1 = a0 + length, a2 = a1 + length, a3 = a2 + length, a4 = a3 + length;
+			final double r0 = out[a0], i0 = out[a0 + n];
+			int w = k*step;
+			double r1 = out[a1]*cos[w] - out[a1 + n]*sign*sin[w], i1 = out[a1]*sign*sin[w] + out[a1 + n]*cos[w];
+			if (p == 2){
+				out[a0] = r0 + r1; out[a0 + n] = i0 + i1;
+				out[a1] = r0 - r1; out[a1 + n] = i0 - i1;
+				continue;
+			}
+			w += k*step;
+			final double r2 = out[a2]*cos[w] - out[a2 + n]*sign*sin[w], i2 = out[a2]*sign*sin[w] + out[a2 + n]*cos[w];
+			if (p == 3){
+				final double sr = r1 + r2, si = i1 + i2, dr = sign*SIN_60*(r1 - r2), di = sign*SIN_60*(i1 - i2);
+				out[a0] = r0 + sr; out[a0 + n] = i0 + si;
+				out[a1] = r0 - sr/2 - di; out[a1 + n] = i0 - si/2 + dr;
+				out[a2] = r0 - sr/2 + di; out[a2 + n] = i0 - si/2 - dr;
+				continue;
+			}
+			w += k*step;
+			final double r3 = out[a3]*cos[w] - out[a3 + n]*sign*sin[w], i3 = out[a3]*sign*sin[w] + out[a3 + n]*cos[w];
+			if (p == 4){
+				final double sr = r0 + r2, si = i0 + i2, dr = r0 - r2, di = i0 - i2,
+						tr = r1 + r3, ti = i1 + i3, ur = sign*(r1 - r3), ui = sign*(i1 - i3);
+				out[a0] = sr + tr; out[a0 + n] = si + ti;
+				out[a1] = dr - ui; out[a1 + n] = di + ur;
+				out[a2] = sr - tr; out[a2 + n] = si - ti;
+				out[a3] = dr + ui; out[a3 + n] = di - ur;
+				continue;
+			}
+			w += k*step;
+			final double r4 = out[a4]*cos[w] - out[a4 + n]*sign*sin[w], i4 = out[a4]*sign*sin[w] + out[a4 + n]*cos[w];
+			final double ar1 = r1 + r4, ai1 = i1 + i4, br1 = r1 - r4, bi1 = i1 - i4,
+					ar2 = r2 + r3, ai2 = i2 + i3, br2 = r2 - r3, bi2 = i2 - i3;
+			final double cr1 = r0 + COS_72*ar1 + COS_144*ar2, ci1 = i0 + COS_72*ai1 + COS_144*ai2,
+					cr2 = r0 + COS_144*ar1 + COS_72*ar2, ci2 = i0 + COS_144*ai1 + COS_72*ai2;
+			final double er1 = sign*(SIN_72*br1 + SIN_144*br2), ei1 = sign*(SIN_72*bi1 + SIN_144*bi2),
+					er2 = sign*(SIN_144*br1 - SIN_72*br2), ei2 = sign*(SIN_144*bi1 - SIN_72*bi2);
+			out[a0] = r0 + ar1 + ar2; out[a0 + n] = i0 + ai1 + ai2;
+			out[a1] = cr1 - ei1; out[a1 + n] = ci1 + er1;
+			out[a4] = cr1 + ei1; out[a4 + n] = ci1 - er1;
+			out[a2] = cr2 - ei2; out[a2 + n] = ci2 + er2;
+			out[a3] = cr2 + ei2; out[a3 + n] = ci2 - er2;
+		}
+	}
+}
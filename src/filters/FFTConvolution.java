@@ -0,0 +1,147 @@
+package filters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Convolution in the frequency domain, whose cost per pixel does not depend on the size of the kernel. The spectrum of the kernel
+ * is kept for each size of transform, so filtering images (or blocks of rows) of the same size again only transforms the image.
+ * The result is the same of the spatial loop of the filters, i.e., the sum of buffer.get(x - width/2 + j, y - height/2 + i)*kernel[i][j],
+ * with the boundaries handled by the halo of the {@link PaddedBuffer}.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class FFTConvolution {
+	//number of taps above which the transform is faster than the spatial convolution (measured on 512x512 images),
+	//which for separable kernels is the width plus the height
+	private final static int AREA_THRESHOLD = 15*15, SEPARABLE_THRESHOLD = 300;
+	private final static int MAX_SPECTRA = 8;
+
+	private final double[][] kernel;
+	private final int halfX, halfY;
+	private final HashMap<Long, double[]> spectra = new HashMap<Long, double[]>();
+
+	/**
+	 * @param kernel - it is copied, so the convolution is not affected by later changes to it
+	 */
+	public FFTConvolution(final double[][] kernel){
+		this.kernel = new double[kernel.length][];
+		for (int i=0; i<kernel.length; i++) this.kernel[i] = kernel[i].clone();
+		this.halfX = kernel[0].length/2;
+		this.halfY = kernel.length/2;
+	}
+
+	/**
+	 * Checks whether this convolution uses the same kernel, in which case it can be kept along with its spectra.
+	 * @param kernel
+	 * @return
+	 */
+	public boolean hasKernel(final double[][] kernel){
+		return Arrays.deepEquals(this.kernel, kernel);
+	}
+
+	/**
+	 * Tells whether the convolution with a kernel of this size is faster in the frequency domain.
+	 * @param kernelWidth
+	 * @param kernelHeight
+	 * @param separable - whether the kernel would otherwise be convolved with {@link SeparableConvolution}
+	 * @return
+	 */
+	public static boolean isFaster(final int kernelWidth, final int kernelHeight, final boolean separable){
+		if (separable) return kernelWidth + kernelHeight > SEPARABLE_THRESHOLD;
+		return kernelWidth*kernelHeight > AREA_THRESHOLD;
+	}
+
+	/**
+	 * Convolves the rows minY (inclusive) to maxY (exclusive) of a padded band and stores them in dst one after the other.
+	 * @param buffer - padded band whose halo is at least half the size of the kernel
+	 * @param width - width of the band
+	 * @param minY
+	 * @param maxY
+	 * @param dst - array with at least (maxY - minY)*width positions
+	 */
+	public void convolve(final PaddedBuffer buffer, final int width, final int minY, final int maxY, final double[] dst){
+		convolve(new FFTConvolution[]{this}, buffer, width, minY, maxY, new double[][]{dst});
+	}
+
+	/**
+	 * Convolves the same rows with several kernels of the same size, transforming the band only once.
+	 * @param convolutions
+	 * @param buffer
+	 * @param width
+	 * @param minY
+	 * @param maxY
+	 * @param dst - one array per convolution
+	 */
+	public static void convolve(final FFTConvolution[] convolutions, final PaddedBuffer buffer, final int width, final int minY, final int maxY,
+			final double[][] dst){
+		final int halfX = convolutions[0].halfX, halfY = convolutions[0].halfY, rows = maxY - minY;
+		final int sizeX = FFT.getSize(width + 2*halfX), sizeY = FFT.getSize(rows + 2*halfY);
+		final double[] re = new double[sizeX*sizeY], im = new double[sizeX*sizeY];
+		for (int i=0; i<rows + 2*halfY; i++)
+			for (int j=0; j<width + 2*halfX; j++)
+				re[i*sizeX + j] = buffer.get(j - halfX, minY - halfY + i);
+		transform(re, im, sizeX, sizeY, false, 0, rows + 2*halfY);
+
+		//two real results are obtained from a single inverse transform, as the real and the imaginary parts
+		final double scale = 1d/(sizeX*sizeY);
+		final double[] outRe = new double[re.length], outIm = new double[re.length];
+		for (int c=0; c<convolutions.length; c+=2){
+			final double[] a = convolutions[c].getSpectrum(sizeX, sizeY),
+					b = (c + 1 < convolutions.length) ? convolutions[c + 1].getSpectrum(sizeX, sizeY) : null;
+			for (int k=0; k<re.length; k++){
+				final int l = k + re.length;
+				outRe[k] = re[k]*a[k] - im[k]*a[l];
+				outIm[k] = re[k]*a[l] + im[k]*a[k];
+				if (b != null){
+					outRe[k] -= re[k]*b[l] + im[k]*b[k];
+					outIm[k] += re[k]*b[k] - im[k]*b[l];
+				}
+			}
+			transform(outRe, outIm, sizeX, sizeY, true, halfY, halfY + rows);
+			for (int i=0; i<rows; i++){
+				for (int j=0; j<width; j++){
+					final int k = (i + halfY)*sizeX + j + halfX;
+					dst[c][i*width + j] = outRe[k]*scale;
+					if (b != null) dst[c + 1][i*width + j] = outIm[k]*scale;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the transform of the flipped kernel, wrapped around the origin, with the real parts followed by the imaginary parts.
+	 */
+	private synchronized double[] getSpectrum(final int sizeX, final int sizeY){
+		final Long key = ((long) sizeX << 32) | sizeY;
+		double[] spectrum = spectra.get(key);
+		if (spectrum != null) return spectrum;
+		final int size = sizeX*sizeY;
+		final double[] re = new double[size], im = new double[size];
+		for (int i=0; i<kernel.length; i++){
+			for (int j=0; j<kernel[0].length; j++){
+				final int x = (sizeX - (j - halfX)) % sizeX, y = (sizeY - (i - halfY)) % sizeY;
+				re[y*sizeX + x] += kernel[i][j];
+			}
+		}
+		transform(re, im, sizeX, sizeY, false, 0, sizeY);
+		spectrum = new double[2*size];
+		System.arraycopy(re, 0, spectrum, 0, size);
+		System.arraycopy(im, 0, spectrum, size, size);
+		if (spectra.size() >= MAX_SPECTRA) spectra.clear();
+		spectra.put(key, spectrum);
+		return spectrum;
+	}
+
+	/**
+	 * Transforms the rows and the columns. Only the rows minRow to maxRow (exclusive) are transformed, which must be the only
+	 * non-zero rows of a forward transform or the only rows needed from an inverse transform.
+	 */
+	private static void transform(final double[] re, final double[] im, final int sizeX, final int sizeY, final boolean inverse,
+			final int minRow, final int maxRow){
+		final FFT rows = FFT.getInstance(sizeX), columns = FFT.getInstance(sizeY);
+		final double[] work = new double[4*Math.max(sizeX, sizeY)];
+		if (inverse) for (int j=0; j<sizeX; j++) columns.transform(re, im, j, sizeX, true, work);
+		for (int i=minRow; i<maxRow; i++) rows.transform(re, im, i*sizeX, 1, inverse, work);
+		if (!inverse) for (int j=0; j<sizeX; j++) columns.transform(re, im, j, sizeX, false, work);
+	}
+}
@@ -1,9 +1,35 @@
 package filters;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import image.Image;
+import image.Image.StorageType;
+
+import static image.Image.StorageType.*;
 
 public abstract class Filter {
+	/**
+	 * Minimum number of pixels of an image for it to be filtered by several threads.
+	 */
+	public final static int PARALLEL_THRESHOLD = 1 << 15;
+	//number of pixels filtered at once by getFilteredRows when a single thread is used
+	private final static int BLOCK_SIZE = 1 << 16;
+	private static ExecutorService defaultExecutor = null;
+	//true in the threads that are filtering rows, so filters applied from inside them are not split again
+	private final static ThreadLocal<Boolean> filtering = new ThreadLocal<Boolean>();
+
 	protected boolean update = true;
+	private ExecutorService executor = null;
+	//neighbourhood padded by getPaddedNeighbourhood, reused by each thread
+	private final ThreadLocal<PaddedBuffer> neighbourhood = new ThreadLocal<PaddedBuffer>();
+	private boolean parallel = true;
 	
 	public Filter(){
 		
@@ -18,23 +44,218 @@ public abstract class Filter {
 		return applyFilter(image);
 	}
 	public Image applyFilter(final Image image) {
-		Image out = new Image(image.getWidth(), image.getHeight(), image.getNumBands(), 32, true);
+		Image out = new Image(image.getWidth(), image.getHeight(), image.getNumBands(), 32, true, image.getStorageType());
 		this.setImage(image);
+		if (image.getStorageType() == STORAGE_SPARSE && this.getKernelRadius() >= 0) return applyFilterSparse(image, out);
+		this.prepare();
+		try{
+			final ExecutorService executor = this.getExecutor(image);
+			final int width = image.getWidth(), height = image.getHeight();
+			final double[] row = new double[width];
+			final int radius = this.getKernelRadius();
+			//local filters read the neighbours from a copy of each block of rows whose halo is filled once, so the band is never copied as a whole
+			final PaddedBuffer buffer = (radius >= 0) ? new PaddedBuffer() : null;
+			for (int b=0; b<image.getNumBands(); b++){
+				if (executor != null){
+					filterRowsInParallel(executor, radius, b, out);
+					continue;
+				}
+				final int rowsPerBlock = Math.min(height, Math.max(Math.max(1, BLOCK_SIZE/Math.max(1, width)), 4*radius));
+				final double[] block = new double[rowsPerBlock*width];
+				for (int y=0; y<height; y+=rowsPerBlock){
+					final int maxY = Math.min(height, y + rowsPerBlock);
+					if (buffer != null) buffer.fill(image, b, radius, 0, y, width, maxY - y);
+					getFilteredRows(buffer, b, y, maxY, block);
+					for (int i=y; i<maxY; i++){
+						System.arraycopy(block, (i - y)*width, row, 0, width);
+						out.setRow(i, b, row);
+					}
+				}
+			}
+			return out;
+		}finally{
+			this.release();
+		}
+	}
+
+	/**
+	 * Filters the rows minY (inclusive) to maxY (exclusive) of the band into dst, one row after the other.
+	 * The default implementation calls {@link #getFilteredPixel(PaddedBuffer, int, int, int)} for every pixel, or
+	 * {@link #getFilteredPixel(int, int, int)} if buffer is null. Filters that compute whole rows faster (e.g., separable
+	 * convolutions) override it, falling back to it when buffer is null.
+	 * @param buffer - the padded rows minY to maxY of the band, null if the filter is not local
+	 * @param band
+	 * @param minY
+	 * @param maxY
+	 * @param dst - array with at least (maxY - minY)*width positions
+	 */
+	protected void getFilteredRows(final PaddedBuffer buffer, final int band, final int minY, final int maxY, final double[] dst){
+		final int width = this.image.getWidth();
+		int k = 0;
+		for (int i=minY; i<maxY; i++){
+			for (int j=0; j<width; j++, k++)
+				dst[k] = (buffer != null) ? getFilteredPixel(buffer, j, i, band) : getFilteredPixel(j, i, band);
+		}
+	}
+	/**
+	 * Splits the band in groups of rows filtered by the executor, each one padding its own rows if radius is not negative.
+	 * Only the calling thread writes to the output image.
+	 */
+	private void filterRowsInParallel(final ExecutorService executor, final int radius, final int band, final Image out){
+		final int width = out.getWidth(), height = out.getHeight();
+		final int tasks = 4*Runtime.getRuntime().availableProcessors();
+		final int rowsPerTask = Math.max(Math.max((height + tasks - 1)/tasks, Math.max(1, PARALLEL_THRESHOLD/(16*width))), 4*this.getKernelRadius());
+		final List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+		for (int y=0; y<height; y+=rowsPerTask){
+			final int minY = y, maxY = Math.min(height, y + rowsPerTask);
+			results.add(executor.submit(new Callable<double[]>(){
+				@Override
+				public double[] call() {
+					filtering.set(Boolean.TRUE);
+					try{
+						final double[] dst = new double[(maxY - minY)*width];
+						final PaddedBuffer buffer = (radius >= 0) ? new PaddedBuffer(image, band, radius, 0, minY, width, maxY - minY) : null;
+						getFilteredRows(buffer, band, minY, maxY, dst);
+						return dst;
+					}finally{
+						filtering.remove();
+					}
+				}
+			}));
+		}
+		final double[] row = new double[width];
+		try{
+			for (int t=0; t<results.size(); t++){
+				final double[] dst = results.get(t).get();
+				for (int k=0; k*width<dst.length; k++){
+					System.arraycopy(dst, k*width, row, 0, width);
+					out.setRow(t*rowsPerTask + k, band, row);
+				}
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}catch (ExecutionException e){
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}finally{
+			for (int t=0; t<results.size(); t++) results.get(t).cancel(true);
+		}
+	}
+
+	/**
+	 * Returns the executor that should filter the image, or null if it must be filtered by the calling thread.
+	 */
+	private ExecutorService getExecutor(final Image image){
+		if (!parallel || !this.isReentrant() || Boolean.TRUE.equals(filtering.get())) return null;
+		if ((long) image.getWidth()*image.getHeight() < PARALLEL_THRESHOLD) return null;
+		if (executor == null && Runtime.getRuntime().availableProcessors() < 2) return null;
+		if (image.getBoundaryOperation() == Image.BoundaryOperationType.BOUNDARY_AVERAGE){
+			//computes the averages read by getPixelBoundaryMode before the threads start
+			for (int b=0; b<image.getNumBands(); b++) image.getStatistics(b);
+		}
+		return (executor != null) ? executor : getDefaultExecutor();
+	}
+
+	/**
+	 * Filters a {@link StorageType#STORAGE_SPARSE} image tile by tile. A tile whose neighbourhood was never written is constant,
+	 * so its filtered value is computed just once and, if it is 0, the tile is not even allocated in the output.
+	 */
+	private Image applyFilterSparse(final Image image, final Image out){
+		final int tileSize = image.getTileSize(), radius = this.getKernelRadius();
 		for (int b=0; b<image.getNumBands(); b++){
-			for(int i=0; i<image.getHeight(); i++){
-				for (int j=0; j<image.getWidth(); j++){
-					out.setPixel(j, i, b, getFilteredPixel(j, i, b));
-					//System.out.println(getFilteredPixel(image, j, i, b));
+			for (int y0=0; y0<image.getHeight(); y0+=tileSize){
+				for (int x0=0; x0<image.getWidth(); x0+=tileSize){
+					final int x1 = Math.min(image.getWidth(), x0 + tileSize), y1 = Math.min(image.getHeight(), y0 + tileSize);
+					final boolean inside = x0 - radius >= 0 && y0 - radius >= 0 && x1 + radius <= image.getWidth() && y1 + radius <= image.getHeight();
+					if (inside && image.isRegionEmpty(x0 - radius, y0 - radius, x1 - x0 + 2*radius, y1 - y0 + 2*radius, b)){
+						final double value = getFilteredPixel(x0, y0, b);
+						if (value == 0) continue;
+						for (int i=y0; i<y1; i++)
+							for (int j=x0; j<x1; j++)
+								out.setPixel(j, i, b, value);
+						continue;
+					}
+					for (int i=y0; i<y1; i++)
+						for (int j=x0; j<x1; j++)
+							out.setPixel(j, i, b, getFilteredPixel(j, i, b));
 				}
 			}
 		}
 		return out;
 	}
-	
+
+	/**
+	 * Returns the radius of the neighbourhood read around each pixel by {@link #getFilteredPixel(Image, int, int, int)}, or -1 if the filter
+	 * is not local (e.g., it depends on other images or on statistics of the whole image). Local filters should override it, so that empty
+	 * areas of sparse images can be skipped.
+	 * @return
+	 */
+	public int getKernelRadius(){return -1;}
+
+	/**
+	 * Tells whether {@link #getFilteredPixel(Image, int, int, int)} and {@link #getFilteredPixel(PaddedBuffer, int, int, int)} can be
+	 * called by several threads at once, after {@link #prepare()}. Filters that cache images or modify their fields while filtering
+	 * must return false, which is the default, and are then applied by the calling thread only.
+	 * @return
+	 */
+	public boolean isReentrant(){return false;}
+	/**
+	 * Tells whether {@link #getFilteredRows(PaddedBuffer, int, int, int, double[])} reads the pixels only from the padded band, using the
+	 * image set by {@link #setImage(Image)} only for its size and boundaries, and whether {@link #applyFilter(Image)} does nothing else
+	 * with the result (e.g., stretching its range). {@link FilterChain} streams such filters without creating the images in between.
+	 * Default is false.
+	 * @return
+	 */
+	public boolean isStreamable(){return false;}
+	/**
+	 * Called by {@link #applyFilter(Image)} before the pixels are filtered, so that filters can build what they would otherwise
+	 * build lazily from {@link #getFilteredPixel(Image, int, int, int)} (e.g., their kernels).
+	 */
+	protected void prepare(){}
+	/**
+	 * Called by {@link #applyFilter(Image)} once the pixels are filtered, so that filters can drop what {@link #prepare()} built from the
+	 * pixels of the image, which may change afterwards.
+	 */
+	protected void release(){}
+
+	/**
+	 * Sets the executor that filters the rows of large images in parallel when the filter {@link #isReentrant()}.
+	 * If null, a pool shared by all filters with one thread per processor is used.
+	 * @param executor
+	 */
+	public void setExecutor(final ExecutorService executor){this.executor = executor;}
+	/**
+	 * Enables or disables the parallel filtering of large images. Enabled by default.
+	 * @param parallel
+	 */
+	public void setParallel(final boolean parallel){this.parallel = parallel;}
+	public boolean isParallel(){return parallel;}
+	/**
+	 * Replaces the executor shared by the filters that have none set with {@link #setExecutor(ExecutorService)}.
+	 * @param executor
+	 */
+	public static synchronized void setDefaultExecutor(final ExecutorService executor){defaultExecutor = executor;}
+	public static synchronized ExecutorService getDefaultExecutor(){
+		if (defaultExecutor == null){
+			defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+				private int count = 0;
+				@Override
+				public synchronized Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "filter-" + (count++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return defaultExecutor;
+	}
+
 	/**
 	 * Sets the image associated to the filter.
 	 * @param image - the associated image.
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setImage(Image image){
 		this.image = image;
@@ -50,6 +271,37 @@ public abstract class Filter {
 	
 	
 	public abstract double getFilteredPixel(final Image image, final int x, final int y, final int band);
+	/**
+	 * Filters the pixel reading its neighbours from a {@link PaddedBuffer} of the band, whose halo is at least {@link #getKernelRadius()}.
+	 * Used by {@link #applyFilter(Image)} for local filters. Filters that override it usually implement
+	 * {@link #getFilteredPixel(Image, int, int, int)} with {@link #getPaddedNeighbourhood(Image, int, int, int)}.
+	 * @param buffer
+	 * @param x
+	 * @param y
+	 * @param band
+	 * @return
+	 */
+	public double getFilteredPixel(final PaddedBuffer buffer, final int x, final int y, final int band){
+		return this.getFilteredPixel(this.image, x, y, band);
+	}
+	
+	/**
+	 * Pads the neighbourhood of radius {@link #getKernelRadius()} around the pixel, in a buffer that the calling thread reuses from one
+	 * call to the next, so filtering pixel by pixel does not allocate a buffer for each one. The buffer is only valid until the next call.
+	 * @param image
+	 * @param band
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	protected PaddedBuffer getPaddedNeighbourhood(final Image image, final int band, final int x, final int y){
+		PaddedBuffer buffer = neighbourhood.get();
+		if (buffer == null){
+			buffer = new PaddedBuffer();
+			neighbourhood.set(buffer);
+		}
+		return buffer.fill(image, band, getKernelRadius(), x, y, 1, 1);
+	}
 	
 	public Image getOriginalImage(){return this.image;}
 	public Image getFilteredImage(){return this.applyFilter(this.image);}
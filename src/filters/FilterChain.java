@@ -0,0 +1,158 @@
+package filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import image.Image;
+
+import static image.Image.BoundaryOperationType.*;
+import static image.Image.StorageType.*;
+
+/**
+ * Applies several filters one after the other as a single filter. The result is the same of applying them with
+ * {@link Image#applyFilter(Filter)}, i.e., every filter sees the boundaries of the original image.
+ * If all of them are streamable (see {@link Filter#isStreamable()}), each block of rows goes through all the filters, so the images
+ * in between are never created and only the rows read by the next filter (its halo included) are kept. Otherwise, or if the boundaries
+ * are {@link Image.BoundaryOperationType#BOUNDARY_MODULE} or {@link Image.BoundaryOperationType#BOUNDARY_AVERAGE} (without a background
+ * color), which read rows far from the block, the filters are applied one after the other.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class FilterChain extends Filter {
+	private final List<Filter> filters = new ArrayList<Filter>();
+
+	public FilterChain(){
+
+	}
+	public FilterChain(final Filter... filters){
+		for (int k=0; k<filters.length; k++) add(filters[k]);
+	}
+	public FilterChain(final Image image, final Filter... filters){
+		this(filters);
+		this.setImage(image);
+	}
+
+	/**
+	 * Adds a filter to the end of the chain.
+	 * @param filter
+	 * @return this
+	 */
+	public FilterChain add(final Filter filter){
+		filters.add(filter);
+		return this;
+	}
+	public List<Filter> getFilters(){return Collections.unmodifiableList(filters);}
+
+	@Override
+	public boolean isStreamable(){
+		for (int k=0; k<filters.size(); k++)
+			if (!filters.get(k).isStreamable() || filters.get(k).getKernelRadius() < 0) return false;
+		return true;
+	}
+	@Override
+	public boolean isReentrant(){
+		for (int k=0; k<filters.size(); k++)
+			if (!filters.get(k).isReentrant()) return false;
+		return true;
+	}
+	/**
+	 * Returns the sum of the radii of the filters, which are all read from the original image, or -1 if they are not streamable.
+	 */
+	@Override
+	public int getKernelRadius(){
+		if (!isStreamable()) return -1;
+		int radius = 0;
+		for (int k=0; k<filters.size(); k++) radius += filters.get(k).getKernelRadius();
+		return radius;
+	}
+	@Override
+	protected void prepare(){
+		for (int k=0; k<filters.size(); k++){
+			filters.get(k).setImage(image);
+			filters.get(k).prepare();
+		}
+	}
+	@Override
+	protected void release(){
+		for (int k=0; k<filters.size(); k++) filters.get(k).release();
+	}
+
+	/**
+	 * Tells whether the image can be filtered block by block.
+	 */
+	private boolean canStream(final Image image){
+		if (!isStreamable() || image.getStorageType() == STORAGE_SPARSE) return false;
+		return image.getBackgroundColor() != null || image.getBoundaryOperation() == BOUNDARY_REFLECT;
+	}
+
+	@Override
+	public Image applyFilter(final Image image){
+		if (canStream(image)) return super.applyFilter(image);
+		this.setImage(image);
+		if (filters.isEmpty()) return image.clone();
+		Image result = image;
+		for (int k=0; k<filters.size(); k++){
+			result = filters.get(k).applyFilter(result);
+			if (k < filters.size() - 1){
+				result.setBoundaryOperation(image.getBoundaryOperation());
+				result.setBackgroundColor(image.getBackgroundColor());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Filters the row of the pixel through all the filters, or the whole image if it cannot be streamed, so it is much slower than
+	 * filtering the whole image with {@link #applyFilter(Image)}.
+	 */
+	@Override
+	public double getFilteredPixel(Image image, int x, int y, int band) {
+		if (!canStream(image)) return applyFilter(image).getPixel(x, y, band);
+		this.setImage(image);
+		this.prepare();
+		try{
+			final double[] row = new double[image.getWidth()];
+			getFilteredRows(new PaddedBuffer(image, band, getKernelRadius(), 0, y, image.getWidth(), 1), band, y, y + 1, row);
+			return row[x];
+		}finally{
+			this.release();
+		}
+	}
+
+	@Override
+	protected void getFilteredRows(final PaddedBuffer buffer, final int band, final int minY, final int maxY, final double[] dst){
+		final int n = filters.size(), width = image.getWidth(), height = image.getHeight();
+		if (buffer == null){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		if (n == 0){
+			for (int i=minY; i<maxY; i++) System.arraycopy(buffer.getData(), buffer.getIndex(0, i), dst, (i - minY)*width, width);
+			return;
+		}
+		//rows computed by each filter, from the last one backwards: the ones read by the next filter, mapped by the boundaries
+		final int[] first = new int[n], last = new int[n];
+		first[n - 1] = minY; last[n - 1] = maxY;
+		final boolean background = image.getBackgroundColor() != null;
+		for (int k=n - 2; k>=0; k--){
+			final int radius = filters.get(k + 1).getKernelRadius();
+			first[k] = Integer.MAX_VALUE; last[k] = Integer.MIN_VALUE;
+			for (int y=first[k + 1] - radius; y<last[k + 1] + radius; y++){
+				if (background && (y < 0 || y >= height)) continue;
+				final int row = Image.getBoundaryCoordinate(y, height, image.getBoundaryOperation());
+				first[k] = Math.min(first[k], row);
+				last[k] = Math.max(last[k], row + 1);
+			}
+		}
+		//the first filter reads the original image, the others the rows computed by the previous one
+		PaddedBuffer input = buffer;
+		double[] rows = null;
+		for (int k=0; k<n; k++){
+			final Filter filter = filters.get(k);
+			if (k > 0) input = new PaddedBuffer().fill(image, band, rows, first[k - 1], filter.getKernelRadius(), first[k], last[k] - first[k]);
+			final double[] out = (k == n - 1) ? dst : new double[(last[k] - first[k])*width];
+			filter.getFilteredRows(input, band, first[k], last[k], out);
+			rows = out;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package filters;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable kernel whose values are stored row after row. The kernels built by the filters (Gaussian, Gabor and the Hessian of a Gaussian)
+ * are shared by all the instances through a cache keyed by their type and parameters, so short-lived filters with the same parameters
+ * compute them only once. The least recently used kernels are discarded when the cache holds more than {@link #MAX_CACHED_VALUES} values.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public final class Kernel {
+	/**
+	 * Maximum number of values of all the kernels kept by the cache.
+	 */
+	public final static int MAX_CACHED_VALUES = 1 << 21;
+	private final static LinkedHashMap<String, Kernel> cache = new LinkedHashMap<String, Kernel>(16, 0.75f, true);
+	private static int cachedValues = 0;
+
+	private final int width, height;
+	private final double[] values;
+	private final double sum;
+
+	private Kernel(final int width, final int height, final double[] values){
+		this.width = width;
+		this.height = height;
+		this.values = values;
+		double sum = 0;
+		for (int k=0; k<values.length; k++) sum += values[k];
+		this.sum = sum;
+	}
+
+	/**
+	 * Returns the kernel amplitude*exp(-(x*x/(2*spreadX*spreadX) + y*y/(2*spreadY*spreadY))) of size (2*(width/2) + 1) x (2*(height/2) + 1),
+	 * centered at (0,0).
+	 * @param width
+	 * @param height
+	 * @param amplitude
+	 * @param spreadX
+	 * @param spreadY
+	 * @return
+	 */
+	public static Kernel getGaussian(final int width, final int height, final double amplitude, final double spreadX, final double spreadY){
+		final String key = "Gaussian " + width + " " + height + " " + amplitude + " " + spreadX + " " + spreadY;
+		final Kernel cached = getCached(key);
+		if (cached != null) return cached;
+		final int halfX = width/2, halfY = height/2, w = 2*halfX + 1, h = 2*halfY + 1;
+		final double[] values = new double[w*h];
+		for (int i=0; i<h; i++)
+			for (int j=0; j<w; j++)
+				values[i*w + j] = amplitude*Math.exp( -( (Math.pow(j - halfX, 2)/(2*Math.pow(spreadX,2))) + (Math.pow(i - halfY, 2)/(2*Math.pow(spreadY, 2))) ));
+		return putCached(key, new Kernel(w, h, values));
+	}
+
+	/**
+	 * Returns the Gabor kernel, i.e., the Gaussian of spreads spreadX and spreadY times the stripes 4*PI*(y*cos(orientation) + x*sin(orientation) + offset),
+	 * of size (2*(width/2) + 1) x (2*(height/2) + 1), centered at (0,0).
+	 * @param width
+	 * @param height
+	 * @param spreadX
+	 * @param spreadY
+	 * @param orientation - in radians
+	 * @param offset
+	 * @return
+	 */
+	public static Kernel getGabor(final int width, final int height, final double spreadX, final double spreadY, final double orientation,
+			final double offset){
+		final String key = "Gabor " + width + " " + height + " " + spreadX + " " + spreadY + " " + orientation + " " + offset;
+		final Kernel cached = getCached(key);
+		if (cached != null) return cached;
+		final int halfX = width/2, halfY = height/2, w = 2*halfX + 1, h = 2*halfY + 1;
+		final double[] values = new double[w*h];
+		for (int i=0; i<h; i++){
+			for (int j=0; j<w; j++){
+				final int x = j - halfX, y = i - halfY;
+				values[i*w + j] = Math.exp(- (Math.pow(x, 2)/(2*Math.pow(spreadX, 2)) + Math.pow(y, 2)/(2*Math.pow(spreadY, 2)))) /*gaussian*/ *
+						2*Math.PI*2*(y*Math.cos(orientation) + x*Math.sin(orientation) + offset) /*stripes*/;
+			}
+		}
+		return putCached(key, new Kernel(w, h, values));
+	}
+
+	/**
+	 * Returns the second derivatives {xx, xy, yy} of the Gaussian of spread sigma, truncated at round(3*sigma) pixels from the center.
+	 * @param sigma
+	 * @return
+	 */
+	public static Kernel[] getHessian(final float sigma){
+		final String key = "Hessian " + sigma;
+		final Kernel xx = getCached(key + " xx"), xy = getCached(key + " xy"), yy = getCached(key + " yy");
+		if (xx != null && xy != null && yy != null) return new Kernel[]{xx, xy, yy};
+		final int half = Math.round(3*sigma), size = 2*half + 1;
+		final double[][] values = new double[3][size*size];
+		for (int x = -half; x <= half; x++){
+			for (int y = -half; y <= half; y++){
+				final int k = (y + half)*size + x + half;
+				values[0][k] = 1.0f/(2.0f*Math.PI*sigma*sigma*sigma*sigma) * (x*x/(sigma*sigma) - 1) * Math.exp(-(x*x + y*y)/(2.0f*sigma*sigma));
+				values[1][k] = 1.0f/(2.0f*Math.PI*sigma*sigma*sigma*sigma*sigma*sigma)*(x*y)*Math.exp(-(x*x + y*y)/(2.0f*sigma*sigma));
+			}
+		}
+		//yy is xx transposed
+		for (int i=0; i<size; i++)
+			for (int j=0; j<size; j++)
+				values[2][i*size + j] = values[0][j*size + i];
+		return new Kernel[]{putCached(key + " xx", new Kernel(size, size, values[0])), putCached(key + " xy", new Kernel(size, size, values[1])),
+				putCached(key + " yy", new Kernel(size, size, values[2]))};
+	}
+
+	private static synchronized Kernel getCached(final String key){
+		return cache.get(key);
+	}
+	//keeps the kernel computed first if another thread computed the same one meanwhile
+	private static synchronized Kernel putCached(final String key, final Kernel kernel){
+		final Kernel cached = cache.get(key);
+		if (cached != null) return cached;
+		cache.put(key, kernel);
+		cachedValues += kernel.values.length;
+		for (Iterator<Map.Entry<String, Kernel>> it=cache.entrySet().iterator(); cachedValues > MAX_CACHED_VALUES && it.hasNext();){
+			final Kernel eldest = it.next().getValue();
+			if (eldest == kernel) continue;
+			cachedValues -= eldest.values.length;
+			it.remove();
+		}
+		return kernel;
+	}
+	/**
+	 * Empties the cache.
+	 */
+	public static synchronized void clearCache(){
+		cache.clear();
+		cachedValues = 0;
+	}
+
+	public int getWidth(){return width;}
+	public int getHeight(){return height;}
+	/**
+	 * Returns the value at column x and row y, (0,0) being the top left corner.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public double get(final int x, final int y){
+		return values[y*width + x];
+	}
+	/**
+	 * Returns the sum of the values, added row after row.
+	 * @return
+	 */
+	public double getSum(){return sum;}
+	/**
+	 * Returns a copy of the values, row after row.
+	 * @return
+	 */
+	public double[] getValues(){return values.clone();}
+	/**
+	 * Returns a copy of the values as an array of rows, which can be modified.
+	 * @return
+	 */
+	public double[][] toArray(){
+		final double[][] array = new double[height][width];
+		for (int i=0; i<height; i++) System.arraycopy(values, i*width, array[i], 0, width);
+		return array;
+	}
+
+	@Override
+	public String toString(){
+		return toString(toArray());
+	}
+	/**
+	 * Formats a kernel with a row per line, as it is printed by the filters.
+	 * @param kernel
+	 * @return
+	 */
+	public static String toString(final double[][] kernel){
+		final StringBuilder builder = new StringBuilder();
+		for (int i=0; i<kernel.length; i++){
+			for (int j=0; j<kernel[i].length; j++) builder.append(kernel[i][j]).append(' ');
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+}
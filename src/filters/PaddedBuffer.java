@@ -0,0 +1,124 @@
+package filters;
+
+import java.util.Arrays;
+
+import image.Image;
+
+/**
+ * Copy of a region of a band of an {@link Image} surrounded by a halo of radius pixels. The halo is filled only once, following
+ * {@link Image#getPixelBoundaryMode(int, int, int)} (background color, module, reflect or average), so filters can read the neighbours
+ * of any pixel of the region with {@link #get(int, int)} or directly from {@link #getData()} without checking the boundaries.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class PaddedBuffer {
+	private double[] data = new double[0];
+	private int originX = 0, originY = 0, stride = 0, rows = 0, radius = 0;
+
+	public PaddedBuffer(){}
+	/**
+	 * Pads the whole band.
+	 * @param image
+	 * @param band
+	 * @param radius - size of the halo
+	 */
+	public PaddedBuffer(final Image image, final int band, final int radius){
+		fill(image, band, radius, 0, 0, image.getWidth(), image.getHeight());
+	}
+	/**
+	 * Pads the region of the band that starts at (x,y).
+	 * @param image
+	 * @param band
+	 * @param radius - size of the halo
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 */
+	public PaddedBuffer(final Image image, final int band, final int radius, final int x, final int y, final int width, final int height){
+		fill(image, band, radius, x, y, width, height);
+	}
+
+	/**
+	 * Copies the region and its halo into this buffer, whose array is reused when it is large enough.
+	 * @return this
+	 */
+	public PaddedBuffer fill(final Image image, final int band, final int radius, final int x, final int y, final int width, final int height){
+		this.radius = radius;
+		originX = x - radius; originY = y - radius;
+		stride = width + 2*radius; rows = height + 2*radius;
+		if (data.length < stride*rows) data = new double[stride*rows];
+
+		final boolean wholeRows = x == 0 && width == image.getWidth();
+		final double[] row = wholeRows ? new double[width] : null;
+		for (int i=0; i<rows; i++){
+			final int py = originY + i, offset = i*stride;
+			if (wholeRows && py >= 0 && py < image.getHeight()){
+				image.getRow(py, band, row);
+				System.arraycopy(row, 0, data, offset + radius, width);
+				for (int k=1; k<=radius; k++){
+					data[offset + radius - k] = image.getPixelBoundaryMode(-k, py, band);
+					data[offset + radius + width - 1 + k] = image.getPixelBoundaryMode(width - 1 + k, py, band);
+				}
+			}else{
+				for (int j=0; j<stride; j++) data[offset + j] = image.getPixelBoundaryMode(originX + j, py, band);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Copies the rows y to y + height (exclusive) of a band and their halo from values, which holds the whole rows of the band from
+	 * firstRow onwards. The band has the size and the boundaries of image, e.g., it is the result of a filter applied to image, and
+	 * the rows read by the halo must be in values. The boundaries must not be {@link Image.BoundaryOperationType#BOUNDARY_AVERAGE},
+	 * unless image has a background color.
+	 * @return this
+	 */
+	public PaddedBuffer fill(final Image image, final int band, final double[] values, final int firstRow, final int radius, final int y, final int height){
+		final int width = image.getWidth();
+		final double[] background = image.getBackgroundColor();
+		this.radius = radius;
+		originX = -radius; originY = y - radius;
+		stride = width + 2*radius; rows = height + 2*radius;
+		if (data.length < stride*rows) data = new double[stride*rows];
+
+		for (int i=0; i<rows; i++){
+			final int py = originY + i, offset = i*stride;
+			if (background != null && (py < 0 || py >= image.getHeight())){
+				Arrays.fill(data, offset, offset + stride, background[band]);
+				continue;
+			}
+			final int source = (Image.getBoundaryCoordinate(py, image.getHeight(), image.getBoundaryOperation()) - firstRow)*width;
+			System.arraycopy(values, source, data, offset + radius, width);
+			for (int k=1; k<=radius; k++){
+				data[offset + radius - k] = (background != null) ? background[band]
+						: values[source + Image.getBoundaryCoordinate(-k, width, image.getBoundaryOperation())];
+				data[offset + radius + width - 1 + k] = (background != null) ? background[band]
+						: values[source + Image.getBoundaryCoordinate(width - 1 + k, width, image.getBoundaryOperation())];
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the pixel at (x,y), in coordinates of the image. It must be at most {@link #getRadius()} pixels away from the region.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public double get(final int x, final int y){
+		return data[(y - originY)*stride + x - originX];
+	}
+	/**
+	 * Returns the position of the pixel (x,y) in {@link #getData()}. The next pixel of the row is at the next position,
+	 * the next pixel of the column is {@link #getStride()} positions ahead.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getIndex(final int x, final int y){
+		return (y - originY)*stride + x - originX;
+	}
+	public double[] getData(){return data;}
+	public int getStride(){return stride;}
+	public int getRadius(){return radius;}
+}
@@ -0,0 +1,194 @@
+package filters;
+
+/**
+ * Recursive (IIR) convolution with a Gaussian or with its first or second derivative, following Deriche (Recursively implementing
+ * the Gaussian and its derivatives, 1993). Each pixel costs the same 16 multiplications whatever the spread, whereas the kernels grow
+ * with it, so large scales are as cheap as small ones. The Gaussian is not truncated and the fit has an error below 1% of its peak,
+ * so the result is close, but not equal, to the one of a sampled kernel.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class RecursiveGaussian {
+	//{a0, a1, b0, b1, c0, c1, w0, w1} of the fits by Deriche of the Gaussian and of its first and second derivatives, i.e., for x >= 0,
+	//(a0*cos(w0*x/sigma) + a1*sin(w0*x/sigma))*exp(-b0*x/sigma) + (c0*cos(w1*x/sigma) + c1*sin(w1*x/sigma))*exp(-b1*x/sigma)
+	private final static double[][] COEFFICIENTS = {
+		{1.680, 3.735, 1.783, 1.723, -0.6803, -0.2598, 0.6318, 1.997},
+		{-0.6472, -4.531, 1.527, 1.516, 0.6494, 0.9557, 0.6719, 2.072},
+		{-1.331, 3.661, 1.240, 1.314, 0.3225, -1.738, 0.748, 2.166}};
+	//size of the halo relative to sigma, beyond which the boundaries barely affect the result (the fit of the second derivative decays slower)
+	private final static double[] RADIUS = {4, 4, 6};
+
+	private final double sigma;
+	private final int order;
+	private final double n0, n1, n2, n3, m1, m2, m3, m4, d1, d2, d3, d4;
+	//the result is scale*(causal + sign*anticausal - center*x), where center removes the response of the derivatives to constant images
+	private final double scale, sign, center;
+
+	/**
+	 * @param sigma - spread of the Gaussian, preferably of at least 1 pixel
+	 * @param order - 0 for the Gaussian, 1 for its first derivative and 2 for its second derivative
+	 */
+	public RecursiveGaussian(final double sigma, final int order){
+		this(sigma, order, false);
+	}
+	/**
+	 * Returns the Gaussian whose weights are positive before the center, 0 at it and negative after it, as the kernels of
+	 * {@link filters.border.GaussianGradient}, i.e., the difference between the weighted means of the pixels before and after each pixel.
+	 * @param sigma
+	 * @return
+	 */
+	public static RecursiveGaussian getSplitGaussian(final double sigma){
+		return new RecursiveGaussian(sigma, 0, true);
+	}
+	private RecursiveGaussian(final double sigma, final int order, final boolean split){
+		if (order < 0 || order > 2) throw new IllegalArgumentException("The order of the derivative must be 0, 1 or 2: " + order);
+		if (!(sigma > 0)) throw new IllegalArgumentException("The spread of the Gaussian must be positive: " + sigma);
+		this.sigma = sigma;
+		this.order = order;
+		final double[] c = COEFFICIENTS[order];
+
+		//the denominator has the poles of both terms of the fit
+		final double p0 = 2*Math.exp(-c[2]/sigma)*Math.cos(c[6]/sigma), q0 = Math.exp(-2*c[2]/sigma),
+				p1 = 2*Math.exp(-c[3]/sigma)*Math.cos(c[7]/sigma), q1 = Math.exp(-2*c[3]/sigma);
+		d1 = -(p0 + p1);
+		d2 = q0 + q1 + p0*p1;
+		d3 = -(p0*q1 + p1*q0);
+		d4 = q0*q1;
+
+		//the numerators follow from the first samples of the fit, which is even for the Gaussian and odd for the first derivative
+		final double[] h = new double[5];
+		for (int k=0; k<h.length; k++){
+			final double x = k/sigma;
+			h[k] = (c[0]*Math.cos(c[6]*x) + c[1]*Math.sin(c[6]*x))*Math.exp(-c[2]*x) + (c[4]*Math.cos(c[7]*x) + c[5]*Math.sin(c[7]*x))*Math.exp(-c[3]*x);
+		}
+		final double parity = (order == 1) ? -1 : 1;
+		n0 = h[0];
+		n1 = h[1] + d1*h[0];
+		n2 = h[2] + d1*h[1] + d2*h[0];
+		n3 = h[3] + d1*h[2] + d2*h[1] + d3*h[0];
+		m1 = parity*h[1];
+		m2 = parity*(h[2] + d1*h[1]);
+		m3 = parity*(h[3] + d1*h[2] + d2*h[1]);
+		m4 = parity*(h[4] + d1*h[3] + d2*h[2] + d3*h[1]);
+
+		//the fits are of exp(-x*x/(2*sigma*sigma)) and its derivatives scaled by sigma^order, so they are divided by sqrt(2*PI)*sigma^(order + 1),
+		//except for the Gaussian, which is made to sum 1. The sum of the derivatives is removed, so that they are 0 on constant images
+		final int half = getRadius() + 8, length = 2*half + 1;
+		final double[] impulse = new double[length], response = new double[length];
+		impulse[half] = 1;
+		filter(impulse, 0, length, 1, 1, response, 0, 0, length, new double[length], new double[length], 1, 1, 0);
+		double sum = 0;
+		for (int k=0; k<length; k++) sum += response[k];
+		//the causal part of the split Gaussian holds the pixels before the center and the anticausal part the ones after it
+		this.sign = split ? -1 : 1;
+		center = split ? n0 : (order == 0) ? 0 : sum;
+		scale = (order == 0) ? 1/sum : 1/(Math.sqrt(2*Math.PI)*Math.pow(sigma, order + 1));
+	}
+
+	public double getSigma(){return sigma;}
+	public int getOrder(){return order;}
+	/**
+	 * Returns the size of the halo needed on each side of the lines, which grows with sigma.
+	 * @return
+	 */
+	public int getRadius(){
+		return getRadius(sigma, order);
+	}
+	public static int getRadius(final double sigma, final int order){
+		return (int) Math.ceil(RADIUS[order]*sigma);
+	}
+
+	/**
+	 * Convolves the rows minY (inclusive) to maxY (exclusive) of a padded band with row along the x direction and with column along the
+	 * y direction, and stores them in dst one after the other. The halo of the buffer must be at least the radius of both.
+	 * @param buffer
+	 * @param row
+	 * @param column
+	 * @param width - width of the band
+	 * @param minY
+	 * @param maxY
+	 * @param dst - array with at least (maxY - minY)*width positions
+	 */
+	public static void convolve(final PaddedBuffer buffer, final RecursiveGaussian row, final RecursiveGaussian column, final int width,
+			final int minY, final int maxY, final double[] dst){
+		final int halfX = row.getRadius(), halfY = column.getRadius(), lines = maxY - minY + 2*halfY;
+		final double[] data = buffer.getData(), horizontal = new double[lines*width];
+		final double[] causal = new double[Math.max(width + 2*halfX, lines*width)], anticausal = new double[causal.length];
+		//filters the rows, including the ones read by the column
+		for (int i=0; i<lines; i++)
+			row.filterLine(data, buffer.getIndex(-halfX, minY - halfY + i), width + 2*halfX, horizontal, i*width, halfX, halfX + width, causal);
+		//filters the columns of the result, all of them at once so that the rows are read in order
+		column.filter(horizontal, 0, lines, width, width, dst, 0, halfY, halfY + maxY - minY, causal, anticausal, column.scale, column.sign,
+				column.center);
+	}
+
+	/**
+	 * Filters a line of consecutive elements as {@link #filter} does with a step and a count of 1, keeping the last values in variables.
+	 */
+	private void filterLine(final double[] src, final int srcOffset, final int length, final double[] dst, final int dstOffset,
+			final int first, final int last, final double[] causal){
+		final double gain = 1 + d1 + d2 + d3 + d4;
+		double x1 = src[srcOffset], x2 = x1, x3 = x1, x4 = x1, y1 = x1*(n0 + n1 + n2 + n3)/gain, y2 = y1, y3 = y1, y4 = y1;
+		for (int k=0; k<last; k++){
+			//the last output is added at the end, so that the other terms do not wait for it
+			final double x0 = src[srcOffset + k], y0 = (n0*x0 + n1*x1 + n2*x2 + n3*x3 - (d2*y2 + d3*y3 + d4*y4)) - d1*y1;
+			causal[k] = y0;
+			x3 = x2; x2 = x1; x1 = x0;
+			y4 = y3; y3 = y2; y2 = y1; y1 = y0;
+		}
+		x1 = src[srcOffset + length - 1]; x2 = x1; x3 = x1; x4 = x1;
+		y1 = x1*(m1 + m2 + m3 + m4)/gain; y2 = y1; y3 = y1; y4 = y1;
+		for (int k=length - 1; k>=first; k--){
+			final double x0 = src[srcOffset + k], y0 = (m1*x1 + m2*x2 + m3*x3 + m4*x4 - (d2*y2 + d3*y3 + d4*y4)) - d1*y1;
+			if (k < last) dst[dstOffset + k - first] = scale*(causal[k] + sign*y0 - center*x0);
+			x4 = x3; x3 = x2; x2 = x1; x1 = x0;
+			y4 = y3; y3 = y2; y2 = y1; y1 = y0;
+		}
+	}
+
+	/**
+	 * Filters count lines of length elements, the element k of the line l being at srcOffset + k*step + l, and stores the elements
+	 * first to last (exclusive) at dstOffset + (k - first)*step + l. The values before and after the lines are taken as the first
+	 * and the last ones.
+	 */
+	private void filter(final double[] src, final int srcOffset, final int length, final int step, final int count, final double[] dst,
+			final int dstOffset, final int first, final int last, final double[] causal, final double[] anticausal, final double scale,
+			final double sign, final double center){
+		final double causalGain = (n0 + n1 + n2 + n3)/(1 + d1 + d2 + d3 + d4), anticausalGain = (m1 + m2 + m3 + m4)/(1 + d1 + d2 + d3 + d4);
+		for (int k=0; k<length; k++){
+			final int s = srcOffset + k*step, c = k*count;
+			if (k >= 4){
+				for (int l=0; l<count; l++){
+					causal[c + l] = n0*src[s + l] + n1*src[s + l - step] + n2*src[s + l - 2*step] + n3*src[s + l - 3*step]
+							- d1*causal[c + l - count] - d2*causal[c + l - 2*count] - d3*causal[c + l - 3*count] - d4*causal[c + l - 4*count];
+				}
+				continue;
+			}
+			for (int l=0; l<count; l++){
+				final double x = src[srcOffset + l], y = x*causalGain;
+				causal[c + l] = n0*src[s + l] + n1*(k >= 1 ? src[s + l - step] : x) + n2*(k >= 2 ? src[s + l - 2*step] : x)
+						+ n3*(k >= 3 ? src[s + l - 3*step] : x) - d1*(k >= 1 ? causal[c + l - count] : y) - d2*(k >= 2 ? causal[c + l - 2*count] : y)
+						- d3*(k >= 3 ? causal[c + l - 3*count] : y) - d4*y;
+			}
+		}
+		for (int k=length - 1; k>=first; k--){
+			final int s = srcOffset + k*step, c = k*count;
+			if (k < length - 4){
+				for (int l=0; l<count; l++){
+					anticausal[c + l] = m1*src[s + l + step] + m2*src[s + l + 2*step] + m3*src[s + l + 3*step] + m4*src[s + l + 4*step]
+							- d1*anticausal[c + l + count] - d2*anticausal[c + l + 2*count] - d3*anticausal[c + l + 3*count] - d4*anticausal[c + l + 4*count];
+				}
+			}else{
+				final int end = length - 1 - k;
+				for (int l=0; l<count; l++){
+					final double x = src[srcOffset + (length - 1)*step + l], y = x*anticausalGain;
+					anticausal[c + l] = m1*(end >= 1 ? src[s + l + step] : x) + m2*(end >= 2 ? src[s + l + 2*step] : x)
+							+ m3*(end >= 3 ? src[s + l + 3*step] : x) + m4*x - d1*(end >= 1 ? anticausal[c + l + count] : y)
+							- d2*(end >= 2 ? anticausal[c + l + 2*count] : y) - d3*(end >= 3 ? anticausal[c + l + 3*count] : y) - d4*y;
+				}
+			}
+			if (k >= last) continue;
+			final int d = dstOffset + (k - first)*step;
+			for (int l=0; l<count; l++) dst[d + l] = scale*(causal[c + l] + sign*anticausal[c + l] - center*src[s + l]);
+		}
+	}
+}
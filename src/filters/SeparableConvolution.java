@@ -0,0 +1,75 @@
+package filters;
+
+import java.util.Arrays;
+
+/**
+ * Convolution with separable kernels, i.e., kernels whose element (i,j) is column[i]*row[j], such as Gaussian kernels and their derivatives.
+ * Each pixel costs the width plus the height of the kernel instead of its area, since the band is convolved with the row first and then
+ * with the column.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class SeparableConvolution {
+	//maximum error relative to the largest element of a kernel accepted by factorize
+	private final static double TOLERANCE = 1e-12;
+
+	private SeparableConvolution(){}
+
+	/**
+	 * Splits a kernel into a column and a row.
+	 * @param kernel
+	 * @return {column, row}, or null if the kernel is not separable
+	 */
+	public static double[][] factorize(final double[][] kernel){
+		if (kernel == null || kernel.length == 0 || kernel[0].length == 0) return null;
+		int p = 0, q = 0;
+		for (int i=0; i<kernel.length; i++)
+			for (int j=0; j<kernel[0].length; j++)
+				if (Math.abs(kernel[i][j]) > Math.abs(kernel[p][q])){p = i; q = j;}
+		final double pivot = kernel[p][q];
+		if (pivot == 0) return null;
+		final double[] column = new double[kernel.length], row = kernel[p].clone();
+		for (int i=0; i<kernel.length; i++) column[i] = kernel[i][q]/pivot;
+		for (int i=0; i<kernel.length; i++)
+			for (int j=0; j<row.length; j++)
+				if (Math.abs(kernel[i][j] - column[i]*row[j]) > TOLERANCE*Math.abs(pivot)) return null;
+		return new double[][]{column, row};
+	}
+
+	/**
+	 * Convolves the rows minY (inclusive) to maxY (exclusive) of a padded band with the kernel column[i]*row[j], centered at
+	 * (row.length/2, column.length/2), and stores them in dst one after the other. The halo of the buffer must be at least half the
+	 * size of the kernel.
+	 * @param buffer
+	 * @param column
+	 * @param row
+	 * @param width - width of the band
+	 * @param minY
+	 * @param maxY
+	 * @param dst - array with at least (maxY - minY)*width positions
+	 */
+	public static void convolve(final PaddedBuffer buffer, final double[] column, final double[] row, final int width,
+			final int minY, final int maxY, final double[] dst){
+		final int halfX = row.length/2, halfY = column.length/2, rows = maxY - minY;
+		final double[] data = buffer.getData();
+		//convolves the rows, including the ones read by the column
+		final double[] horizontal = new double[(rows + column.length - 1)*width];
+		for (int i=0; i<rows + column.length - 1; i++){
+			final int first = buffer.getIndex(-halfX, minY - halfY + i), offset = i*width;
+			for (int j=0; j<width; j++){
+				double sum = 0;
+				for (int k=0, index=first + j; k<row.length; k++, index++) sum += data[index]*row[k];
+				horizontal[offset + j] = sum;
+			}
+		}
+		//convolves the columns of the result
+		Arrays.fill(dst, 0, rows*width, 0);
+		for (int i=0; i<rows; i++){
+			final int offset = i*width;
+			for (int k=0; k<column.length; k++){
+				final double c = column[k];
+				final int source = (i + k)*width;
+				for (int j=0; j<width; j++) dst[offset + j] += horizontal[source + j]*c;
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package filters;
+
+import java.util.Arrays;
+
+/**
+ * Median of the pixels covered by a window centered at each pixel, computed from histograms that slide along the rows instead of sorting
+ * the window. Bands whose values are integers from 0 to 255 are filtered with the column histograms of Perreault and Hébert (Median
+ * filtering in constant time, 2007) if the window is a box, so each pixel costs the same whatever the size of the window. Other windows
+ * and integers up to 65535 slide a single histogram along the row (Huang), so each pixel costs twice the height of the window, and any
+ * other values slide a sorted copy of the window.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class SlidingMedian {
+	//maximum value (exclusive) of the bands filtered with histograms
+	private final static int MAX_BINS = 1 << 16;
+
+	private SlidingMedian(){}
+
+	/**
+	 * Stores in dst the medians of the rows minY (inclusive) to maxY (exclusive) of a padded band, the median of n pixels being the
+	 * element n/2 once they are sorted.
+	 * @param buffer - padded band whose halo covers the window
+	 * @param spans - columns {first, last} covered by each row of the window relative to its center, first > last if it covers none
+	 * @param width - width of the band
+	 * @param minY
+	 * @param maxY
+	 * @param dst - array with at least (maxY - minY)*width positions
+	 */
+	public static void filter(final PaddedBuffer buffer, final int[][] spans, final int width, final int minY, final int maxY, final double[] dst){
+		final int sY = spans.length/2;
+		int sX = 0, count = 0;
+		for (int k=0; k<spans.length; k++){
+			if (spans[k][0] > spans[k][1]) continue;
+			sX = Math.max(sX, Math.max(-spans[k][0], spans[k][1]));
+			count += spans[k][1] - spans[k][0] + 1;
+		}
+		boolean box = true;
+		for (int k=0; k<spans.length; k++) box &= spans[k][0] == -sX && spans[k][1] == sX;
+
+		//copies the rows read by the window, checking whether they fit in a histogram
+		final int stride = width + 2*sX, rows = maxY - minY + 2*sY;
+		final double[] data = buffer.getData(), values = new double[rows*stride];
+		double max = 0;
+		boolean integers = true;
+		for (int r=0; r<rows; r++){
+			System.arraycopy(data, buffer.getIndex(-sX, minY - sY + r), values, r*stride, stride);
+			for (int k=r*stride; k<(r + 1)*stride && integers; k++){
+				final double v = values[k];
+				integers = v >= 0 && v < MAX_BINS && v == Math.floor(v);
+				if (v > max) max = v;
+			}
+		}
+		if (!integers){
+			slideSortedWindow(values, stride, spans, sX, width, maxY - minY, count, dst);
+			return;
+		}
+		final int[] pixels = new int[values.length];
+		for (int k=0; k<values.length; k++) pixels[k] = (int) values[k];
+		if (max < 256 && box) slideColumnHistograms(pixels, stride, sX, sY, width, maxY - minY, count, dst);
+		else slideHistogram(pixels, stride, spans, sX, width, maxY - minY, count, (max < 256) ? 4 : 8, dst);
+	}
+
+	/**
+	 * Perreault and Hébert: the histogram of each column of the window is updated once per row and the histogram of the window
+	 * adds the column that enters it and subtracts the one that leaves it. The histograms have 16 coarse bins of 16 values each, the
+	 * fine bins of the window being brought up to date only when the median falls in their coarse bin.
+	 */
+	private static void slideColumnHistograms(final int[] pixels, final int stride, final int sX, final int sY, final int width, final int count,
+			final int n, final double[] dst){
+		final int size = 2*sX + 1, target = n/2;
+		final int[] fine = new int[stride << 8], coarse = new int[stride << 4];
+		for (int r=0; r<2*sY + 1; r++){
+			for (int c=0; c<stride; c++){
+				final int v = pixels[r*stride + c];
+				fine[(c << 8) + v]++;
+				coarse[(c << 4) + (v >> 4)]++;
+			}
+		}
+		final int[] kernelFine = new int[256], kernelCoarse = new int[16], refreshed = new int[16];
+		for (int i=0; i<count; i++){
+			if (i > 0){
+				//the columns lose the row above the window and get the one at its bottom
+				for (int c=0; c<stride; c++){
+					final int out = pixels[(i - 1)*stride + c], in = pixels[(i + 2*sY)*stride + c];
+					fine[(c << 8) + out]--;
+					coarse[(c << 4) + (out >> 4)]--;
+					fine[(c << 8) + in]++;
+					coarse[(c << 4) + (in >> 4)]++;
+				}
+			}
+			Arrays.fill(kernelCoarse, 0);
+			Arrays.fill(refreshed, -size - 1);
+			for (int c=0; c<size; c++)
+				for (int b=0; b<16; b++) kernelCoarse[b] += coarse[(c << 4) + b];
+
+			for (int x=0; x<width; x++){
+				if (x > 0){
+					final int in = (x + size - 1) << 4, out = (x - 1) << 4;
+					for (int b=0; b<16; b++) kernelCoarse[b] += coarse[in + b] - coarse[out + b];
+				}
+				int b = 0, sum = 0;
+				while (sum + kernelCoarse[b] <= target) sum += kernelCoarse[b++];
+
+				//the fine bins of the coarse bin follow the columns that entered and left since they were last used, or are summed again
+				final int first = b << 4;
+				if (x - refreshed[b] < size){
+					for (int s=refreshed[b] + 1; s<=x; s++){
+						final int in = ((s + size - 1) << 8) + first, out = ((s - 1) << 8) + first;
+						for (int v=0; v<16; v++) kernelFine[first + v] += fine[in + v] - fine[out + v];
+					}
+				}else{
+					Arrays.fill(kernelFine, first, first + 16, 0);
+					for (int c=x; c<x + size; c++)
+						for (int v=0; v<16; v++) kernelFine[first + v] += fine[(c << 8) + first + v];
+				}
+				refreshed[b] = x;
+
+				int v = first;
+				while (sum + kernelFine[v] <= target) sum += kernelFine[v++];
+				dst[i*width + x] = v;
+			}
+		}
+	}
+
+	/**
+	 * Huang: the histogram of the window gets the pixels that enter each of its rows and loses the ones that leave them. It has
+	 * 2^shift coarse bins of 2^shift values each, so the median is found without reading every bin.
+	 */
+	private static void slideHistogram(final int[] pixels, final int stride, final int[][] spans, final int sX, final int width, final int count,
+			final int n, final int shift, final double[] dst){
+		final int target = n/2;
+		final int[] fine = new int[1 << 2*shift], coarse = new int[1 << shift];
+		for (int i=0; i<count; i++){
+			for (int dy=0; dy<spans.length; dy++){
+				for (int dx=spans[dy][0], row=(i + dy)*stride + sX; dx<=spans[dy][1]; dx++){
+					fine[pixels[row + dx]]++;
+					coarse[pixels[row + dx] >> shift]++;
+				}
+			}
+			for (int x=0; x<width; x++){
+				if (x > 0){
+					for (int dy=0; dy<spans.length; dy++){
+						if (spans[dy][0] > spans[dy][1]) continue;
+						final int row = (i + dy)*stride + sX + x, in = pixels[row + spans[dy][1]], out = pixels[row - 1 + spans[dy][0]];
+						fine[in]++;
+						coarse[in >> shift]++;
+						fine[out]--;
+						coarse[out >> shift]--;
+					}
+				}
+				int b = 0, sum = 0;
+				while (sum + coarse[b] <= target) sum += coarse[b++];
+				int v = b << shift;
+				while (sum + fine[v] <= target) sum += fine[v++];
+				dst[i*width + x] = v;
+			}
+			//empties the histogram for the next row
+			for (int dy=0; dy<spans.length; dy++){
+				for (int dx=spans[dy][0], row=(i + dy)*stride + sX + width - 1; dx<=spans[dy][1]; dx++){
+					fine[pixels[row + dx]]--;
+					coarse[pixels[row + dx] >> shift]--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps the pixels of the window sorted, replacing the ones that leave each of its rows by the ones that enter them.
+	 */
+	private static void slideSortedWindow(final double[] values, final int stride, final int[][] spans, final int sX, final int width, final int count,
+			final int n, final double[] dst){
+		final double[] window = new double[n];
+		for (int i=0; i<count; i++){
+			int k = 0;
+			for (int dy=0; dy<spans.length; dy++)
+				for (int dx=spans[dy][0], row=(i + dy)*stride + sX; dx<=spans[dy][1]; dx++) window[k++] = values[row + dx];
+			Arrays.sort(window);
+			for (int x=0; x<width; x++){
+				if (x > 0){
+					for (int dy=0; dy<spans.length; dy++){
+						if (spans[dy][0] > spans[dy][1]) continue;
+						final int row = (i + dy)*stride + sX + x;
+						replace(window, values[row - 1 + spans[dy][0]], values[row + spans[dy][1]]);
+					}
+				}
+				dst[i*width + x] = window[n/2];
+			}
+		}
+	}
+	//removes out from the sorted window and inserts in, shifting the elements between both positions
+	private static void replace(final double[] window, final double out, final double in){
+		final int from = Arrays.binarySearch(window, out);
+		int to = Arrays.binarySearch(window, in);
+		if (to < 0) to = -to - 1;
+		if (to > from){
+			to--;
+			System.arraycopy(window, from + 1, window, from, to - from);
+		}else if (to < from) System.arraycopy(window, to, window, to + 1, from - to);
+		window[to] = in;
+	}
+}
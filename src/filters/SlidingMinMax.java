@@ -0,0 +1,72 @@
+package filters;
+
+/**
+ * Maximum or minimum of the elements of a window that slides along lines, following van Herk (A fast algorithm for local minimum
+ * and maximum filters on rectangular and octagonal kernels, 1992) and Gil and Werman (Computing 2-D min, median, and max filters,
+ * 1993). The lines are split in blocks as long as the window, whose running extrema from their start and from their end are kept,
+ * so each window is covered by the extremum from its start to the end of its block and the one from the start of the next block to
+ * its end. Each element costs about three comparisons whatever the size of the window. Rectangles are filtered along the rows and then
+ * along the columns.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class SlidingMinMax {
+
+	private SlidingMinMax(){}
+
+	/**
+	 * Filters count lines of length elements, the element k of the line l being at srcOffset + k*step + l, and stores the extremum
+	 * of the elements k to k + window - 1 at dstOffset + k*dstStep + l, for k from 0 to length - window.
+	 * @param src
+	 * @param srcOffset
+	 * @param step
+	 * @param count - number of interleaved lines, e.g., 1 for a row and the width for the columns of a band
+	 * @param length
+	 * @param window
+	 * @param max - true for the maximum, false for the minimum
+	 * @param dst
+	 * @param dstOffset
+	 * @param dstStep
+	 */
+	public static void filter(final double[] src, final int srcOffset, final int step, final int count, final int length, final int window,
+			final boolean max, final double[] dst, final int dstOffset, final int dstStep){
+		final double[] prefix = new double[length*count], suffix = new double[length*count];
+		//extrema from the start of each block
+		for (int k=0; k<length; k++){
+			final int s = srcOffset + k*step, p = k*count;
+			if (k % window == 0) System.arraycopy(src, s, prefix, p, count);
+			else for (int l=0; l<count; l++) prefix[p + l] = select(prefix[p - count + l], src[s + l], max);
+		}
+		//extrema until the end of each block
+		for (int k=length - 1; k>=0; k--){
+			final int s = srcOffset + k*step, p = k*count;
+			if (k == length - 1 || (k + 1) % window == 0) System.arraycopy(src, s, suffix, p, count);
+			else for (int l=0; l<count; l++) suffix[p + l] = select(suffix[p + count + l], src[s + l], max);
+		}
+		for (int k=0; k<=length - window; k++){
+			final int d = dstOffset + k*dstStep, p = k*count, q = (k + window - 1)*count;
+			for (int l=0; l<count; l++) dst[d + l] = select(suffix[p + l], prefix[q + l], max);
+		}
+	}
+	private static double select(final double a, final double b, final boolean max){
+		return max ? (b > a ? b : a) : (b < a ? b : a);
+	}
+
+	/**
+	 * Filters the rectangle of width (2*halfX + 1) x (2*halfY + 1) centered at each element of count rows of width elements,
+	 * reading them from values, which holds the rows read by the rectangle, of width + 2*halfX elements, one after the other.
+	 * @param values
+	 * @param width
+	 * @param halfX
+	 * @param halfY
+	 * @param count
+	 * @param max - true for the maximum, false for the minimum
+	 * @param dst - array with at least count*width positions
+	 */
+	public static void filter(final double[] values, final int width, final int halfX, final int halfY, final int count, final boolean max,
+			final double[] dst){
+		final int stride = width + 2*halfX, rows = count + 2*halfY;
+		final double[] horizontal = new double[rows*width];
+		for (int r=0; r<rows; r++) filter(values, r*stride, 1, 1, stride, 2*halfX + 1, max, horizontal, r*width, 1);
+		filter(horizontal, 0, width, width, rows, 2*halfY + 1, max, dst, 0, width);
+	}
+}
@@ -7,7 +7,7 @@ import image.Image;
 
 /**
  * Box blur filter. Uses the Chebyshev Distance to compute the blur in a box-fashion.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class BoxBlur extends MeanBlur{
 
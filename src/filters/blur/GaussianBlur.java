@@ -1,12 +1,17 @@
 package filters.blur;
 
+import filters.FFTConvolution;
 import filters.Filter;
+import filters.Kernel;
+import filters.PaddedBuffer;
+import filters.RecursiveGaussian;
+import filters.SeparableConvolution;
 import image.Image;
 import log.Logger;
 
 /**
  * Uses a 2D-Gaussian Function to blur an image.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class GaussianBlur extends Filter{
 	protected int kernelSizeX = 3, kernelSizeY = 3;
@@ -16,7 +21,12 @@ public class GaussianBlur extends Filter{
 	protected boolean update = true;
 	protected double kernelSum = 0;
 	protected double[][] kernel = null;
-	protected boolean supressPrint = false;
+	protected double[][] separableKernel = null; //{column, row} of the kernel, see SeparableConvolution
+	protected FFTConvolution fftKernel = null; //set when the kernel is large enough to be convolved in the frequency domain
+	protected boolean recursive = false;
+	protected RecursiveGaussian recursiveX = null, recursiveY = null; //set when the recursive Gaussian is used
+	private double gaussianSum = 0; //sum of the Gaussian kernel, which subclasses may change along with kernelSum
+	protected boolean supressPrint = true;
 	
 	/**
 	 * Instantiates a Gaussian Blur filter.
@@ -88,25 +98,27 @@ public class GaussianBlur extends Filter{
 		this.setAmplitude(amplitude);
 	}
 	
+	/**
+	 * Suppresses the print of the kernel whenever it is built, which is suppressed by default.
+	 * @param suppress
+	 */
+	public void setToSupressKernelPrint(final boolean suppress){
+		this.supressPrint = suppress;
+	}
+	
 	protected void updateKernel(){
 		if (update){
-			final int halfSizeX = (int) Math.floor(kernelSizeX/2d),
-					halfSizeY = (int) Math.floor(kernelSizeX/2d);
-			kernel = new double[halfSizeY*2 + 1][halfSizeX*2 + 1];
-			final int x0 = halfSizeX, y0 = halfSizeY;
-			if (!supressPrint) Logger.log("Gaussian Kernel: \n");
-			kernelSum = 0;
-			for (int i=0; i<kernel.length; i++){
-				for (int j=0; j<kernel[0].length; j++){
-					
-					kernel[i][j] = amplitude*Math.exp( -( (Math.pow(j - x0, 2)/(2*Math.pow(spreadX,2))) + (Math.pow(i - y0, 2)/(2*Math.pow(spreadY, 2))) ));
-					kernelSum += kernel[i][j];
-					
-					if (!supressPrint) Logger.log(kernel[i][j] + " ");
-				}
-				if (!supressPrint) Logger.log("\n");
-			}
-			if (!supressPrint) Logger.log("-----------------\n");
+			final Kernel gaussian = Kernel.getGaussian(kernelSizeX, kernelSizeY, amplitude, spreadX, spreadY);
+			//the cached kernel is shared, subclasses change their copy
+			kernel = gaussian.toArray();
+			kernelSum = gaussian.getSum();
+			if (!supressPrint) Logger.log("Gaussian Kernel: \n" + gaussian + "-----------------\n");
+			gaussianSum = kernelSum;
+			recursiveX = recursive ? new RecursiveGaussian(spreadX, 0) : null;
+			recursiveY = recursive ? new RecursiveGaussian(spreadY, 0) : null;
+			separableKernel = SeparableConvolution.factorize(kernel);
+			if (!FFTConvolution.isFaster(kernel[0].length, kernel.length, separableKernel != null)) fftKernel = null;
+			else if (fftKernel == null || !fftKernel.hasKernel(kernel)) fftKernel = new FFTConvolution(kernel);
 			update = false;
 		}
 	}
@@ -114,7 +126,7 @@ public class GaussianBlur extends Filter{
 	/**
 	 * Sets the amplitude of the Gaussian function.
 	 * @param amplitude
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setAmplitude(final float amplitude){
 		this.amplitude = amplitude;
@@ -123,7 +135,7 @@ public class GaussianBlur extends Filter{
 	/**
 	 * Sets the sigma x, i.e., the spread of the gaussian function in the x direction.
 	 * @param spreadX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpreadX(final float spreadX){
 		this.spreadX = spreadX;
@@ -132,7 +144,7 @@ public class GaussianBlur extends Filter{
 	/**
 	 * Sets the sigma y, i.e., the spread of the gaussian function in the y direction.
 	 * @param spreadY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpreadY(final float spreadY){
 		this.spreadY = spreadY;
@@ -141,7 +153,7 @@ public class GaussianBlur extends Filter{
 	/**
 	 * Sets the width of the Gaussian kernel.
 	 * @param kernelSizeX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelSizeX){
 		this.kernelSizeX = kernelSizeX;
@@ -150,7 +162,7 @@ public class GaussianBlur extends Filter{
 	/**
 	 * Sets the height of the Gaussian kernel.
 	 * @param kernelSizeY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelHeight(final int kernelSizeY){
 		this.kernelSizeY = kernelSizeY;
@@ -159,30 +171,86 @@ public class GaussianBlur extends Filter{
 	/**
 	 * Sets the width and height of the Gaussian kernel.
 	 * @param kernelSize
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelSize(final int kernelSize){
 		this.setKernelWidth(kernelSize);
 		this.setKernelHeight(kernelSize);
 	}
 	
+	/**
+	 * Sets whether the Gaussian is approximated by a recursive (IIR) filter, see {@link RecursiveGaussian}, whose cost per pixel does not
+	 * depend on the spread. It is used when the whole image is filtered, and the Gaussian is then not truncated to the size of the kernel.
+	 * @param recursive
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
+	public void setToUseRecursiveGaussian(final boolean recursive){
+		this.recursive = recursive;
+		this.update = true;
+	}
+	
+	@Override
+	public boolean isReentrant(){return true;}
+	@Override
+	public boolean isStreamable(){return true;}
+	@Override
+	protected void prepare(){
+		updateKernel();
+	}
+	@Override
+	public int getKernelRadius(){
+		final int radius = Math.max(kernelSizeX/2, kernelSizeY/2);
+		if (!recursive) return radius;
+		return Math.max(radius, Math.max(RecursiveGaussian.getRadius(spreadX, 0), RecursiveGaussian.getRadius(spreadY, 0)));
+	}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
 		updateKernel();
 
 		double result = 0;
+		final double[] data = buffer.getData();
 		final int halfSizeX = (int) Math.floor(kernelSizeX/2d),
 				halfSizeY = (int) Math.floor(kernelSizeY/2d);
-		for (int i=y - halfSizeY; i<= y + halfSizeY; i++){
-			for (int j=x - halfSizeX; j<= x + halfSizeX; j++){
-				final int kerX = j - (x - halfSizeX), kerY = i - (y - halfSizeY);
-				
-				result += image.getPixelBoundaryMode(j, i, band) * kernel[kerY][kerX];
-				
-			}
+		for (int kerY=0; kerY<=2*halfSizeY; kerY++){
+			final double[] kernelRow = kernel[kerY];
+			int index = buffer.getIndex(x - halfSizeX, y - halfSizeY + kerY);
+			for (int kerX=0; kerX<=2*halfSizeX; kerX++)
+				result += data[index++] * kernelRow[kerX];
 		}
 		
 		return result/kernelSum;
 	}
 
+	/**
+	 * Convolves the rows with the Gaussian kernel, without dividing by its sum, with the recursive Gaussian if it is set to be used,
+	 * in the frequency domain if the kernel is large or else as two 1-D passes.
+	 * @return false if the kernel is not separable nor large, in which case dst is not modified
+	 */
+	protected boolean convolveGaussian(PaddedBuffer buffer, int minY, int maxY, double[] dst){
+		if (recursive){
+			RecursiveGaussian.convolve(buffer, recursiveX, recursiveY, image.getWidth(), minY, maxY, dst);
+			//the recursive Gaussian sums 1
+			for (int k=0; k<(maxY - minY)*image.getWidth(); k++) dst[k] *= gaussianSum;
+		}else if (fftKernel != null) fftKernel.convolve(buffer, image.getWidth(), minY, maxY, dst);
+		else if (separableKernel != null) SeparableConvolution.convolve(buffer, separableKernel[0], separableKernel[1], image.getWidth(), minY, maxY, dst);
+		else return false;
+		return true;
+	}
+
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		updateKernel();
+		if (buffer == null || !convolveGaussian(buffer, minY, maxY, dst)){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		for (int k=0; k<(maxY - minY)*image.getWidth(); k++) dst[k] /= kernelSum;
+	}
+
 }
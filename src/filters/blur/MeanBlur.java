@@ -1,6 +1,9 @@
 package filters.blur;
 
 import filters.Filter;
+import filters.PaddedBuffer;
+import filters.SlidingMedian;
+import filters.SlidingMinMax;
 import image.Image;
 
 import static distances.Distance.*;
@@ -12,7 +15,7 @@ import distances.Distance;
 
 /**
  * An average blur.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 interface MeanBlurConstants {
 	public static enum AverageType{TYPE_ARITHMETIC_MEAN, TYPE_GEOMETRIC_MEAN, TYPE_MEDIAN, TYPE_MAX, TYPE_MIN;}
@@ -56,7 +59,7 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 	/**
 	 * Sets the size of the kernel (width and height).
 	 * @param kernelSize
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelSize(final int kernelSize){
 		this.setKernelWidth(kernelSize);
@@ -66,7 +69,7 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 	/**
 	 * Sets the width of the kernel.
 	 * @param kernelWidth
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelWidth){
 		this.kernelWidth = kernelWidth;
@@ -76,7 +79,7 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 	/**
 	 * Sets the height of the kernel.
 	 * @param kernelHeight
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelHeight(final int kernelHeight){
 		this.kernelHeight = kernelHeight;
@@ -87,7 +90,7 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 	 * Sets the distance for each pixel. If Euclidean Distance is selected, then a circular region around each pixel is regarded.
 	 * If Chebyshev Distance is selected, for instance, a squared region around each pixel is regarded instead.
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setRadialDistance(final Distance distance){
 		this.distance = distance;
@@ -96,13 +99,21 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 	/**
 	 * Sets the operation type for the mean blur, arithmetic, geometric, etc.
 	 * @param operationType
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOperationType(final AverageType operationType){
 		this.operationType = operationType;
 	}
 	
 	
+	@Override
+	public int getKernelRadius(){
+		return Math.max(kernelWidth, kernelHeight)/2;
+	}
+
+	@Override
+	public boolean isReentrant(){return true;}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
 		final int sX = kernelWidth/2,
@@ -140,13 +151,9 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 				case TYPE_MEDIAN:
 					if (values.size() == 0) values.add(image.getPixelBoundaryMode(j, i, band));
 					else{
-						For:
-						for (int k=0; k<values.size(); k++){
-							if (values.get(k) > image.getPixelBoundaryMode(j, i, band)){
-								values.add(k, image.getPixelBoundaryMode(j, i, band));
-								break For;
-							}
-						}
+						int k = 0;
+						while (k < values.size() && values.get(k) <= image.getPixelBoundaryMode(j, i, band)) k++;
+						values.add(k, image.getPixelBoundaryMode(j, i, band));
 					}
 					break;
 				}
@@ -170,6 +177,165 @@ public class MeanBlur extends Filter implements MeanBlurConstants{
 		return result;
 	}
 	
+	/* (non-Javadoc)
+	 * The arithmetic and geometric means are computed from running sums of the values, or of their logarithms, so each pixel costs
+	 * the same whatever the size of the kernel if the window is a box (e.g., Chebyshev distance), or its height otherwise.
+	 * The median is computed from sliding histograms, see SlidingMedian, and the maximum and minimum with SlidingMinMax.
+	 * @see filters.Filter#getFilteredRows(filters.PaddedBuffer, int, int, int, double[])
+	 */
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		final int[][] spans = (buffer != null) ? getSpans() : null;
+		if (spans == null){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		if (operationType == TYPE_MEDIAN){
+			SlidingMedian.filter(buffer, spans, image.getWidth(), minY, maxY, dst);
+			return;
+		}
+		final int width = image.getWidth(), sX = kernelWidth/2, sY = kernelHeight/2, stride = width + 2*sX, rows = maxY - minY + 2*sY,
+				length = (maxY - minY)*width;
+		int counter = 0;
+		for (int k=0; k<spans.length; k++) counter += Math.max(0, spans[k][1] - spans[k][0] + 1);
+		final double[] data = buffer.getData(), values = new double[rows*stride];
+		
+		if (operationType != TYPE_GEOMETRIC_MEAN)
+			for (int r=0; r<rows; r++) System.arraycopy(data, buffer.getIndex(-sX, minY - sY + r), values, r*stride, stride);
+		if (operationType == TYPE_ARITHMETIC_MEAN){
+			sumWindows(values, width, sX, sY, spans, maxY - minY, dst);
+			for (int k=0; k<length; k++) dst[k] /= counter;
+			return;
+		}
+		if (operationType == TYPE_MAX || operationType == TYPE_MIN){
+			extremeWindows(values, width, sX, sY, spans, maxY - minY, operationType == TYPE_MAX, dst);
+			return;
+		}
+		
+		//the product is the exponential of the sum of the logarithms, whose sign and zeros are counted apart
+		final double[] zeros = new double[values.length], negatives = new double[values.length];
+		for (int r=0; r<rows; r++){
+			final int index = buffer.getIndex(-sX, minY - sY + r);
+			for (int k=r*stride; k<(r + 1)*stride; k++){
+				final double v = data[index + k - r*stride];
+				if (v == 0) zeros[k] = 1;
+				else{
+					if (v < 0) negatives[k] = 1;
+					values[k] = Math.log(Math.abs(v));
+				}
+			}
+		}
+		final double[] zeroCount = new double[length], negativeCount = new double[length];
+		sumWindows(values, width, sX, sY, spans, maxY - minY, dst);
+		sumWindows(zeros, width, sX, sY, spans, maxY - minY, zeroCount);
+		sumWindows(negatives, width, sX, sY, spans, maxY - minY, negativeCount);
+		for (int k=0; k<length; k++){
+			if (zeroCount[k] > 0) dst[k] = 0;
+			else if (negativeCount[k] % 2 == 0) dst[k] = Math.exp(dst[k]/counter);
+			else dst[k] = (counter == 1) ? -Math.exp(dst[k]) : Double.NaN;
+		}
+	}
+	
+	/**
+	 * Returns the columns {first, last} of the window in each of its rows, relative to its center, or null if the window does not cover
+	 * a single interval of some row. Rows that are not covered have first > last.
+	 */
+	private int[][] getSpans(){
+		final int sX = kernelWidth/2,
+				sY = kernelHeight/2;
+		final int[][] spans = new int[2*sY + 1][];
+		for (int dy=-sY; dy<=sY; dy++){
+			int first = sX + 1, last = sX;
+			for (int dx=-sX; dx<=sX; dx++){
+				if (distance.compute(0, 0, dx, dy) > (kernelWidth/2f > kernelHeight/2f ? kernelWidth/2f : kernelHeight/2f)) continue;
+				if (first > sX) first = dx;
+				else if (dx != last + 1) return null;
+				last = dx;
+			}
+			spans[dy + sY] = new int[]{first, last};
+		}
+		return spans;
+	}
+	
+	/**
+	 * Finds the maximum or the minimum of the values covered by the window centered at each pixel of count rows with {@link SlidingMinMax},
+	 * at once if the window is a box or else along each of its rows. values holds the rows read by the window, whose width is
+	 * width + 2*sX, one after the other.
+	 */
+	private static void extremeWindows(final double[] values, final int width, final int sX, final int sY, final int[][] spans, final int count,
+			final boolean max, final double[] dst){
+		boolean box = true;
+		for (int k=0; k<spans.length; k++) box &= spans[k][0] == -sX && spans[k][1] == sX;
+		if (box){
+			SlidingMinMax.filter(values, width, sX, sY, count, max, dst);
+			return;
+		}
+		final int stride = width + 2*sX;
+		final double[] row = new double[width];
+		boolean first = true;
+		for (int dy=0; dy<spans.length; dy++){
+			final int length = spans[dy][1] - spans[dy][0] + 1;
+			if (length <= 0) continue;
+			for (int i=0; i<count; i++){
+				SlidingMinMax.filter(values, (i + dy)*stride + sX + spans[dy][0], 1, 1, width + length - 1, length, max, row, 0, 1);
+				final int offset = i*width;
+				for (int x=0; x<width; x++){
+					final double v = row[x];
+					if (first || (max ? v > dst[offset + x] : v < dst[offset + x])) dst[offset + x] = v;
+				}
+			}
+			first = false;
+		}
+	}
+	
+	/**
+	 * Sums the values covered by the window centered at each pixel of count rows. values holds the rows read by the window, whose width
+	 * is width + 2*sX, one after the other.
+	 */
+	private static void sumWindows(final double[] values, final int width, final int sX, final int sY, final int[][] spans, final int count,
+			final double[] dst){
+		final int stride = width + 2*sX, rows = count + 2*sY;
+		boolean box = true;
+		for (int k=0; k<spans.length; k++) box &= spans[k][0] == -sX && spans[k][1] == sX;
+		
+		//prefix sums of the rows, so any interval of a row is summed at once
+		final double[] prefix = new double[rows*(stride + 1)];
+		for (int r=0; r<rows; r++){
+			double sum = 0;
+			for (int k=0, p=r*(stride + 1); k<stride; k++){
+				sum += values[r*stride + k];
+				prefix[p + k + 1] = sum;
+			}
+		}
+		
+		if (box){
+			//the sums of the rows of the window are added when they enter it and subtracted when they leave it
+			final double[] column = new double[width];
+			for (int r=0; r<rows; r++){
+				final int p = r*(stride + 1);
+				for (int x=0; x<width; x++) column[x] += prefix[p + x + 2*sX + 1] - prefix[p + x];
+				if (r < 2*sY) continue;
+				final int q = (r - 2*sY)*(stride + 1), offset = (r - 2*sY)*width;
+				for (int x=0; x<width; x++){
+					dst[offset + x] = column[x];
+					column[x] -= prefix[q + x + 2*sX + 1] - prefix[q + x];
+				}
+			}
+			return;
+		}
+		for (int i=0; i<count; i++){
+			for (int x=0; x<width; x++){
+				double sum = 0;
+				for (int dy=0; dy<spans.length; dy++){
+					if (spans[dy][0] > spans[dy][1]) continue;
+					final int p = (i + dy)*(stride + 1) + x + sX;
+					sum += prefix[p + spans[dy][1] + 1] - prefix[p + spans[dy][0]];
+				}
+				dst[i*width + x] = sum;
+			}
+		}
+	}
+	
 	public Image applyFilter(final Image image) {
 		return super.applyFilter(image);
 	}
@@ -3,7 +3,7 @@ package filters.blur;
 /**
  *	Shake-effects the input image based on the Gaussian Blur.
  *
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class ShakeEffect extends GaussianBlur{
 	
@@ -1,24 +1,29 @@
 package filters.border;
 
+import filters.FFTConvolution;
 import filters.Filter;
+import filters.Kernel;
+import filters.PaddedBuffer;
 import image.Image;
 import log.Logger;
 
 /**
  * A Gabor filter implementation (Sinusoidal Wave + Gaussian Function).
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class GaborFilter extends Filter{
 	private int kernelWidth = 10, kernelHeight = 10;
 	private float spreadX = 2f, spreadY = 2f, delta = (float) (0.25f*Math.PI);
 	private double offSet = 0;
 	private double[][] kernel;
+	private boolean supressPrint = true;
+	private FFTConvolution fftKernel = null; //set when the kernel is large enough to be convolved in the frequency domain
 	
 	
 	/**
 	 * Set the orientation of the function in degrees.
 	 * @param delta - the degree of rotation.
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOrientation(final float delta){
 		this.delta = (float) (delta*Math.PI/360);
@@ -28,7 +33,7 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the offset of the function.
 	 * @param offset
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOffset(final float offset){
 		this.offSet = offset;
@@ -38,7 +43,7 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the width of the kernel.
 	 * @param kernelSizeX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelSizeX){
 		this.kernelWidth = kernelSizeX;
@@ -48,7 +53,7 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the size of the kernel.
 	 * @param kernelSizeY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelHeight(final int kernelSizeY){
 		this.kernelHeight = kernelSizeY;
@@ -58,7 +63,7 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the size of the kernel (width and height).
 	 * @param kernelSize
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelSize(final int kernelSize){
 		this.setKernelWidth(kernelSize);
@@ -68,7 +73,7 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the spread on the x direction of the Gaussian function.
 	 * @param spreadX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpreadX(final float spreadX){
 		this.spreadX = spreadX;
@@ -78,7 +83,7 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the spread on the y direction of the Gaussian function.
 	 * @param spreadY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpreadY(final float spreadY){
 		this.spreadY = spreadY;
@@ -88,57 +93,72 @@ public class GaborFilter extends Filter{
 	/**
 	 * Sets the spread on both x and y directions of the Gaussian function.
 	 * @param spread
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpread(final float spread){
 		this.setSpreadX(spread);
 		this.setSpreadY(spread);
 	}
 	
+	/**
+	 * Suppresses the print of the kernel whenever it is built, which is suppressed by default.
+	 * @param suppress
+	 */
+	public void setToSupressKernelPrint(final boolean suppress){
+		this.supressPrint = suppress;
+	}
+	
 	protected void updateKernel(){
 		if (update){
 			
-			final int halfSizeX = (int) Math.floor(kernelWidth/2d),
-					halfSizeY = (int) Math.floor(kernelWidth/2d);
-			kernel = new double[halfSizeY*2 + 1][halfSizeX*2 + 1];
-			//Image kernelImg = new Image(kernel[0].length, kernel.length, 1, 32);
-			final int x0 = halfSizeX, y0 = halfSizeY;
-			Logger.log("Gabor Kernel: \n");
-			for (int i=0; i<kernel.length; i++){
-				for (int j=0; j<kernel[0].length; j++){
-					final int x = j - x0, y = i - y0;
-		
-					 kernel[i][j] += Math.exp(- (Math.pow(x, 2)/(2*Math.pow(spreadX, 2)) + Math.pow(y, 2)/(2*Math.pow(spreadY, 2)))) /*gaussian*/ *
-						 2*Math.PI*2*(y*Math.cos(delta) + x*Math.sin(delta) + offSet) /*stripes*/;
-
-					//kernelImg.setPixel(j, i, kernel[i][j]);
-					Logger.log(kernel[i][j] + " ");
-				}
-				Logger.log("\n");
-			}
-			//kernelImg.stretchOrShrinkRange(0, 255);
+			final Kernel gabor = Kernel.getGabor(kernelWidth, kernelHeight, spreadX, spreadY, delta, offSet);
+			kernel = gabor.toArray();
+			if (!supressPrint) Logger.log("Gabor Kernel: \n" + gabor);
+			if (!FFTConvolution.isFaster(kernel[0].length, kernel.length, false)) fftKernel = null;
+			else if (fftKernel == null || !fftKernel.hasKernel(kernel)) fftKernel = new FFTConvolution(kernel);
 			update = false;
 		}
 	}
 
+	@Override
+	public boolean isReentrant(){return true;}
+	@Override
+	protected void prepare(){
+		updateKernel();
+	}
+	@Override
+	public int getKernelRadius(){
+		return Math.max(kernelWidth/2, kernelHeight/2);
+	}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
 		updateKernel();
 		final int halfX = kernelWidth/2, halfY = kernelHeight/2;
 		
-		delta = (float) (delta * Math.PI / 180);
-		
 		double result = 0;
 		for (int i=y - halfY; i<=y + halfY; i++){
 			for (int j=x - halfX; j<=x + halfX; j++){
 				final int kerX = j - (x - halfX), kerY = i - (y - halfY);
 				
-				result += image.getPixelBoundaryMode(j, i, band) * kernel[kerY][kerX];
+				result += buffer.get(j, i) * kernel[kerY][kerX];
 			}
 		}
 		
 		return result;
 	}
+
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		updateKernel();
+		if (buffer == null || fftKernel == null) super.getFilteredRows(buffer, band, minY, maxY, dst);
+		else fftKernel.convolve(buffer, image.getWidth(), minY, maxY, dst);
+	}
 	
 	public Image applyFilter(final Image image) {
 		Image out = super.applyFilter(image);
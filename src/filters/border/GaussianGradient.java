@@ -1,5 +1,9 @@
 package filters.border;
 
+import filters.FFTConvolution;
+import filters.PaddedBuffer;
+import filters.RecursiveGaussian;
+import filters.SeparableConvolution;
 import filters.blur.GaussianBlur;
 import image.Image;
 import log.Logger;
@@ -7,12 +11,15 @@ import log.Logger;
 
 /**
  * Computes a Gaussian-function based Gradient of the image on both or single directions.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class GaussianGradient extends GaussianBlur implements GradientConstants{
 	protected boolean computeXAxis = true, computeYAxis = true;
 	private boolean suppressPrint = false;
 	private double[][] kernelX, kernelY;
+	private double[][] separableKernelX, separableKernelY;
+	private FFTConvolution fftKernelX, fftKernelY;
+	private RecursiveGaussian splitX, splitY; //recursive versions of the halves of opposite signs of the kernels
 	private AverageType operationType = TYPE_MEAN;
 	
 	
@@ -41,7 +48,7 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 	/**
 	 * Suppress the print of the kernel.
 	 * @param suppress
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setToSupressKernelPrint(final boolean suppress){
 		this.suppressPrint = suppress;
@@ -52,7 +59,7 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 	 * Sets the orientation of the computation of the gradient.
 	 * @param computeXAxis - compute on the x direction.
 	 * @param computeYAxis - compute on the y direction.
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setAxisOrientation(final boolean computeXAxis, final boolean computeYAxis){
 		if (computeXAxis != this.computeXAxis || computeYAxis != this.computeYAxis) update = true;
@@ -91,6 +98,7 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 				}
 				if (!suppressPrint) Logger.log("-----------------\n");
 			}
+			separableKernelX = computeXAxis ? SeparableConvolution.factorize(kernelX) : null;
 			
 			if (computeYAxis){
 				kernelY = new double[kernel.length][kernel[0].length];
@@ -101,7 +109,7 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 					for (int i=0; i<halfSizeY; i++)
 						this.kernelY[i][j] = kernel[i][j];
 					
-					for (int i= halfSizeX + 1; i<kernel[0].length; i++){
+					for (int i= halfSizeY + 1; i<kernel.length; i++){
 						this.kernelY[i][j] = -1 * kernel[i][j];
 					}
 				}
@@ -116,15 +124,29 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 				}
 				if (!suppressPrint) Logger.log("-----------------\n");
 			}
+			separableKernelY = computeYAxis ? SeparableConvolution.factorize(kernelY) : null;
+			if (FFTConvolution.isFaster(kernel[0].length, kernel.length, true)){
+				fftKernelX = computeXAxis ? new FFTConvolution(kernelX) : null;
+				fftKernelY = computeYAxis ? new FFTConvolution(kernelY) : null;
+			}else{
+				fftKernelX = null; fftKernelY = null;
+			}
+			splitX = recursive ? RecursiveGaussian.getSplitGaussian(spreadX) : null;
+			splitY = recursive ? RecursiveGaussian.getSplitGaussian(spreadY) : null;
 			
 		}
 	}
 
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
 		updateKernel();
 
-		double resultX = 0, resultY = 0, result = 0;
+		double resultX = 0, resultY = 0;
 		final int halfSizeX = (int) Math.floor(kernelSizeX/2d),
 				halfSizeY = (int) Math.floor(kernelSizeY/2d);
 		
@@ -132,7 +154,7 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 		for (int i=y - halfSizeY; i<= y + halfSizeY; i++){
 			for (int j=x - halfSizeX; j<= x + halfSizeX; j++){
 				final int kerX = j - (x - halfSizeX), kerY = i - (y - halfSizeY);
-				final double p = image.getPixelBoundaryMode(j, i, band);
+				final double p = buffer.get(j, i);
 				
 				if (computeXAxis){
 					resultX += (p * kernelX[kerY][kerX]);
@@ -143,8 +165,15 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 			}
 		}
 		
+		return combine(resultX, resultY);
+	}
+
+	/**
+	 * Combines the gradients on the x and y directions according to the operation type.
+	 */
+	private double combine(final double resultX, final double resultY){
 		float divisor = 0;
-		result = (computeXAxis ? resultX : resultY);
+		double result = (computeXAxis ? resultX : resultY);
 		if (computeXAxis && computeYAxis){
 			switch(operationType){
 			case TYPE_MEAN:
@@ -172,6 +201,47 @@ public class GaussianGradient extends GaussianBlur implements GradientConstants{
 		
 		return result;
 	}
+
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		updateKernel();
+		if (buffer == null || (!recursive && ((computeXAxis && separableKernelX == null) || (computeYAxis && separableKernelY == null)))){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		final int size = (maxY - minY)*image.getWidth();
+		final double[] resultX = computeXAxis ? new double[size] : null, resultY = computeYAxis ? new double[size] : null;
+		if (recursive){
+			if (computeXAxis) RecursiveGaussian.convolve(buffer, splitX, recursiveY, image.getWidth(), minY, maxY, resultX);
+			if (computeYAxis) RecursiveGaussian.convolve(buffer, recursiveX, splitY, image.getWidth(), minY, maxY, resultY);
+			//the recursive Gaussians sum 1
+			for (int k=0; k<size; k++){
+				if (computeXAxis) resultX[k] *= kernelSum;
+				if (computeYAxis) resultY[k] *= kernelSum;
+			}
+		}else if (computeXAxis && computeYAxis && fftKernelX != null && fftKernelY != null){
+			//both kernels share the transform of the rows
+			FFTConvolution.convolve(new FFTConvolution[]{fftKernelX, fftKernelY}, buffer, image.getWidth(), minY, maxY, new double[][]{resultX, resultY});
+		}else{
+			if (computeXAxis && fftKernelX != null) fftKernelX.convolve(buffer, image.getWidth(), minY, maxY, resultX);
+			else if (computeXAxis) SeparableConvolution.convolve(buffer, separableKernelX[0], separableKernelX[1], image.getWidth(), minY, maxY, resultX);
+			if (computeYAxis && fftKernelY != null) fftKernelY.convolve(buffer, image.getWidth(), minY, maxY, resultY);
+			else if (computeYAxis) SeparableConvolution.convolve(buffer, separableKernelY[0], separableKernelY[1], image.getWidth(), minY, maxY, resultY);
+		}
+		for (int k=0; k<size; k++) dst[k] = combine(computeXAxis ? resultX[k] : 0, computeYAxis ? resultY[k] : 0);
+	}
+	
+	/**
+	 * Filters the whole image without stretching the result to the range 0-255, i.e., as {@link #getFilteredPixel(Image, int, int, int)}
+	 * does pixel by pixel.
+	 * @return
+	 */
+	Image getUnstretchedImage(){
+		return super.applyFilter(image);
+	}
+	
+	@Override
+	public boolean isStreamable(){return false;} //the result is stretched
 	
 	public Image applyFilter(final Image image) {
 		Image out = super.applyFilter(image);
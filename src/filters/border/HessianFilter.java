@@ -23,12 +23,14 @@ interface HessianFilterConstants{
 
 /**
  * Filters the image according to properties of the Hessian Matrix (good to find and analyse borders)..
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class HessianFilter extends Filter implements HessianFilterConstants{
 
 	
 	private boolean useGaussianGradient = true; //if set to false it will use a linear one - Sobel-like (faster)11
+	private boolean recursive = false;
+	private Image[] secondDerivatives = null; //computed at once for the recursive Gaussian
 	private int distance = 1;
 	private Image firstDerivativeX = null,
 			firstDerivativeY = null;
@@ -70,15 +72,25 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	}
 	/**
 	 * @param useGaussianGradient
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setToUseGaussianGradient(boolean useGaussianGradient){
 		this.useGaussianGradient = useGaussianGradient;
 	}
+	/**
+	 * Sets whether the Gaussian gradients use the recursive Gaussian, whose cost per pixel does not depend on the spreading, see
+	 * {@link filters.blur.GaussianBlur#setToUseRecursiveGaussian(boolean)}. The Gaussians are then not truncated to the kernel size.
+	 * @param recursive
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
+	public void setToUseRecursiveGaussian(boolean recursive){
+		this.recursive = recursive;
+		this.update = true;
+	}
 	/**
 	 * Sets the spreading on the x direction of the Gaussian functions (derivatives).
 	 * @param spreadX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpreadX(final float spreadX){
 		this.spreadX = spreadX;
@@ -86,7 +98,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	/**
 	 * Sets the spreading on the y direction of the Gaussian functions (used to compute the derivatives).
 	 * @param spreadX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setSpreadY(final float spreadY){
 		this.spreadY = spreadY;
@@ -94,7 +106,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	/**
 	 * Sets the kernel width.
 	 * @param kernelWidth
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelWidth){
 		this.kernelWidth = kernelWidth;
@@ -102,7 +114,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	/**
 	 * Sets the kernel height.
 	 * @param kernelHeight
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelHeight(final int kernelHeight){
 		this.kernelHeight = kernelHeight;
@@ -110,7 +122,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	/**
 	 * Sets the amplitude of the Gaussian functions (used to compute the derivatives).
 	 * @param amplitude
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setAmplitude(final float amplitude){
 		this.amplitude = amplitude;
@@ -118,7 +130,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	/**
 	 * Sets the scale or the magnitude of the detection. Increases the spreading on the x and y directions and the kernel size.
 	 * @param scale
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setScale(float scale){
 		//this.setAmplitude((float)(2*Math.PI*Math.pow(sigma,2)));
@@ -140,13 +152,13 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 	/**
 	 * Sets the distance of the linear gradient. It is a linear gradient parameter only, it does nothing if GaussianGradient is set to be used.
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setDistance(final int distance){this.distance = distance;}
 	/**
 	 * Sets the type of the operation for the filter. The selected option will define the value to be placed on the filtered image, based on the Hessian Matrix.
 	 * @param operation
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOperationType(final HessianOperationType operation){this.operation = operation;}
 	
@@ -184,6 +196,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 				xDer.setAmplitude(amplitude);
 				xDer.setKernelHeight(kernelHeight);
 				xDer.setKernelWidth(kernelWidth);
+				xDer.setToUseRecursiveGaussian(recursive);
 				
 				firstDerivativeX = xDer.getFilteredImage();
 				
@@ -194,6 +207,7 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 				yDer.setAmplitude(amplitude);
 				yDer.setKernelWidth(kernelWidth);
 				yDer.setKernelHeight(kernelHeight);
+				yDer.setToUseRecursiveGaussian(recursive);
 				
 				firstDerivativeY = yDer.getFilteredImage();
 				
@@ -214,15 +228,24 @@ public class HessianFilter extends Filter implements HessianFilterConstants{
 				((GaussianGradient)yxDer).setAxisOrientation(false, true);
 				((GaussianGradient)yxDer).setSpreadX(spreadX); ((GaussianGradient)yxDer).setSpreadY(spreadY);
 				((GaussianGradient)yxDer).setAmplitude(amplitude); ((GaussianGradient)yxDer).setKernelHeight(kernelHeight); ((GaussianGradient)yxDer).setKernelWidth(kernelWidth);
+				
+				if (recursive){
+					//the recursive Gaussian does not filter single pixels, so the whole second derivatives are computed at once
+					((GaussianGradient)xDer2).setToUseRecursiveGaussian(true); ((GaussianGradient)xyDer).setToUseRecursiveGaussian(true);
+					((GaussianGradient)yxDer).setToUseRecursiveGaussian(true); ((GaussianGradient)yDer2).setToUseRecursiveGaussian(true);
+					secondDerivatives = new Image[]{((GaussianGradient)xDer2).getUnstretchedImage(), ((GaussianGradient)xyDer).getUnstretchedImage(),
+							((GaussianGradient)yxDer).getUnstretchedImage(), ((GaussianGradient)yDer2).getUnstretchedImage()};
+				}
 			}
+			if (!useGaussianGradient || !recursive) secondDerivatives = null;
 		
 			update = false;
 		}
 		
-		double a = xDer2.getFilteredPixel(x, y, band),
-				b = xyDer.getFilteredPixel(x, y, band),
-				c = yxDer.getFilteredPixel(x, y, band),
-				d = yDer2.getFilteredPixel(x, y, band);
+		double a = (secondDerivatives != null) ? secondDerivatives[0].getPixel(x, y, band) : xDer2.getFilteredPixel(x, y, band),
+				b = (secondDerivatives != null) ? secondDerivatives[1].getPixel(x, y, band) : xyDer.getFilteredPixel(x, y, band),
+				c = (secondDerivatives != null) ? secondDerivatives[2].getPixel(x, y, band) : yxDer.getFilteredPixel(x, y, band),
+				d = (secondDerivatives != null) ? secondDerivatives[3].getPixel(x, y, band) : yDer2.getFilteredPixel(x, y, band);
 		
 		double result = 0;
 		switch(operation){
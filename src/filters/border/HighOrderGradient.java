@@ -1,5 +1,6 @@
 package filters.border;
 
+import filters.PaddedBuffer;
 import image.Image;
 
 interface HighOrderGradientConstants{
@@ -10,7 +11,7 @@ interface HighOrderGradientConstants{
 
 /**
  * Computers high order gradients or derivatives from the image.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class HighOrderGradient extends GaussianGradient implements HighOrderGradientConstants{
 	
@@ -46,7 +47,7 @@ public class HighOrderGradient extends GaussianGradient implements HighOrderGrad
 	/**
 	 * Sets the type of the high order gradient, it either can be linear or Gaussian-based.
 	 * @param type
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setType(HighOrderGradientType type){
 		if (this.type != type) update = true;
@@ -55,7 +56,7 @@ public class HighOrderGradient extends GaussianGradient implements HighOrderGrad
 	/**
 	 * Sets the Gaussian Gradient if you have already instantiated it.
 	 * @param gaussianGradient
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setGaussianGradient(GaussianGradient gaussianGradient){
 		update = true;
@@ -64,7 +65,7 @@ public class HighOrderGradient extends GaussianGradient implements HighOrderGrad
 	/**
 	 * Sets the Linear Gradient if you have already instantiated it.
 	 * @param lGradient
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setLinearGradient(LinearGradient lGradient){
 		update = true;
@@ -73,7 +74,7 @@ public class HighOrderGradient extends GaussianGradient implements HighOrderGrad
 	/**
 	 * Sets the distance for the computation of the linear gradient. Only applies to the linear gradient.
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setLinearGradientDistance(final int distance){
 		update = true;
@@ -82,7 +83,7 @@ public class HighOrderGradient extends GaussianGradient implements HighOrderGrad
 	/**
 	 * Sets the order of the derivatives or gradient. 
 	 * @param order
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setGradientOrder(final int order){
 		if (gradientOrder != order) update = true;
@@ -92,6 +93,21 @@ public class HighOrderGradient extends GaussianGradient implements HighOrderGrad
 
 	private Image cachedGradient = null;
 	
+	/* (non-Javadoc)
+	 * Each order filters the previous one, so the neighbourhood of a pixel is not bounded by the kernel of a single gradient.
+	 * @see filters.blur.GaussianBlur#getKernelRadius()
+	 */
+	@Override
+	public int getKernelRadius(){
+		return -1;
+	}
+	@Override
+	public boolean isReentrant(){return false;}
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
+		return getFilteredPixel(this.image, x, y, band);
+	}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
 		synchronized(this){
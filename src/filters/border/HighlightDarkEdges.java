@@ -1,12 +1,14 @@
 package filters.border;
 
+import filters.Kernel;
+import filters.PaddedBuffer;
 import filters.blur.GaussianBlur;
 import image.Image;
 import log.Logger;
 
 /**
  * Highlights the dark edges biased by a Gaussian function.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class HighlightDarkEdges extends GaussianBlur{
 	//private double negativeSum = 0;
@@ -20,13 +22,11 @@ public class HighlightDarkEdges extends GaussianBlur{
 	protected void updateKernel(){
 		if (update){
 			//negativeSum = 0;
-			super.supressPrint = true;
 			super.updateKernel();
 			
 			final int halfX = kernel[0].length/2,
 					halfY = kernel.length/2;
 			
-			Logger.log("Laplacian Kernel:\n");
 			for (int i=0; i<this.kernel.length; i++){
 				for (int j=0; j<this.kernel[0].length; j++){
 					
@@ -36,22 +36,25 @@ public class HighlightDarkEdges extends GaussianBlur{
 					}else{
 						//kernelSum += -2*kernel[i][j];
 					}
-					
-					Logger.log(kernel[i][j] + " ");
 				}
-				Logger.log("\n");
 			}
+			if (!supressPrint) Logger.log("Laplacian Kernel:\n" + Kernel.toString(kernel));
 		}
 	}
 	
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
 		updateKernel();
 		
 		final int halfX = kernel[0].length/2,
 				halfY = kernel.length/2;
 		
-		final double positiveParcel = image.getPixelBoundaryMode(x, y, band) / kernel[halfY][halfX];
+		final double positiveParcel = buffer.get(x, y) / kernel[halfY][halfX];
 		double negativeParcel = 0;
 
 		double result = 0;
@@ -62,7 +65,7 @@ public class HighlightDarkEdges extends GaussianBlur{
 				final int kerX = j - (x - halfSizeX), kerY = i - (y - halfSizeY);
 				
 				if (!(kerX == halfX && kerY == halfY))
-					negativeParcel += image.getPixelBoundaryMode(j, i, band) * kernel[kerY][kerX];
+					negativeParcel += buffer.get(j, i) * kernel[kerY][kerX];
 				
 			}
 		}
@@ -71,4 +74,24 @@ public class HighlightDarkEdges extends GaussianBlur{
 		
 		return result;
 	}
+
+	/* (non-Javadoc)
+	 * The kernel is the Gaussian with the opposite sign, except for the center, so it is convolved as a Gaussian and the center is removed.
+	 * @see filters.blur.GaussianBlur#getFilteredRows(filters.PaddedBuffer, int, int, int, double[])
+	 */
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		updateKernel();
+		if (buffer == null || !convolveGaussian(buffer, minY, maxY, dst)){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		final double center = kernel[kernel.length/2][kernel[0].length/2];
+		for (int i=minY, k=0; i<maxY; i++){
+			for (int j=0; j<image.getWidth(); j++, k++){
+				final double p = buffer.get(j, i);
+				dst[k] = Math.abs((p*center - dst[k])/(p/center));
+			}
+		}
+	}
 }
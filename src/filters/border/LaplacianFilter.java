@@ -1,12 +1,14 @@
 package filters.border;
 
+import filters.Kernel;
+import filters.PaddedBuffer;
 import filters.blur.GaussianBlur;
 import image.Image;
 import log.Logger;
 
 /**
  * A Laplacian filter.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class LaplacianFilter extends GaussianBlur{
 	
@@ -40,13 +42,11 @@ public class LaplacianFilter extends GaussianBlur{
 	protected void updateKernel(){
 		if (update){
 			negativeSum = 0;
-			super.supressPrint = true;
 			super.updateKernel();
 			
 			final int halfX = kernel[0].length/2,
 					halfY = kernel.length/2;
 			
-			Logger.log("Laplacian Kernel:\n");
 			for (int i=0; i<this.kernel.length; i++){
 				for (int j=0; j<this.kernel[0].length; j++){
 					
@@ -56,16 +56,19 @@ public class LaplacianFilter extends GaussianBlur{
 					}else{
 						kernelSum += -2*kernel[i][j];
 					}
-					
-					Logger.log(kernel[i][j] + " ");
 				}
-				Logger.log("\n");
 			}
+			if (!supressPrint) Logger.log("Laplacian Kernel:\n" + Kernel.toString(kernel));
 		}
 	}
 	
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
 		updateKernel();
 		
 		final int halfX = kernel[0].length/2,
@@ -81,15 +84,36 @@ public class LaplacianFilter extends GaussianBlur{
 				final int kerX = j - (x - halfSizeX), kerY = i - (y - halfSizeY);
 				
 				if (kerX == halfX && kerY == halfY){
-					result += (image.getPixelBoundaryMode(j, i, band) * kernel[kerY][kerX])*positiveFactor;
+					result += (buffer.get(j, i) * kernel[kerY][kerX])*positiveFactor;
 				}else
-					result += image.getPixelBoundaryMode(j, i, band) * kernel[kerY][kerX];
+					result += buffer.get(j, i) * kernel[kerY][kerX];
 				
 			}
 		}
 		
 		return result;
 	}
+
+	/* (non-Javadoc)
+	 * The kernel is the Gaussian with the opposite sign, except for the center, so it is convolved as a Gaussian and the center is corrected.
+	 * @see filters.blur.GaussianBlur#getFilteredRows(filters.PaddedBuffer, int, int, int, double[])
+	 */
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		updateKernel();
+		if (buffer == null || !convolveGaussian(buffer, minY, maxY, dst)){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		final double center = kernel[kernel.length/2][kernel[0].length/2],
+				centerFactor = center*(1 + (-1*negativeSum)/center);
+		for (int i=minY, k=0; i<maxY; i++)
+			for (int j=0; j<image.getWidth(); j++, k++)
+				dst[k] = buffer.get(j, i)*centerFactor - dst[k];
+	}
+	
+	@Override
+	public boolean isStreamable(){return false;} //the result is stretched
 	
 	public Image applyFilter(final Image image) {
 		Image out = super.applyFilter(image);
@@ -6,7 +6,7 @@ import image.Image;
 
 /**
  * Linear gradient that combines the derivatives in the x and y directions.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class LinearGradient extends Filter implements GradientConstants{
 	/**
@@ -45,7 +45,7 @@ public class LinearGradient extends Filter implements GradientConstants{
 	/**
 	 * Sets the operation when averaging both derivatives (x and y axes).
 	 * @param operation
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOperation(final AverageType operation){this.operation = operation;}
 	public void setAxisOrientation(final boolean computeXAxis, final boolean computeYAxis){
@@ -54,6 +54,9 @@ public class LinearGradient extends Filter implements GradientConstants{
 	}
 	
 
+	@Override
+	public boolean isReentrant(){return true;}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
 		
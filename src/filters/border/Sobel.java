@@ -1,11 +1,12 @@
 package filters.border;
 
 import filters.Filter;
+import filters.PaddedBuffer;
 import image.Image;
 
 /**
  * Classifical Sobel filter //TO BE FINISHED
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Sobel extends Filter{
 	private boolean vertical = true, horizontal = true;
@@ -28,28 +29,43 @@ public class Sobel extends Filter{
 	/**
 	 * Sets the kernel for the computation of the Sobel filter in the x direction.
 	 * @param filter
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setFilterX(Image filter){this.kernelDirectionX = filter;}
 	/**
 	 * Sets the kernel for the computation of the Sobel filter in the y direction.
 	 * @param filter
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setFilterY(Image filter){this.kernelDirectionY = filter;}
 
 	
 	
+	@Override
+	public boolean isReentrant(){return true;}
+	@Override
+	public boolean isStreamable(){return true;}
+	@Override
+	public int getKernelRadius(){
+		final int halfX = kernelDirectionX.getWidth()/2, halfY = kernelDirectionY.getHeight()/2;
+		return Math.max(Math.max(halfX, kernelDirectionY.getWidth() - 1 - halfX), Math.max(halfY, kernelDirectionX.getHeight() - 1 - halfY));
+	}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
 		double result = 0;	
 		final int halfX = kernelDirectionX.getWidth()/2, halfY = kernelDirectionY.getHeight()/2;
 		for (int i=0; i<kernelDirectionX.getHeight(); i++){
 			for (int j=0; j<kernelDirectionY.getWidth(); j++){
-				if (vertical && horizontal) result += (image.getPixelBoundaryMode(x - halfX + j, y - halfY + i, band) * kernelDirectionY.getPixel(j, i) + 
-						image.getPixelBoundaryMode(x - halfX + j, y - halfY + i, band) * kernelDirectionX.getPixel(j, i))/2f;
-				else if (vertical) result += image.getPixelBoundaryMode(x - halfX + j, y - halfY + i, band) * kernelDirectionY.getPixel(j, i);
-				else if (horizontal) result += image.getPixelBoundaryMode(x - halfX + j, y - halfY + i, band) * kernelDirectionX.getPixel(j, i);
+				if (vertical && horizontal) result += (buffer.get(x - halfX + j, y - halfY + i) * kernelDirectionY.getPixel(j, i) + 
+						buffer.get(x - halfX + j, y - halfY + i) * kernelDirectionX.getPixel(j, i))/2f;
+				else if (vertical) result += buffer.get(x - halfX + j, y - halfY + i) * kernelDirectionY.getPixel(j, i);
+				else if (horizontal) result += buffer.get(x - halfX + j, y - halfY + i) * kernelDirectionX.getPixel(j, i);
 			}
 		}
 		return result;
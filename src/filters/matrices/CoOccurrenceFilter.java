@@ -4,8 +4,10 @@ import static distances.Distance.*;
 
 import distances.Distance;
 import filters.Filter;
-
+import filters.PaddedBuffer;
 import image.Image;
+import matrices.CoOccurrenceCounts;
+import matrices.CoOccurrenceFeatures;
 import matrices.CoOccurrenceMatrix;
 
 interface CoOccurrenceConstants{
@@ -16,8 +18,9 @@ interface CoOccurrenceConstants{
 }
 
 /**
- * A filter based on the Co-Occurrence Matrix.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * A filter based on the Co-Occurrence Matrix. If a number of grey levels is set, the matrix is a dense array of counts that follows the
+ * neighbourhood along the rows, getting the pairs that enter it and losing the ones that leave it, see {@link CoOccurrenceCounts}.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	private int kernelSizeX = 7, kernelSizeY = 7;
@@ -25,6 +28,12 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	private boolean computeBothOrientations = false;
 	public int deltaX = 1, deltaY = 0;
 	private float momentDegree = 2;
+	private int greyLevels = 0;
+	//offsets {dx, dy} of the first pixel of the pairs in the neighbourhood, of the ones that enter it when it moves to the next column and of the ones that leave it
+	private int[][][] pairs = null;
+	//minimum and maximum intensity of each band, and the image they belong to, until the filter is applied
+	private double[][] ranges = null;
+	private Image rangesImage = null;
 	
 	private CoOccurrenceType operation = TYPE_HOMOGENEITY;
 	
@@ -84,20 +93,20 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	/**
 	 * Sets the equation to be computed from the local co-occurrence matrices.
 	 * @param type
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOperationType(final CoOccurrenceType type){
 		this.operation = type;
 	}
 	/**
 	 * Sets the neighbourhood size around the processed pixel.
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelWidth){
 		this.kernelSizeX = kernelWidth % 2 == 0 ? kernelWidth + 1 : kernelWidth;
 	}
 	public void setKernelHeight(final int kernelHeight){
-		this.kernelSizeX = kernelHeight % 2 == 0 ? kernelHeight + 1 : kernelHeight;
+		this.kernelSizeY = kernelHeight % 2 == 0 ? kernelHeight + 1 : kernelHeight;
 	}
 	public void setKernelSize(final int kernelSize){
 		this.setKernelHeight(kernelSize);
@@ -107,7 +116,7 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	 * Sets the distance type of the computation. If the euclidean distance is set, then a circular region around the iterated pixel is regarded.
 	 * If the chebyshev distance is chosen, then a squared region would be regarded instead.
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelRadialDistanceMeasure(final Distance distance){
 		this.kernelRadialDistance = distance;
@@ -115,7 +124,7 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	/**
 	 * Sets to compute in both orientations. Preferably leave it as default.
 	 * @param computeBothOrientations
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setToComputeToBothOrientations(final boolean computeBothOrientations){
 		this.computeBothOrientations = computeBothOrientations;
@@ -124,7 +133,7 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	 * Sets the delta x and delta y for the computation of the co-occurrence matrix.
 	 * @param deltaX
 	 * @param deltaY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setDelta(final int deltaX, final int deltaY){
 		this.deltaX = deltaX;
@@ -133,22 +142,139 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 	/**
 	 * Sets the moment degree for the computation of moments based on the co-occurrence matrix (if applicable).
 	 * @param degree
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setMomentDegree(final float degree){
 		this.momentDegree = degree;
 	}
+	/**
+	 * Quantizes the intensities in the given number of grey levels (e.g., from 8 to 256), which split the range of each band in equal parts,
+	 * so the local co-occurrence matrices are updated as the neighbourhood slides instead of being built for every pixel. The features are
+	 * then computed from the levels instead of the grey values. If 0, which is the default, the grey values are compared as they are.
+	 * @param levels
+	 */
+	public void setGreyLevels(final int levels){
+		this.greyLevels = levels;
+	}
+	
+	@Override
+	public boolean isReentrant(){return true;}
+	@Override
+	public int getKernelRadius(){
+		return Math.max(kernelSizeX/2, kernelSizeY/2);
+	}
+	@Override
+	protected void prepare(){
+		updatePairs();
+		updateRanges();
+	}
+	private void updatePairs(){
+		this.pairs = getPairs(deltaX, deltaY);
+	}
+	/**
+	 * Returns the pixels of the neighbourhood that are closer to its center than its radius, as {@link CoOccurrenceMatrix} does, and whose
+	 * pair, deltaX and deltaY pixels away, is in the neighbourhood, followed by the ones that enter it when it moves to the next column and
+	 * by the ones that leave it.
+	 */
+	private int[][][] getPairs(final int deltaX, final int deltaY){
+		final int sX = kernelSizeX/2, sY = kernelSizeY/2, width = 2*sX + 3;
+		final float radius = Math.max(sX, sY);
+		//the pixels in a grid with an empty border, so their neighbours can be checked
+		final boolean[] inside = new boolean[(2*sY + 1)*width];
+		int count = 0;
+		for (int dy=-sY; dy<=sY; dy++){
+			for (int dx=-sX; dx<=sX; dx++){
+				if (kernelRadialDistance.compute(0, 0, dx, dy) > radius) continue;
+				if (Math.abs(dx + deltaX) > sX || Math.abs(dy + deltaY) > sY) continue;
+				inside[(dy + sY)*width + dx + sX + 1] = true;
+				count++;
+			}
+		}
+		final int[][] pairs = new int[count][];
+		int enteringCount = 0, leavingCount = 0;
+		for (int k=0, dy=-sY; dy<=sY; dy++){
+			for (int dx=-sX; dx<=sX; dx++){
+				final int index = (dy + sY)*width + dx + sX + 1;
+				if (!inside[index]) continue;
+				pairs[k++] = new int[]{dx, dy};
+				if (!inside[index + 1]) enteringCount++;
+				if (!inside[index - 1]) leavingCount++;
+			}
+		}
+		final int[][] entering = new int[enteringCount][], leaving = new int[leavingCount][];
+		enteringCount = leavingCount = 0;
+		for (int k=0; k<count; k++){
+			final int dx = pairs[k][0], dy = pairs[k][1], index = (dy + sY)*width + dx + sX + 1;
+			if (!inside[index + 1]) entering[enteringCount++] = pairs[k];
+			if (!inside[index - 1]) leaving[leavingCount++] = new int[]{dx - 1, dy};
+		}
+		return new int[][][]{pairs, entering, leaving};
+	}
+	@Override
+	protected void release(){
+		rangesImage = null;
+		ranges = null;
+	}
+	private void updateRanges(){
+		this.ranges = getRanges(image);
+		this.rangesImage = image;
+	}
+	//the ranges of prepare while applying the filter to the image, otherwise new ones from its current statistics, so filtering pixel by
+	//pixel does not change the filter
+	private double[][] getRanges(final Image image){
+		double[][] ranges = this.ranges;
+		if (ranges != null && image == rangesImage) return ranges;
+		ranges = new double[image.getNumBands()][];
+		for (int b=0; b<ranges.length; b++)
+			ranges[b] = new double[]{image.getStatistics(b).getMinimum(), image.getStatistics(b).getMaximum()};
+		return ranges;
+	}
+	private double getFeature(final CoOccurrenceCounts counts){
+		switch(operation){
+		case TYPE_ENERGY:
+			return counts.getEnergy();
+		case TYPE_CONTRAST:
+			return counts.getContrast();
+		case TYPE_HOMOGENEITY:
+			return counts.getHomogeneity();
+		case TYPE_ENTROPY:
+			return counts.getEntropy();
+		default:
+			return counts.getMoment();
+		}
+	}
 	
 	
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band, image);
+	}
+	
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
+		return getFilteredPixel(buffer, x, y, band, image);
+	}
+	//the image only gives the range of the band, the fields of the filter are left as they are
+	private double getFilteredPixel(final PaddedBuffer buffer, final int x, final int y, final int band, final Image image){
+		if (greyLevels > 0){
+			final int[][] pairs = getPairs(deltaX, deltaY)[0];
+			final double[] range = getRanges(image)[band];
+			final double min = range[0], max = range[1];
+			final CoOccurrenceCounts counts = new CoOccurrenceCounts(greyLevels, computeBothOrientations, momentDegree);
+			for (int k=0; k<pairs.length; k++){
+				final int a = CoOccurrenceCounts.getLevel(buffer.get(x + pairs[k][0], y + pairs[k][1]), min, max, greyLevels),
+						b = CoOccurrenceCounts.getLevel(buffer.get(x + pairs[k][0] + deltaX, y + pairs[k][1] + deltaY), min, max, greyLevels);
+				counts.add(a, b);
+			}
+			return getFeature(counts);
+		}
 		Image neighImage = new Image(kernelSizeX, kernelSizeY, 1, 32, true);
 		
 		final int sX = kernelSizeX/2, sY = kernelSizeY/2;
 		
 		for (int i=y - sY; i <= y + sY; i++){
 			for (int j=x - sX; j <= x + sX; j++){
-				neighImage.setPixel(j - x + sX, i - y + sY, image.getPixelBoundaryMode(j, i, band));
+				neighImage.setPixel(j - x + sX, i - y + sY, buffer.get(j, i));
 			}
 		}
 		
@@ -181,6 +307,106 @@ public class CoOccurrenceFilter extends Filter implements CoOccurrenceConstants{
 		return result;
 	}
 	
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		if (buffer == null || greyLevels <= 0){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		slide(buffer, band, minY, maxY, greyLevels, new int[][]{{deltaX, deltaY}}, new int[][][][]{pairs}, new int[]{operation.ordinal()},
+				new double[][]{dst});
+	}
+	
+	/**
+	 * Slides the neighbourhood along the rows minY (inclusive) to maxY (exclusive) of the padded band, keeping a co-occurrence matrix of
+	 * levels grey levels for each delta, and stores the features (see {@link CoOccurrenceFeatures}) of the delta d in dst[d*features.length + f].
+	 */
+	private void slide(final PaddedBuffer buffer, final int band, final int minY, final int maxY, final int levels, final int[][] deltas,
+			final int[][][][] pairs, final int[] features, final double[][] dst){
+		final int width = image.getWidth(), r = getKernelRadius(), stride = width + 2*r, rows = maxY - minY + 2*r;
+		final double min = ranges[band][0], max = ranges[band][1];
+		
+		//levels of the rows read by the neighbourhood
+		final double[] data = buffer.getData();
+		final int[] pixels = new int[rows*stride];
+		for (int i=0; i<rows; i++){
+			final int index = buffer.getIndex(-r, minY - r + i);
+			for (int j=0; j<stride; j++) pixels[i*stride + j] = CoOccurrenceCounts.getLevel(data[index + j], min, max, levels);
+		}
+		
+		for (int d=0; d<deltas.length; d++){
+			final int[][] all = pairs[d][0], entering = pairs[d][1], leaving = pairs[d][2];
+			final int delta = deltas[d][1]*stride + deltas[d][0];
+			final CoOccurrenceCounts counts = new CoOccurrenceCounts(levels, computeBothOrientations, momentDegree);
+			for (int i=0, k=0; i<maxY - minY; i++){
+				final int center = (i + r)*stride + r;
+				counts.clear();
+				for (int m=0; m<all.length; m++){
+					final int p = center + all[m][1]*stride + all[m][0];
+					counts.add(pixels[p], pixels[p + delta]);
+				}
+				for (int x=0; x<width; x++, k++){
+					if (x > 0){
+						for (int m=0; m<leaving.length; m++){
+							final int p = center + x + leaving[m][1]*stride + leaving[m][0];
+							counts.remove(pixels[p], pixels[p + delta]);
+						}
+						for (int m=0; m<entering.length; m++){
+							final int p = center + x + entering[m][1]*stride + entering[m][0];
+							counts.add(pixels[p], pixels[p + delta]);
+						}
+					}
+					for (int f=0; f<features.length; f++) dst[d*features.length + f][k] = CoOccurrenceFeatures.getFeature(counts, features[f]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes the features of the local co-occurrence matrices of several deltas at once, e.g., the ones of {@link CoOccurrenceFeatures#getOffsets(int...)},
+	 * quantizing each band only once. The band f of the result, for f from 0 to features.length - 1, holds the feature features[f] of the
+	 * first delta of the first band of the image, followed by the ones of the second delta and so on, so the result has
+	 * numBands*deltas.length*features.length bands. The number of grey levels is the one set by {@link #setGreyLevels(int)}, or 256 if none
+	 * was set, and the features are not stretched.
+	 * @param image
+	 * @param deltas - {deltaX, deltaY} of each matrix
+	 * @param features - e.g., {@link CoOccurrenceFeatures#CONTRAST}, all of them if none are given
+	 * @return
+	 */
+	public Image getFeatureMaps(final Image image, final int[][] deltas, int... features){
+		if (features.length == 0) features = new int[]{CoOccurrenceFeatures.ENERGY, CoOccurrenceFeatures.CONTRAST, CoOccurrenceFeatures.HOMOGENEITY,
+				CoOccurrenceFeatures.ENTROPY, CoOccurrenceFeatures.MOMENT};
+		this.setImage(image);
+		updateRanges();
+		try{
+			final int width = image.getWidth(), height = image.getHeight(), maps = deltas.length*features.length, levels = (greyLevels > 0) ? greyLevels : 256;
+			final int[][][][] pairs = new int[deltas.length][][][];
+			for (int d=0; d<deltas.length; d++) pairs[d] = getPairs(deltas[d][0], deltas[d][1]);
+		
+			final Image out = new Image(width, height, image.getNumBands()*maps, 32, true);
+			final int rowsPerBlock = Math.max(1, Math.min(height, (1 << 16)/width));
+			final double[][] dst = new double[maps][rowsPerBlock*width];
+			final double[] row = new double[width];
+			final PaddedBuffer buffer = new PaddedBuffer();
+			for (int b=0; b<image.getNumBands(); b++){
+				for (int y=0; y<height; y+=rowsPerBlock){
+					final int maxY = Math.min(height, y + rowsPerBlock);
+					buffer.fill(image, b, getKernelRadius(), 0, y, width, maxY - y);
+					slide(buffer, b, y, maxY, levels, deltas, pairs, features, dst);
+					for (int m=0; m<maps; m++){
+						for (int i=y; i<maxY; i++){
+							System.arraycopy(dst[m], (i - y)*width, row, 0, width);
+							out.setRow(i, b*maps + m, row);
+						}
+					}
+				}
+			}
+			return out;
+		}finally{
+			release();
+		}
+	}
+	
 	public Image applyFilter(final Image image) {
 		Image out = super.applyFilter(image);
 		out.stretchOrShrinkRange(0, 255);
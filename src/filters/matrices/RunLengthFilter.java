@@ -2,9 +2,14 @@ package filters.matrices;
 
 import static distances.Distance.CHEBYSHEV_DISTANCE;
 
+import java.util.Arrays;
+
 import distances.Distance;
 import filters.Filter;
+import filters.PaddedBuffer;
 import image.Image;
+import matrices.CoOccurrenceCounts;
+import matrices.RunLengthCounts;
 import matrices.RunLengthMatrix;
 
 interface RunLengthConstants{
@@ -14,14 +19,23 @@ interface RunLengthConstants{
 }
 
 /**
- * A filter based on the run length matrix.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * A filter based on the run length matrix. If a number of grey levels is set, the number of runs of each level follows the neighbourhood
+ * along the rows: a pixel starts a run when the previous pixel of the orientation is out of the neighbourhood or has another level, so only
+ * the pixels that enter and leave the neighbourhood, and the ones whose previous pixel does, are checked at each step.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class RunLengthFilter extends Filter implements RunLengthConstants{
 
 	private int kernelSizeX = 7, kernelSizeY = 7;
 	private Distance kernelRadialDistance = CHEBYSHEV_DISTANCE;
 	private int orientation = 0;
+	private int greyLevels = 0;
+	//offsets {dx, dy} of the pixels of the neighbourhood whose previous pixel is out of it, of the ones that enter it when it moves to the next
+	//column and of the ones that leave it, followed by the same for the pixels whose previous pixel is in it
+	private int[][][] offsets = null;
+	//minimum and maximum intensity of each band, and the image they belong to, until the filter is applied
+	private double[][] ranges = null;
+	private Image rangesImage = null;
 	
 	private RunLengthType operation = TYPE_GREY_LEVEL_NON_UNIFORMITY;
 	
@@ -59,7 +73,7 @@ public class RunLengthFilter extends Filter implements RunLengthConstants{
 	/**
 	 * Sets the equation to be computed from the local co-occurrence matrices.
 	 * @param type
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOperationType(final RunLengthType type){
 		this.operation = type;
@@ -67,7 +81,7 @@ public class RunLengthFilter extends Filter implements RunLengthConstants{
 	/**
 	 * Sets the neighbourhood size around the processed pixel.
 	 * @param kernelSize
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelSize(final int kernelSize){
 		this.setKernelWidth(kernelSize);
@@ -76,7 +90,7 @@ public class RunLengthFilter extends Filter implements RunLengthConstants{
 	/**
 	 * Sets the width of the kernel.
 	 * @param kernelWidth
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelWidth){
 		this.kernelSizeX = kernelWidth % 2 == 0 ? kernelWidth + 1 : kernelWidth;
@@ -84,16 +98,16 @@ public class RunLengthFilter extends Filter implements RunLengthConstants{
 	/**
 	 * Sets the height of the kernel.
 	 * @param kernelHeight
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelHeight(final int kernelHeight){
-		this.kernelSizeX = kernelHeight % 2 == 0 ? kernelHeight + 1 : kernelHeight;
+		this.kernelSizeY = kernelHeight % 2 == 0 ? kernelHeight + 1 : kernelHeight;
 	}
 	/**
 	 * Sets the distance type of the computation. If the euclidean distance is set, then a circular region around the iterated pixel is regarded.
 	 * If the chebyshev distance is chosen, then a squared region would be regarded instead.
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelRadialDistanceMeasure(final Distance distance){
 		this.kernelRadialDistance = distance;
@@ -102,28 +116,152 @@ public class RunLengthFilter extends Filter implements RunLengthConstants{
 	/**
 	 * Sets the orientation of the run length computation. It can be either 0, 45, 90 or 135.
 	 * @param orientation
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOrientation(final int orientation){
 		this.orientation = orientation;
 	}
-
+	/**
+	 * Quantizes the intensities in the given number of grey levels (e.g., from 8 to 256), which split the range of each band in equal parts,
+	 * so the runs are made of pixels of the same level and are updated as the neighbourhood slides instead of being counted for every pixel.
+	 * The run percentage is then divided by the number of pixels of the neighbourhood that are closer to its center than its radius. If 0,
+	 * which is the default, the grey values are compared as they are.
+	 * @param levels
+	 */
+	public void setGreyLevels(final int levels){
+		this.greyLevels = levels;
+	}
 	
+	@Override
+	public boolean isReentrant(){return true;}
+	@Override
+	public int getKernelRadius(){
+		return Math.max(kernelSizeX/2, kernelSizeY/2);
+	}
+	@Override
+	protected void prepare(){
+		updateOffsets();
+		updateRanges();
+	}
+	/**
+	 * Splits the pixels of the neighbourhood that are closer to its center than its radius, as {@link RunLengthMatrix} does, in the ones
+	 * that always start a run and the ones that start a run only when their level differs from the one of their previous pixel.
+	 */
+	private void updateOffsets(){
+		final int sX = kernelSizeX/2, sY = kernelSizeY/2, width = 2*sX + 3, height = 2*sY + 1;
+		final float radius = Math.max(sX, sY);
+		final int[] step = RunLengthCounts.getStep(orientation);
+		//the pixels in a grid with an empty border, so their neighbours can be checked
+		final boolean[] inside = new boolean[height*width];
+		for (int dy=-sY; dy<=sY; dy++)
+			for (int dx=-sX; dx<=sX; dx++)
+				inside[(dy + sY)*width + dx + sX + 1] = kernelRadialDistance.compute(0, 0, dx, dy) <= radius;
+		final boolean[] starts = new boolean[height*width], continues = new boolean[height*width];
+		for (int y=0; y<height; y++){
+			for (int x=1; x<width - 1; x++){
+				final int index = y*width + x, px = x - step[0], py = y - step[1];
+				if (!inside[index]) continue;
+				if (py >= 0 && inside[py*width + px]) continues[index] = true;
+				else starts[index] = true;
+			}
+		}
+		final int[][][] start = getSlidingOffsets(starts, sX, sY), cont = getSlidingOffsets(continues, sX, sY);
+		this.offsets = new int[][][]{start[0], start[1], start[2], cont[0], cont[1], cont[2]};
+	}
+	//the offsets of a set of the grid, followed by the ones that enter it when it moves to the next column and by the ones that leave it
+	private static int[][][] getSlidingOffsets(final boolean[] inside, final int sX, final int sY){
+		final int width = 2*sX + 3;
+		int count = 0, enteringCount = 0, leavingCount = 0;
+		for (int index=0; index<inside.length; index++){
+			if (!inside[index]) continue;
+			count++;
+			if (!inside[index + 1]) enteringCount++;
+			if (!inside[index - 1]) leavingCount++;
+		}
+		final int[][] all = new int[count][], entering = new int[enteringCount][], leaving = new int[leavingCount][];
+		count = enteringCount = leavingCount = 0;
+		for (int index=0; index<inside.length; index++){
+			if (!inside[index]) continue;
+			final int dx = index % width - sX - 1, dy = index/width - sY;
+			all[count++] = new int[]{dx, dy};
+			if (!inside[index + 1]) entering[enteringCount++] = new int[]{dx, dy};
+			if (!inside[index - 1]) leaving[leavingCount++] = new int[]{dx - 1, dy};
+		}
+		return new int[][][]{all, entering, leaving};
+	}
+	@Override
+	protected void release(){
+		rangesImage = null;
+		ranges = null;
+	}
+	private void updateRanges(){
+		this.ranges = getRanges(image);
+		this.rangesImage = image;
+	}
+	//the ranges of prepare while applying the filter to the image, otherwise new ones from its current statistics, so filtering pixel by
+	//pixel does not change the filter
+	private double[][] getRanges(final Image image){
+		double[][] ranges = this.ranges;
+		if (ranges != null && image == rangesImage) return ranges;
+		ranges = new double[image.getNumBands()][];
+		for (int b=0; b<ranges.length; b++)
+			ranges[b] = new double[]{image.getStatistics(b).getMinimum(), image.getStatistics(b).getMaximum()};
+		return ranges;
+	}
+	private double getFeature(final double runs, final double sumOfSquares, final double pixels){
+		if (runs == 0) return 0;
+		switch(operation){
+		case TYPE_RUN_PERCENTAGE:
+			return runs/pixels;
+		default:
+			return sumOfSquares/runs;
+		}
+	}
 	
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
-		Image neighImage = new Image(kernelSizeX, kernelSizeY, 1, 32, true);
-		
+		return getFilteredPixel(getPaddedNeighbourhood(image, band, x, y), x, y, band, image);
+	}
+	
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
+		return getFilteredPixel(buffer, x, y, band, image);
+	}
+	//the image only gives the range of the band, the fields of the filter are left as they are
+	private double getFilteredPixel(final PaddedBuffer buffer, final int x, final int y, final int band, final Image image){
 		final int sX = kernelSizeX/2, sY = kernelSizeY/2;
 		
+		if (greyLevels > 0){
+			final double[] range = getRanges(image)[band];
+			final double min = range[0], max = range[1];
+			final float radius = Math.max(sX, sY);
+			final int[] pixels = new int[kernelSizeX*kernelSizeY];
+			final boolean[] region = new boolean[kernelSizeX*kernelSizeY];
+			for (int i=-sY; i<=sY; i++){
+				for (int j=-sX; j<=sX; j++){
+					final int index = (i + sY)*kernelSizeX + j + sX;
+					pixels[index] = CoOccurrenceCounts.getLevel(buffer.get(x + j, y + i), min, max, greyLevels);
+					region[index] = kernelRadialDistance.compute(0, 0, j, i) <= radius;
+				}
+			}
+			final RunLengthCounts counts = RunLengthCounts.getCounts(pixels, region, kernelSizeX, kernelSizeY, greyLevels, orientation)[0];
+			switch(operation){
+			case TYPE_RUN_PERCENTAGE:
+				return counts.getRunPercentage();
+			default:
+				return counts.getGreyLevelNonUniformity();
+			}
+		}
+		
+		Image neighImage = new Image(kernelSizeX, kernelSizeY, 1, 32, true);
+		
 		for (int i=y - sY; i <= y + sY; i++){
 			for (int j=x - sX; j <= x + sX; j++){
-				neighImage.setPixel(j - x + sX, i - y + sY, band, image.getPixelBoundaryMode(j, i, band));
+				neighImage.setPixel(j - x + sX, i - y + sY, buffer.get(j, i));
 			}
 		}
 		
 		RunLengthMatrix rMatrix = new RunLengthMatrix(neighImage);
-		rMatrix.setBand(band);
 		rMatrix.setOrientation(orientation);
 		rMatrix.setKernelRadialDistanceMeasure(kernelRadialDistance);
 		
@@ -141,6 +279,77 @@ public class RunLengthFilter extends Filter implements RunLengthConstants{
 		return result;
 	}
 	
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		if (buffer == null || greyLevels <= 0){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		final int width = image.getWidth(), r = getKernelRadius(), stride = width + 2*r, rows = maxY - minY + 2*r, levels = greyLevels;
+		final double min = ranges[band][0], max = ranges[band][1];
+		final int[] step = RunLengthCounts.getStep(orientation);
+		final int delta = step[1]*stride + step[0];
+		
+		//levels of the rows read by the neighbourhood, and whether each pixel has another level than its previous pixel
+		final double[] data = buffer.getData();
+		final int[] pixels = new int[rows*stride];
+		for (int i=0; i<rows; i++){
+			final int index = buffer.getIndex(-r, minY - r + i);
+			for (int j=0; j<stride; j++) pixels[i*stride + j] = CoOccurrenceCounts.getLevel(data[index + j], min, max, levels);
+		}
+		final boolean[] edges = new boolean[rows*stride];
+		for (int p=Math.max(0, delta); p<edges.length; p++) edges[p] = pixels[p] != pixels[p - delta];
+		
+		final int[][] starts = offsets[0], startsEntering = offsets[1], startsLeaving = offsets[2],
+				continues = offsets[3], continuesEntering = offsets[4], continuesLeaving = offsets[5];
+		final double size = starts.length + continues.length;
+		//runs of each level, their total and the sum of their squares
+		final int[] runs = new int[levels];
+		for (int i=0, k=0; i<maxY - minY; i++){
+			final int center = (i + r)*stride + r;
+			Arrays.fill(runs, 0);
+			long total = 0, sumOfSquares = 0;
+			for (int m=0; m<starts.length; m++){
+				final int g = pixels[center + starts[m][1]*stride + starts[m][0]];
+				sumOfSquares += 2*runs[g]++ + 1;
+				total++;
+			}
+			for (int m=0; m<continues.length; m++){
+				final int p = center + continues[m][1]*stride + continues[m][0];
+				if (!edges[p]) continue;
+				sumOfSquares += 2*runs[pixels[p]]++ + 1;
+				total++;
+			}
+			for (int x=0; x<width; x++, k++){
+				if (x > 0){
+					for (int m=0; m<startsLeaving.length; m++){
+						final int g = pixels[center + x + startsLeaving[m][1]*stride + startsLeaving[m][0]];
+						sumOfSquares -= 2*--runs[g] + 1;
+						total--;
+					}
+					for (int m=0; m<continuesLeaving.length; m++){
+						final int p = center + x + continuesLeaving[m][1]*stride + continuesLeaving[m][0];
+						if (!edges[p]) continue;
+						sumOfSquares -= 2*--runs[pixels[p]] + 1;
+						total--;
+					}
+					for (int m=0; m<startsEntering.length; m++){
+						final int g = pixels[center + x + startsEntering[m][1]*stride + startsEntering[m][0]];
+						sumOfSquares += 2*runs[g]++ + 1;
+						total++;
+					}
+					for (int m=0; m<continuesEntering.length; m++){
+						final int p = center + x + continuesEntering[m][1]*stride + continuesEntering[m][0];
+						if (!edges[p]) continue;
+						sumOfSquares += 2*runs[pixels[p]]++ + 1;
+						total++;
+					}
+				}
+				dst[k] = getFeature(total, sumOfSquares, size);
+			}
+		}
+	}
+	
 	public Image applyFilter(final Image image) {
 		Image out = super.applyFilter(image);
 		out.stretchOrShrinkRange(0, 255);
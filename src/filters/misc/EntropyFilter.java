@@ -1,20 +1,28 @@
 package filters.misc;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 import distances.Distance;
 import distances.EuclideanDistance;
 import filters.Filter;
+import filters.PaddedBuffer;
 import image.Image;
 
 /**
  * Entropy: draws a circle of radius r around each pixel; gets the histogram of that circle split in numBins chunks; then calculates the entropy as \sum_{p~\mathrm{in}~\mathrm{histogram}} -p*\mathrm{log}_2(p), where p is the probability of each chunk in the histogram..
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * The chunks split the range of intensities of the band in equal parts, so the pixels are assigned to them once, and the histogram of
+ * the circle follows it along the rows, getting the pixels that enter it and losing the ones that leave it.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class EntropyFilter extends Filter {
 	private float radius = 7;
 	private int numOfChunks = 16;
 	private Distance distanceMeasure = new EuclideanDistance();
+	//offsets {dx, dy} of the circle, of the pixels that enter it when it moves to the next column and of the ones that leave it, in this order
+	private int[][][] masks = null;
+	//minimum and maximum intensity of each band, and the image they belong to, until the filter is applied
+	private double[][] ranges = null;
+	private Image rangesImage = null;
 	
 	public EntropyFilter(){
 		
@@ -29,7 +37,7 @@ public class EntropyFilter extends Filter {
 	/**
 	 * Sets the num of chunks or groups in which the intensities should be divided.
 	 * @param numOfChunks
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setNumOfChunks(final int numOfChunks){
 		this.numOfChunks = numOfChunks;
@@ -37,70 +45,173 @@ public class EntropyFilter extends Filter {
 	/**
 	 * Sets the radius of the kernel.
 	 * @param kernelRadius
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelRadius(final int kernelRadius){
 		this.radius = kernelRadius;
+		this.masks = null;
 	}
 	/**
 	 * Sets the distance measure to consider the radius. If the euclidean distance is set, then a circular region around the iterated pixel is regarded.
 	 * If the chebyshev distance is chosen, then a squared region would be regarded instead.
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setDistance(final Distance distance){
 		this.distanceMeasure = distance;
+		this.masks = null;
 	}
 
 	@Override
-	public double getFilteredPixel(Image image, int x, int y, int band) {
-		HashMap<Double, Integer> histogram = new HashMap<Double, Integer>();
-		
-		double minPixel = Integer.MAX_VALUE, maxPixel = Integer.MIN_VALUE;
-		int counter = 0;
-		//constructing the radial histogram
-		for (int i=y - Math.round(radius); i<= y + radius; i++){
-			for (int j=x - Math.round(radius); j<= x + radius; j++){
-				
-				if (distanceMeasure.compute(j, i, x, y) > radius) continue;
-				
-				final double pixel = image.getPixelBoundaryMode(j, i, band);
-				counter ++;
-				
-				if (pixel > maxPixel) maxPixel = pixel;
-				if (pixel < minPixel) minPixel = pixel;
-				
-				if (!histogram.containsKey(pixel)) histogram.put(pixel, 1);
-				else{
-					histogram.put(pixel, histogram.remove(pixel) + 1);
-				}
-				
+	public boolean isReentrant(){return true;}
+	@Override
+	public int getKernelRadius(){
+		return Math.max(0, Math.round(radius));
+	}
+
+	@Override
+	protected void prepare(){
+		if (masks == null) masks = createMasks();
+		ranges = getRanges(image);
+		rangesImage = image;
+	}
+	@Override
+	protected void release(){
+		rangesImage = null;
+		ranges = null;
+	}
+	//the masks of prepare if they were created, otherwise new ones, so filtering pixel by pixel does not change the filter
+	private int[][][] getMasks(){
+		final int[][][] masks = this.masks;
+		return (masks != null) ? masks : createMasks();
+	}
+	private int[][][] createMasks(){
+		final int r = getKernelRadius(), size = 2*r + 3;
+		//the circle in a grid with an empty border, so the neighbours of its pixels can be checked
+		final boolean[] inside = new boolean[size*size];
+		int count = 0;
+		for (int dy=-r; dy<=r; dy++){
+			for (int dx=-r; dx<=r; dx++){
+				if (dy > radius || dx > radius || distanceMeasure.compute(dx, dy, 0, 0) > radius) continue;
+				inside[(dy + r + 1)*size + dx + r + 1] = true;
+				count++;
 			}
 		}
-		
-		if (numOfChunks > counter) numOfChunks = counter;
-		final int chunkSize = (int)Math.floor(counter/numOfChunks);
-		
-		double entropy = 0; double probChunk = 0;
-		int pCounter = 0; int gCounter = 0;
-		for (double pixel : histogram.keySet()){
-			
-			if (pCounter < chunkSize && gCounter < counter - 1){
-				probChunk += histogram.get(pixel)/(float)counter;
-				pCounter++;
-				gCounter ++;
-				continue;
+		final int[][] mask = new int[count][];
+		int enteringCount = 0, leavingCount = 0;
+		for (int k=0, dy=-r; dy<=r; dy++){
+			for (int dx=-r; dx<=r; dx++){
+				final int index = (dy + r + 1)*size + dx + r + 1;
+				if (!inside[index]) continue;
+				mask[k++] = new int[]{dx, dy};
+				if (!inside[index + 1]) enteringCount++;
+				if (!inside[index - 1]) leavingCount++;
+			}
+		}
+		final int[][] entering = new int[enteringCount][], leaving = new int[leavingCount][];
+		enteringCount = leavingCount = 0;
+		for (int k=0; k<count; k++){
+			final int dx = mask[k][0], dy = mask[k][1], index = (dy + r + 1)*size + dx + r + 1;
+			if (!inside[index + 1]) entering[enteringCount++] = mask[k];
+			if (!inside[index - 1]) leaving[leavingCount++] = new int[]{dx - 1, dy};
+		}
+		return new int[][][]{mask, entering, leaving};
+	}
+	//the ranges of prepare while applying the filter to the image, otherwise new ones from its current statistics
+	private double[][] getRanges(final Image image){
+		double[][] ranges = this.ranges;
+		if (ranges != null && image == rangesImage) return ranges;
+		ranges = new double[image.getNumBands()][];
+		for (int b=0; b<ranges.length; b++)
+			ranges[b] = new double[]{image.getStatistics(b).getMinimum(), image.getStatistics(b).getMaximum()};
+		return ranges;
+	}
+
+	/**
+	 * Returns the chunk of the value, from 0 to chunks - 1. Values out of the range of the band (e.g., the background color) go to the first
+	 * or to the last chunk.
+	 */
+	private static int getChunk(final double value, final double min, final double scale, final int chunks){
+		final int chunk = (int) ((value - min)*scale);
+		return (chunk < 0) ? 0 : (chunk >= chunks) ? chunks - 1 : chunk;
+	}
+	private static double getScale(final double[] range, final int chunks){
+		final double length = range[1] - range[0];
+		return (length > 0) ? chunks/length : 0;
+	}
+	//entropy of the histogram of count pixels given the sum of c*ln(c) over its chunks
+	private static double getEntropy(final double sum, final int count){
+		if (count == 0) return 0;
+		final double entropy = (Math.log(count) - sum/count)/Math.log(2);
+		return (entropy > 0) ? entropy : 0;
+	}
+
+	@Override
+	public double getFilteredPixel(Image image, int x, int y, int band) {
+		return getEntropy(getPaddedNeighbourhood(image, band, x, y), x, y, getRanges(image)[band]);
+	}
+
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
+		return getEntropy(buffer, x, y, getRanges(image)[band]);
+	}
+	private double getEntropy(final PaddedBuffer buffer, final int x, final int y, final double[] range){
+		final int[][] mask = getMasks()[0];
+		final int chunks = Math.max(1, numOfChunks);
+		final double min = range[0], scale = getScale(range, chunks);
+		final int[] histogram = new int[chunks];
+		for (int k=0; k<mask.length; k++) histogram[getChunk(buffer.get(x + mask[k][0], y + mask[k][1]), min, scale, chunks)]++;
+		double sum = 0;
+		for (int c=0; c<chunks; c++)
+			if (histogram[c] > 0) sum += histogram[c]*Math.log(histogram[c]);
+		return getEntropy(sum, mask.length);
+	}
+
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		if (buffer == null){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
+		}
+		final int[][][] masks = getMasks();
+		final int[][] mask = masks[0], entering = masks[1], leaving = masks[2];
+		final double[] range = getRanges(image)[band];
+		final int width = image.getWidth(), r = getKernelRadius(), chunks = Math.max(1, numOfChunks), count = mask.length;
+		final double min = range[0], scale = getScale(range, chunks);
+
+		//chunks of the rows read by the circle, and c*ln(c) for every possible count c
+		final int stride = width + 2*r, rows = maxY - minY + 2*r;
+		final double[] data = buffer.getData();
+		final int[] pixels = new int[rows*stride];
+		for (int i=0; i<rows; i++){
+			final int index = buffer.getIndex(-r, minY - r + i);
+			for (int j=0; j<stride; j++) pixels[i*stride + j] = getChunk(data[index + j], min, scale, chunks);
+		}
+		final double[] xLogX = new double[count + 1];
+		for (int c=1; c<=count; c++) xLogX[c] = c*Math.log(c);
+
+		final int[] histogram = new int[chunks];
+		for (int i=0, k=0; i<maxY - minY; i++){
+			final int center = (i + r)*stride + r;
+			Arrays.fill(histogram, 0);
+			for (int m=0; m<count; m++) histogram[pixels[center + mask[m][1]*stride + mask[m][0]]]++;
+			double sum = 0;
+			for (int c=0; c<chunks; c++) sum += xLogX[histogram[c]];
+			dst[k++] = getEntropy(sum, count);
+			for (int x=1; x<width; x++){
+				for (int m=0; m<leaving.length; m++){
+					final int c = pixels[center + x + leaving[m][1]*stride + leaving[m][0]];
+					sum += xLogX[histogram[c] - 1] - xLogX[histogram[c]];
+					histogram[c]--;
+				}
+				for (int m=0; m<entering.length; m++){
+					final int c = pixels[center + x + entering[m][1]*stride + entering[m][0]];
+					sum += xLogX[histogram[c] + 1] - xLogX[histogram[c]];
+					histogram[c]++;
+				}
+				dst[k++] = getEntropy(sum, count);
 			}
-			gCounter++;
-			
-			pCounter = 0;
-			
-			entropy += -probChunk * (Math.log(probChunk)/(float)Math.log(2));
-			
-		    probChunk = 0;
 		}
-		
-		return entropy;
 	}
 	
 	public Image applyFilter(final Image image) {
@@ -6,7 +6,7 @@ import morphology.MorphologyConstants;
 
 /**
  * Closing operation from mathematical morphology (dilation + erosion).
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Closing extends Filter implements MorphologyConstants{
 	
@@ -17,7 +17,7 @@ public class Closing extends Filter implements MorphologyConstants{
 	/**
 	 * Sets the structuring element to be used.
 	 * @param structuringElement
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setStructuringElement(final Image structuringElement){
 		this.structuringElement = structuringElement;
@@ -26,7 +26,7 @@ public class Closing extends Filter implements MorphologyConstants{
 	/**
 	 * Sets the time that the image should be dilated.
 	 * @param timesToDilate
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setTimesToDilate(final int timesToDilate){
 		this.timesToDilate = timesToDilate;
@@ -35,7 +35,7 @@ public class Closing extends Filter implements MorphologyConstants{
 	/**
 	 * Sets the time that the image should be eroded.
 	 * @param timesToErode
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setTimesToErode(final int timesToErode){
 		this.timesToErode = timesToErode;
@@ -8,7 +8,7 @@ import morphology.MorphologyConstants;
 
 /**
  * A dilation operation from mathematical morphology.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Dilation extends Filter implements MorphologyConstants{
 	private int timesToDilate = 2;
@@ -37,7 +37,7 @@ public class Dilation extends Filter implements MorphologyConstants{
 	/**
 	 * Sets the structuring element to be used.
 	 * @param structuringElement
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setStructuringElement(final Image structuringElement){
 		this.structuringElement = structuringElement;
@@ -45,7 +45,7 @@ public class Dilation extends Filter implements MorphologyConstants{
 	/**
 	 * Sets how many times the image should be dilated.
 	 * @param timesToDilate
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setTimesToDilate(final int timesToDilate){
 		this.timesToDilate = timesToDilate;
@@ -7,7 +7,7 @@ import morphology.MorphologyConstants;
 
 /**
  * Opening operation from mathematical morphology (erosion + dilation).
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Opening extends Filter implements MorphologyConstants{
 
@@ -18,7 +18,7 @@ public class Opening extends Filter implements MorphologyConstants{
 	/**
 	 * Sets the structuring element to be used.
 	 * @param structuringElement
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setStructuringElement(final Image structuringElement){
 		this.structuringElement = structuringElement;
@@ -27,7 +27,7 @@ public class Opening extends Filter implements MorphologyConstants{
 	/**
 	 * Sets how many times the image should be dilated.
 	 * @param timesToDilate
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setTimesToDilate(final int timesToDilate){
 		this.timesToDilate = timesToDilate;
@@ -36,7 +36,7 @@ public class Opening extends Filter implements MorphologyConstants{
 	/**
 	 * Sets how many times the image should be eroded.
 	 * @param timesToErode
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setTimesToErode(final int timesToErode){
 		this.timesToErode = timesToErode;
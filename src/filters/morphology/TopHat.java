@@ -6,7 +6,7 @@ import morphology.MorphologyConstants;
 /**
  * Top-hat operation from mathematical morphology (opening then subtracts the result from the original image).
  *
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class TopHat extends Opening implements MorphologyConstants{
 	
@@ -6,7 +6,7 @@ import image.Image;
 
 /**
  * Anisotropic diffusion is a blurring algorithm that preserve edges.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class AnisotropicDiffusion extends Filter{
 	
@@ -31,7 +31,7 @@ public class AnisotropicDiffusion extends Filter{
 	/**
 	 * Sets the number of iterations for the anisotropic diffusion.
 	 * @param iterations
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setIterations(final int iterations){this.totalIterations = iterations;}
 
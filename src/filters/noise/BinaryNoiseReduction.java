@@ -3,11 +3,12 @@ package filters.noise;
 import distances.Distance;
 import filters.Filter;
 import image.Image;
+import image.Statistics;
 
 /**
  * Reduces the noise from binary or grey-scale images.
  * Looks the neighbourhood of each pixel and check if there are at least a certain number of pixels there. If there are, then keep the central pixel. Otherwise, erase it.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class BinaryNoiseReduction extends Filter{
 	private float threshold = 0.2f;
@@ -18,7 +19,7 @@ public class BinaryNoiseReduction extends Filter{
 	/**
 	 * Sets the threshold for the noise removal. The lesser it is, less noise is removed.
 	 * @param threshold
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setThreshold(final float threshold){
 		this.threshold = threshold;
@@ -26,7 +27,7 @@ public class BinaryNoiseReduction extends Filter{
 	/**
 	 * Sets the distance type from a central iterated pixel. 
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setDistance(final Distance distance){
 		this.distance = distance;
@@ -34,7 +35,7 @@ public class BinaryNoiseReduction extends Filter{
 	/**
 	 * Sets the maximum distance from the central iterated pixel.
 	 * @param radius
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setRadius(final int radius){
 		this.radius = radius;
@@ -74,8 +75,9 @@ public class BinaryNoiseReduction extends Filter{
 		max = new double[image.getNumBands()];
 		
 		for (int b=0; b<image.getNumBands(); b++){
-			min[b] = image.getMinimalIntesity(b);
-			max[b] = image.getMaximalIntensity(b);
+			final Statistics s = image.getStatistics(b);
+			min[b] = s.getMinimum();
+			max[b] = s.getMaximum();
 		}
 		
 		Image out = super.applyFilter(image);
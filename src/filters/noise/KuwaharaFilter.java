@@ -1,19 +1,32 @@
 package filters.noise;
 
 import filters.Filter;
+import filters.PaddedBuffer;
 import image.Image;
 
 /**
  * Implementation of the Kuwahara Filter. It reduces noise from the image but also turns the image into a "water painting" picture.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * Each pixel gets the mean of the quadrant of its neighbourhood with the smallest variance. The sums of the values and of their squares
+ * come from summed-area tables, so each quadrant costs four lookups whatever the kernel size. Integers are summed exactly in longs; other
+ * values in tables restarted at every tile of the size of a quadrant, from fixed coordinates of the band. Either way, the sums do not depend
+ * on the block of rows, the thread or the neighbourhood, and neither do the chosen quadrants.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class KuwaharaFilter extends Filter{
 	private int kernelSizeX = 7, kernelSizeY = 7;
+	private boolean selectFromAllBands = false;
+	//quadrant of each pixel chosen from all the bands by prepare, and the image it belongs to, until the filter is applied
+	private byte[] quadrants = null;
+	private Image quadrantsImage = null;
+	//value subtracted from each band, so the squares do not lose the precision of the variance, and the image they belong to, until the
+	//filter is applied
+	private double[] shifts = null;
+	private Image shiftsImage = null;
 	
 	/**
 	 * Sets the kernel size on the x and y directions.
 	 * @param kernelSize
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelSize(final int kernelSize){
 		this.setKernelWidth(kernelSize);
@@ -23,7 +36,7 @@ public class KuwaharaFilter extends Filter{
 	/**
 	 * Sets the kernel size on the x direction (width)
 	 * @param kernelSizeX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelWidth(final int kernelSizeX){
 		this.kernelSizeX = kernelSizeX;
@@ -31,108 +44,263 @@ public class KuwaharaFilter extends Filter{
 	/**
 	 * Sets the kernel height.
 	 * @param kernelSizeY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelHeight(final int kernelSizeY){
 		this.kernelSizeY = kernelSizeY;
 	}
+	/**
+	 * If true, the quadrant of each pixel is the one whose variances summed over all the bands are the smallest, and every band gets
+	 * its mean in that quadrant, which keeps the colors of multi-band images. Otherwise, which is the default, each band chooses its
+	 * own quadrant.
+	 * @param selectFromAllBands
+	 */
+	public void setToSelectQuadrantFromAllBands(final boolean selectFromAllBands){
+		this.selectFromAllBands = selectFromAllBands;
+	}
 
 	@Override
-	public double getFilteredPixel(Image image, int x, int y, int band) {
-		final int halfX = kernelSizeX/2, halfY = kernelSizeY/2;
-		
-		//region 1
-		float mean1 = 0;
-		int counter = 0;
-		for (int i=y - halfY; i<=y; i++){
-			for (int j=x - halfX; j<=x; j++){
-				mean1 += image.getPixelBoundaryMode(j, i, band);
-				counter ++;
+	public boolean isReentrant(){return true;}
+	@Override
+	public boolean isStreamable(){return !selectFromAllBands;} //the quadrants are chosen from the bands of the image
+	@Override
+	public int getKernelRadius(){
+		return Math.max(kernelSizeX/2, kernelSizeY/2);
+	}
+
+	@Override
+	protected void prepare(){
+		updateShifts();
+		quadrants = null;
+		quadrantsImage = null;
+		if (!selectFromAllBands || image.getNumBands() < 2 || image.getStorageType() == Image.StorageType.STORAGE_SPARSE) return;
+		final int width = image.getWidth(), height = image.getHeight(), rowsPerBlock = Math.max(1, (1 << 16)/width);
+		final byte[] quadrants = new byte[width*height];
+		final PaddedBuffer buffer = new PaddedBuffer();
+		for (int y=0; y<height; y+=rowsPerBlock){
+			final int maxY = Math.min(height, y + rowsPerBlock), length = (maxY - y)*width;
+			final double[] sums = new double[4*length], scores = new double[4*length];
+			for (int b=0; b<image.getNumBands(); b++){
+				buffer.fill(image, b, getKernelRadius(), 0, y, width, maxY - y);
+				getQuadrants(buffer, 0, width, y, maxY, shifts[b], sums, scores);
 			}
+			for (int k=0; k<length; k++) quadrants[y*width + k] = (byte) getSmallest(scores, 4*k);
 		}
-		mean1 /= counter;
-		
-		float stdDev1 = 0;
-		for (int i=y - halfY; i<=y; i++){
-			for (int j=x - halfX; j<=x; j++){
-				stdDev1 += (float) Math.pow(image.getPixelBoundaryMode(j, i, band) - mean1, 2);
-			}
+		this.quadrants = quadrants;
+		this.quadrantsImage = image;
+	}
+
+	@Override
+	protected void getFilteredRows(PaddedBuffer buffer, int band, int minY, int maxY, double[] dst) {
+		final boolean fromAllBands = selectFromAllBands && image.getNumBands() > 1;
+		if (buffer == null || (fromAllBands && quadrantsImage != image)){
+			super.getFilteredRows(buffer, band, minY, maxY, dst);
+			return;
 		}
-		stdDev1 /= counter;
-		stdDev1 = (float) Math.sqrt(stdDev1);
-		
-		//region2
-		float mean2 = 0;
-		int counter2 = 0;
-		for (int i=y - halfY; i<=y; i++){
-			for (int j=x; j<=x + halfX; j++){
-				mean2 += image.getPixelBoundaryMode(j, i, band);
-				counter2 ++;
-			}
+		final int width = image.getWidth(), length = (maxY - minY)*width, count = (kernelSizeX/2 + 1)*(kernelSizeY/2 + 1);
+		final double[] sums = new double[4*length], scores = new double[4*length];
+		final double shift = getShifts(image)[band];
+		getQuadrants(buffer, 0, width, minY, maxY, shift, sums, scores);
+		for (int k=0; k<length; k++){
+			final int quadrant = fromAllBands ? quadrants[minY*width + k] : getSmallest(scores, 4*k);
+			dst[k] = shift + sums[4*k + quadrant]/count;
 		}
-		mean2 /= counter2;
-		
-		float stdDev2 = 0;
-		for (int i=y - halfY; i<=y; i++){
-			for (int j=x; j<=x + halfX; j++){
-				stdDev2 += (float) Math.pow(image.getPixelBoundaryMode(j, i, band) - mean2, 2);
+	}
+
+	@Override
+	protected void release(){
+		shiftsImage = null;
+		shifts = null;
+		quadrantsImage = null;
+		quadrants = null;
+	}
+
+	private void updateShifts(){
+		this.shifts = getShifts(image);
+		this.shiftsImage = image;
+	}
+	//the shifts of prepare while applying the filter to the image, otherwise new ones from its current statistics, so filtering pixel
+	//by pixel does not change the filter. Integer images keep integer values once shifted, so their quadrants can be summed exactly
+	private double[] getShifts(final Image image){
+		double[] shifts = this.shifts;
+		if (shifts != null && image == shiftsImage) return shifts;
+		shifts = new double[image.getNumBands()];
+		for (int b=0; b<shifts.length; b++){
+			final double middle = (image.getStatistics(b).getMinimum() + image.getStatistics(b).getMaximum())/2;
+			shifts[b] = image.containsFloatValues() ? middle : Math.floor(middle);
+		}
+		return shifts;
+	}
+
+	/**
+	 * Stores in sums the sums of the top left, top right, bottom left and bottom right quadrants of each pixel of the columns minX to
+	 * minX + width (exclusive) of the rows minY (inclusive) to maxY (exclusive), the values being subtracted by shift, and adds to scores
+	 * count*(sum of the squares) - sum*sum, i.e., count^2 times their variance.
+	 */
+	private void getQuadrants(final PaddedBuffer buffer, final int minX, final int width, final int minY, final int maxY, final double shift,
+			final double[] sums, final double[] scores){
+		final int tileX = kernelSizeX/2 + 1, tileY = kernelSizeY/2 + 1;
+		//the quadrants cover the rows firstY to maxY + tileY - 1 (exclusive) and the columns firstX to minX + width + tileX - 1 (exclusive)
+		final int firstX = minX - tileX + 1, firstY = minY - tileY + 1, columns = width + 2*(tileX - 1), rows = maxY - minY + 2*(tileY - 1);
+		//both ways give the exact sums of integers, so a block can take either of them
+		if (isExact(buffer, firstX, firstY, columns, rows, shift, tileX*tileY))
+			getQuadrantsExactly(buffer, firstX, firstY, columns, rows, width, maxY - minY, shift, sums, scores);
+		else getQuadrantsInTiles(buffer, firstX, firstY, columns, rows, width, maxY - minY, shift, sums, scores);
+	}
+	//whether the values are integers once shifted and the sums of the squares of a quadrant are exact in a double
+	private static boolean isExact(final PaddedBuffer buffer, final int firstX, final int firstY, final int columns, final int rows,
+			final double shift, final int count){
+		if (shift != Math.rint(shift)) return false;
+		final double[] data = buffer.getData();
+		double largest = 0;
+		for (int r=0; r<rows; r++){
+			for (int c=0, index=buffer.getIndex(firstX, firstY + r); c<columns; c++, index++){
+				final double v = data[index] - shift;
+				if (v != Math.rint(v)) return false;
+				largest = Math.max(largest, Math.abs(v));
 			}
 		}
-		stdDev2 /= counter2;
-		stdDev2 = (float) Math.sqrt(stdDev2);
-		
-		//region 3
-		float mean3 = 0;
-		int counter3 = 0;
-		for (int i=y; i<=y + halfY; i++){
-			for (int j=x - halfY; j<=x; j++){
-				mean3 += image.getPixelBoundaryMode(j, i, band);
-				counter3 ++;
+		return largest*largest*count < (double) (1L << 53);
+	}
+	/**
+	 * Summed-area tables of the integers and of their squares, so each quadrant costs four lookups. The longs may overflow, but the
+	 * differences of the four corners are still the exact sums, whatever the rows of the block.
+	 */
+	private void getQuadrantsExactly(final PaddedBuffer buffer, final int firstX, final int firstY, final int columns, final int rows,
+			final int width, final int height, final double shift, final double[] sums, final double[] scores){
+		final int tileX = kernelSizeX/2 + 1, tileY = kernelSizeY/2 + 1, count = tileX*tileY, stride = columns + 1;
+		final long[] table = new long[(rows + 1)*stride], squaresTable = new long[(rows + 1)*stride];
+		final double[] data = buffer.getData();
+		for (int r=0; r<rows; r++){
+			long sum = 0, squares = 0;
+			for (int c=0, index=buffer.getIndex(firstX, firstY + r), k=(r + 1)*stride + 1; c<columns; c++, index++, k++){
+				final long v = (long) (data[index] - shift);
+				sum += v;
+				squares += v*v;
+				table[k] = table[k - stride] + sum;
+				squaresTable[k] = squaresTable[k - stride] + squares;
 			}
 		}
-		mean3 /= counter3;
-		
-		float stdDev3 = 0;
-		for (int i=y; i<=y + halfY; i++){
-			for (int j=x - halfY; j<=x; j++){
-				stdDev3 += Math.pow(image.getPixelBoundaryMode(j, i, band) - mean3, 2);
+		for (int i=0, k=0; i<height; i++){
+			for (int x=0; x<width; x++, k++){
+				for (int q=0; q<4; q++){
+					final int top = (i + ((q < 2) ? 0 : tileY - 1))*stride, bottom = top + tileY*stride,
+							left = x + ((q % 2 == 0) ? 0 : tileX - 1), right = left + tileX;
+					final double sum = table[bottom + right] - table[top + right] - table[bottom + left] + table[top + left],
+							squares = squaresTable[bottom + right] - squaresTable[top + right] - squaresTable[bottom + left] + squaresTable[top + left];
+					sums[4*k + q] = sum;
+					scores[4*k + q] += count*squares - sum*sum;
+				}
 			}
 		}
-		stdDev3 /= counter3;
-		stdDev3 = (float) Math.sqrt(stdDev3);
-		
-		
-		//region 4
-		float mean4 = 0;
-		int counter4 = 0;
-		for (int i=y; i<=y + halfY; i++){
-			for (int j=x; j<=x + halfX; j++){
-				mean4 += image.getPixelBoundaryMode(j, i, band);
-				counter4++;
+	}
+	/**
+	 * The band is split in tiles of the size of a quadrant, from the row and column 0, and every position keeps the sums from it to each
+	 * corner of its tile, so every sum starts at the same place whatever the rows of the block. A quadrant covers at most four tiles,
+	 * so its sum is the one of at most four lookups.
+	 */
+	private void getQuadrantsInTiles(final PaddedBuffer buffer, final int firstX, final int firstY, final int columns, final int rows,
+			final int width, final int height, final double shift, final double[] sums, final double[] scores){
+		final int tileX = kernelSizeX/2 + 1, tileY = kernelSizeY/2 + 1, count = tileX*tileY;
+		//sums from each position up or down (first letter) and left or right (second letter) to the corner of its tile
+		final double[] upLeft = new double[rows*columns], upRight = new double[rows*columns], downLeft = new double[rows*columns],
+				downRight = new double[rows*columns], upLeftSquares = new double[rows*columns], upRightSquares = new double[rows*columns],
+				downLeftSquares = new double[rows*columns], downRightSquares = new double[rows*columns];
+		final double[] left = new double[columns], right = new double[columns], leftSquares = new double[columns], rightSquares = new double[columns];
+		//whether each column and each row of the tables is the first of its tile
+		final boolean[] startsX = new boolean[columns + 1], startsY = new boolean[rows + 1];
+		for (int c=0; c<=columns; c++) startsX[c] = isTileStart(firstX + c, tileX);
+		for (int r=0; r<=rows; r++) startsY[r] = isTileStart(firstY + r, tileY);
+		final double[] data = buffer.getData();
+		for (int pass=0; pass<2; pass++){
+			//the sums to the top corners going down the rows, then the ones to the bottom corners going up, the tiles cut by the edges
+			//of the tables are never read
+			for (int n=0; n<rows; n++){
+				final int r = (pass == 0) ? n : rows - 1 - n;
+				final boolean restart = (n == 0) || ((pass == 0) ? startsY[r] : startsY[r + 1]);
+				final int index = buffer.getIndex(firstX, firstY + r);
+				for (int c=0; c<columns; c++){
+					final double v = data[index + c] - shift;
+					final boolean start = (c == 0) || startsX[c];
+					left[c] = start ? v : left[c - 1] + v;
+					leftSquares[c] = start ? v*v : leftSquares[c - 1] + v*v;
+				}
+				for (int c=columns - 1; c>=0; c--){
+					final double v = data[index + c] - shift;
+					final boolean end = (c == columns - 1) || startsX[c + 1];
+					right[c] = end ? v : right[c + 1] + v;
+					rightSquares[c] = end ? v*v : rightSquares[c + 1] + v*v;
+				}
+				final double[] toLeft = (pass == 0) ? upLeft : downLeft, toRight = (pass == 0) ? upRight : downRight,
+						toLeftSquares = (pass == 0) ? upLeftSquares : downLeftSquares, toRightSquares = (pass == 0) ? upRightSquares : downRightSquares;
+				final int previous = (pass == 0) ? (r - 1)*columns : (r + 1)*columns;
+				for (int c=0, k=r*columns; c<columns; c++, k++){
+					toLeft[k] = restart ? left[c] : toLeft[previous + c] + left[c];
+					toRight[k] = restart ? right[c] : toRight[previous + c] + right[c];
+					toLeftSquares[k] = restart ? leftSquares[c] : toLeftSquares[previous + c] + leftSquares[c];
+					toRightSquares[k] = restart ? rightSquares[c] : toRightSquares[previous + c] + rightSquares[c];
+				}
 			}
 		}
-		mean4 /= counter;
-		
-		float stdDev4 = 0;
-		for (int i=y; i<=y + halfY; i++){
-			for (int j=x; j<=x + halfX; j++){
-				stdDev4 += Math.pow(image.getPixelBoundaryMode(j, i, band) - mean4, 2);
+		for (int i=0, k=0; i<height; i++){
+			for (int x=0; x<width; x++, k++){
+				for (int q=0; q<4; q++){
+					//first row and column of the quadrant, in the tables, and whether they start a tile, so the quadrant is in a single one
+					final int top = i + ((q < 2) ? 0 : tileY - 1), leftmost = x + ((q % 2 == 0) ? 0 : tileX - 1),
+							bottom = top + tileY - 1, rightmost = leftmost + tileX - 1;
+					final boolean alignedY = startsY[top], alignedX = startsX[leftmost];
+					double sum = downRight[top*columns + leftmost], squares = downRightSquares[top*columns + leftmost];
+					if (!alignedX){
+						sum += downLeft[top*columns + rightmost];
+						squares += downLeftSquares[top*columns + rightmost];
+					}
+					if (!alignedY){
+						sum += upRight[bottom*columns + leftmost];
+						squares += upRightSquares[bottom*columns + leftmost];
+					}
+					if (!alignedX && !alignedY){
+						sum += upLeft[bottom*columns + rightmost];
+						squares += upLeftSquares[bottom*columns + rightmost];
+					}
+					sums[4*k + q] = sum;
+					scores[4*k + q] += count*squares - sum*sum;
+				}
 			}
 		}
-		stdDev4 /= counter4;
-		stdDev4 = (float) Math.sqrt(stdDev4);
-		
-		
-		final float minDev = Math.min(Math.min(Math.min(stdDev1, stdDev2), stdDev3), stdDev4);
-		
-		
-		
-		if (minDev == stdDev1) return mean1;
-		else if (minDev == stdDev2) return mean2;
-		else if (minDev == stdDev3) return mean3;
-		else return mean4;
+	}
+	private static boolean isTileStart(final int coordinate, final int tile){
+		return ((coordinate % tile) + tile) % tile == 0;
+	}
+	//first of the four quadrants with the smallest score
+	private static int getSmallest(final double[] scores, final int offset){
+		int smallest = 0;
+		for (int q=1; q<4; q++)
+			if (scores[offset + q] < scores[offset + smallest]) smallest = q;
+		return smallest;
+	}
+
+	@Override
+	public double getFilteredPixel(Image image, int x, int y, int band) {
+		final double[] shifts = getShifts(image);
+		if (!selectFromAllBands || image.getNumBands() < 2) return getMean(getPaddedNeighbourhood(image, band, x, y), x, y, shifts[band]);
+		final double[] sums = new double[4], scores = new double[4];
+		for (int b=0; b<image.getNumBands(); b++){
+			final double[] bandSums = new double[4];
+			getQuadrants(getPaddedNeighbourhood(image, b, x, y), x, 1, y, y + 1, shifts[b], bandSums, scores);
+			if (b == band) System.arraycopy(bandSums, 0, sums, 0, 4);
+		}
+		return shifts[band] + sums[getSmallest(scores, 0)]/((kernelSizeX/2 + 1)*(kernelSizeY/2 + 1));
 	}
 
-	
-	
+	@Override
+	public double getFilteredPixel(PaddedBuffer buffer, int x, int y, int band) {
+		if (selectFromAllBands && image != null && image.getNumBands() > 1) return getFilteredPixel(image, x, y, band);
+		return getMean(buffer, x, y, getShifts(image)[band]);
+	}
+	//mean of the quadrant of the pixel with the smallest variance in its band
+	private double getMean(final PaddedBuffer buffer, final int x, final int y, final double shift){
+		final double[] sums = new double[4], scores = new double[4];
+		getQuadrants(buffer, x, 1, y, y + 1, shift, sums, scores);
+		return shift + sums[getSmallest(scores, 0)]/((kernelSizeX/2 + 1)*(kernelSizeY/2 + 1));
+	}
 }
@@ -6,7 +6,7 @@ import image.Image;
 
 /**
  * Enchance sharpen areas based on a "laplacian-gaussian" filter.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class EnhanceSharpAreas extends Filter{
 	private float kernelWidth = 10, kernelHeight = 10, amplitude = 2, differenceX = 0.1f, differenceY = 0.1f,
@@ -40,13 +40,13 @@ public class EnhanceSharpAreas extends Filter{
 	/**
 	 * The lower the difference the less pixels are selected, the difference should be lower than 1.
 	 * @param differenceX
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setDifferenceX(final float differenceX){this.differenceX = differenceX; this.update = true;}
 	/**
 	 * The lower the difference the less pixels are selected, the difference should be lower than 1.
 	 * @param differenceY
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setDifferenceY(final float differenceY){this.differenceY = differenceY; this.update = true;}
 	
@@ -5,7 +5,7 @@ import image.Image;
 
 /**
  * A simple sharpen that uses a simple kernel to sharpen the image.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class SimpleSharpen extends Filter{
 	
@@ -21,6 +21,9 @@ public class SimpleSharpen extends Filter{
 		this.kernel = kernel;
 	}
 
+	@Override
+	public boolean isReentrant(){return true;}
+
 	@Override
 	public double getFilteredPixel(Image image, int x, int y, int band) {
 		double result = 0;
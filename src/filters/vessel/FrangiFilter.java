@@ -2,7 +2,11 @@ package filters.vessel;
 
 import java.util.ArrayList;
 
+import filters.FFTConvolution;
 import filters.Filter;
+import filters.Kernel;
+import filters.PaddedBuffer;
+import filters.RecursiveGaussian;
 import image.Image;
 
 /**
@@ -14,6 +18,7 @@ public class FrangiFilter extends Filter{
 	private float beta1 = 1f, beta2 = 2f;
 	private float sigmaMin = 1, sigmaMax = 1, sigmaStep = 1;
 	private boolean blackWhite = true;
+	private boolean recursive = false;
 	
 	public FrangiFilter(){
 		
@@ -51,6 +56,14 @@ public class FrangiFilter extends Filter{
 		this.setMinSigma(sigmaStart);
 		this.setMaxSigma(sigmaStop);
 	}
+	/**
+	 * Sets whether the Hessian is computed with recursive (IIR) Gaussian derivatives, see {@link RecursiveGaussian}, whose cost does not
+	 * depend on sigma, so large scales are as cheap as small ones. The Gaussians are then not truncated at 3*sigma.
+	 * @param recursive
+	 */
+	public void setToUseRecursiveGaussian(final boolean recursive){
+		this.recursive = recursive;
+	}
 
 	private int lastBand = -1;
 	
@@ -68,50 +81,51 @@ public class FrangiFilter extends Filter{
 	
 	private Image Dxx, Dxy, Dyy;
 	private void frangiToHessian(final Image image, float sigma, final int band){
-		//construct Hessian kernels
-		int n_kern_x = 2*Math.round(3*sigma) + 1;
-		int n_kern_y = n_kern_x;
-		double[] kern_xx_f = new double[n_kern_x*n_kern_y];
-		double[] kern_xy_f = new double[n_kern_x*n_kern_y];
-		double[] kern_yy_f = new double[n_kern_x*n_kern_y];
-		int i=0, j=0;
-		for (int x = -Math.round(3*sigma); x <= Math.round(3*sigma); x++){
-			j=0;
-			for (int y = -Math.round(3*sigma); y <= Math.round(3*sigma); y++){
-				kern_xx_f[i*n_kern_y + j] = 1.0f/(2.0f*Math.PI*sigma*sigma*sigma*sigma) * (x*x/(sigma*sigma) - 1) * Math.exp(-(x*x + y*y)/(2.0f*sigma*sigma));
-				kern_xy_f[i*n_kern_y + j] = 1.0f/(2.0f*Math.PI*sigma*sigma*sigma*sigma*sigma*sigma)*(x*y)*Math.exp(-(x*x + y*y)/(2.0f*sigma*sigma));
-				j++;
-			}
-			i++;
-		}
-		for (j=0; j < n_kern_y; j++){
-			for (i=0; i < n_kern_x; i++){
-				kern_yy_f[j*n_kern_x + i] = kern_xx_f[i*n_kern_x + j];
-			}
-		}
-		
 		Dxx = new Image(image.getWidth(), image.getHeight(), image.getNumBands(), 32, true);
 		Dyy = new Image(image.getWidth(), image.getHeight(), image.getNumBands(), 32, true);
 		Dxy = new Image(image.getWidth(), image.getHeight(), image.getNumBands(), 32, true);
+		
+		if (recursive){
+			final RecursiveGaussian smooth = new RecursiveGaussian(sigma, 0), first = new RecursiveGaussian(sigma, 1),
+					second = new RecursiveGaussian(sigma, 2);
+			final int width = image.getWidth(), height = image.getHeight();
+			final PaddedBuffer buffer = new PaddedBuffer(image, band, second.getRadius());
+			final double[][] results = new double[3][width*height];
+			RecursiveGaussian.convolve(buffer, second, smooth, width, 0, height, results[0]);
+			RecursiveGaussian.convolve(buffer, first, first, width, 0, height, results[1]);
+			RecursiveGaussian.convolve(buffer, smooth, second, width, 0, height, results[2]);
+			setHessianRows(results, band);
+			return;
+		}
+		
+		//the Hessian kernels, shared by all the instances
+		final Kernel[] hessian = Kernel.getHessian(sigma);
+		final Kernel xx = hessian[0], xy = hessian[1], yy = hessian[2];
+		final int half = Math.round(3*sigma);
 
-		for (i=0; i<Dxx.getHeight(); i++){
-			for (j=0; j<Dxx.getWidth(); j++){
+		final PaddedBuffer buffer = new PaddedBuffer(image, band, half);
+		if (FFTConvolution.isFaster(xx.getWidth(), xx.getHeight(), false)){
+			//large kernels are convolved in the frequency domain, the three of them sharing the transform of the image
+			final int width = image.getWidth(), height = image.getHeight();
+			final double[][] results = new double[3][width*height];
+			FFTConvolution.convolve(new FFTConvolution[]{new FFTConvolution(xx.toArray()), new FFTConvolution(xy.toArray()), new FFTConvolution(yy.toArray())},
+					buffer, width, 0, height, results);
+			setHessianRows(results, band);
+			return;
+		}
+		for (int i=0; i<Dxx.getHeight(); i++){
+			for (int j=0; j<Dxx.getWidth(); j++){
 				
 				double sumXX = 0, sumXY = 0, sumYY = 0;
-				int i2=0, j2=0;
-				for (int x = j -Math.round(3*sigma); x <= j + Math.round(3*sigma); x++){
-					j2=0;
-					for (int y = i -Math.round(3*sigma); y <= i + Math.round(3*sigma); y++){
-						
-						double p = image.getPixelBoundaryMode(x, y, band);
+				for (int x = j - half, kerX = 0; x <= j + half; x++, kerX++){
+					for (int y = i - half, kerY = 0; y <= i + half; y++, kerY++){
 						
-						sumXX += p*kern_xx_f[i2*n_kern_y + j2];
-						sumXY += p*kern_xy_f[i2*n_kern_y + j2];
-						sumYY += p*kern_yy_f[i2*n_kern_y + j2];
+						double p = buffer.get(x, y);
 						
-						j2++;
+						sumXX += p*xx.get(kerX, kerY);
+						sumXY += p*xy.get(kerX, kerY);
+						sumYY += p*yy.get(kerX, kerY);
 					}
-					i2++;
 				}
 				
 				Dxx.setPixel(j, i, band, sumXX);
@@ -136,6 +150,19 @@ public class FrangiFilter extends Filter{
 		*/
 	}
 	
+	/**
+	 * Copies Dxx, Dxy and Dyy, computed for the whole band, into their images.
+	 */
+	private void setHessianRows(final double[][] results, final int band){
+		final int width = Dxx.getWidth();
+		final double[] row = new double[width];
+		for (int i=0; i<Dxx.getHeight(); i++){
+			System.arraycopy(results[0], i*width, row, 0, width); Dxx.setRow(i, band, row);
+			System.arraycopy(results[1], i*width, row, 0, width); Dxy.setRow(i, band, row);
+			System.arraycopy(results[2], i*width, row, 0, width); Dyy.setRow(i, band, row);
+		}
+	}
+	
 	Image lambda1, lambda2, Ix, Iy;
 	
 	private void frangiToEigenToImage(final Image image, final int band){
@@ -0,0 +1,74 @@
+package image;
+
+/**
+ * Bounding rectangle of the pixels of every band that were modified since the data derived from them was last computed.
+ * Each cache of {@link Image} keeps its own region, so only the modified area has to be visited when it is requested again.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+class DirtyRegion {
+	private final int width, height;
+	private final int[] minX, minY, maxX, maxY;
+
+	/**
+	 * Creates a region where the whole image is marked.
+	 */
+	DirtyRegion(final int width, final int height, final int numBands){
+		this.width = width; this.height = height;
+		minX = new int[numBands]; minY = new int[numBands];
+		maxX = new int[numBands]; maxY = new int[numBands];
+		clear();
+		addAll();
+	}
+
+	/**
+	 * Checks whether the region was created for an image with these dimensions.
+	 */
+	boolean fits(final int width, final int height, final int numBands){
+		return this.width == width && this.height == height && minX.length == numBands;
+	}
+
+	/**
+	 * Marks a single pixel.
+	 */
+	void add(final int x, final int y, final int band){
+		if (x < minX[band]) minX[band] = x;
+		if (x > maxX[band]) maxX[band] = x;
+		if (y < minY[band]) minY[band] = y;
+		if (y > maxY[band]) maxY[band] = y;
+	}
+	/**
+	 * Marks a rectangle.
+	 */
+	void add(final int x, final int y, final int width, final int height, final int band){
+		if (width <= 0 || height <= 0) return;
+		add(x, y, band);
+		add(x + width - 1, y + height - 1, band);
+	}
+	/**
+	 * Marks the whole image.
+	 */
+	void addAll(){
+		for (int b=0; b<minX.length; b++) add(0, 0, width, height, b);
+	}
+
+	boolean isDirty(final int band){return maxX[band] >= minX[band];}
+	boolean isDirty(){
+		for (int b=0; b<minX.length; b++) if (isDirty(b)) return true;
+		return false;
+	}
+	int getMinX(final int band){return minX[band];}
+	int getMinY(final int band){return minY[band];}
+	int getMaxX(final int band){return maxX[band];}
+	int getMaxY(final int band){return maxY[band];}
+
+	/**
+	 * Clears a band once the data derived from it is up to date.
+	 */
+	void clear(final int band){
+		minX[band] = Integer.MAX_VALUE; minY[band] = Integer.MAX_VALUE;
+		maxX[band] = Integer.MIN_VALUE; maxY[band] = Integer.MIN_VALUE;
+	}
+	void clear(){
+		for (int b=0; b<minX.length; b++) clear(b);
+	}
+}
@@ -0,0 +1,212 @@
+package image;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Histogram of a band of an {@link Image}, kept in primitive arrays.
+ * Integer images whose values span at most {@link #MAX_DENSE_BINS} intensities (every image up to 16 bits) have one bin per intensity.
+ * Float and 32-bit images have one bin per distinct value, or a fixed number of bins of the same width if set with {@link Image#setHistogramBins(int)}.
+ * The distinct values are counted in a hash table without copying the band. Above {@link #MAX_DENSE_BINS} distinct values, the band falls back to {@link #MAX_DENSE_BINS} bins of the same width.
+ * The {@link TreeMap} returned by {@link Image#getHistogram(int)} is only built from it when requested.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class Histogram {
+	public final static int MAX_DENSE_BINS = 1 << 16;
+
+	private long[] counts = new long[0];
+	private double[] values = null; //value of every bin when they are not equally spaced
+	private double min = 0, binWidth = 1;
+	private int numBins = 0;
+	private boolean binned = false;
+	private TreeMap<Double, Integer> map = null;
+
+	Histogram(){}
+
+	/**
+	 * Computes the histogram of the band, reusing the arrays of this object when possible.
+	 * @param img
+	 * @param band
+	 * @param bins - number of bins of float and 32-bit images, 0 for one bin per distinct value
+	 * @return this
+	 */
+	Histogram compute(final Image img, final int band, final int bins){
+		final int width = img.getWidth(), height = img.getHeight();
+		map = null; values = null; binned = false;
+		if (width == 0 || height == 0){
+			numBins = 0;
+			return this;
+		}
+
+		final long[] words = img.getBinaryWords(band);
+		if (words != null){ //bit-packed binary image, counts 64 pixels at once
+			long ones = 0;
+			for (int w=0; w<words.length; w++) ones += Long.bitCount(words[w]);
+			allocate(2);
+			min = 0; binWidth = 255;
+			counts[0] = (long) width*height - ones;
+			counts[1] = ones;
+			return this;
+		}
+
+		final Vector minMax = img.getMinMaxIntensity(band);
+		min = minMax.x;
+		final double max = minMax.y;
+		if (!img.containsFloatValues() && max - min < MAX_DENSE_BINS){ //one bin per intensity
+			allocate((int) (max - min) + 1);
+			binWidth = 1;
+			final int offset = (int) min;
+			final int[] row = new int[width];
+			for (int i=0; i<height; i++){
+				img.getRow(i, band, row);
+				for (int j=0; j<width; j++) counts[row[j] - offset]++;
+			}
+		}else if (bins > 0 || !countDistinct(img, band, width, height)){ //bins of the same width between the minimum and the maximum
+			final int n = (bins > 0) ? bins : MAX_DENSE_BINS;
+			allocate(n);
+			binned = true;
+			binWidth = (max > min) ? (max - min)/n : 1;
+			final double[] row = new double[width];
+			for (int i=0; i<height; i++){
+				img.getRow(i, band, row);
+				for (int j=0; j<width; j++) counts[binOf(row[j])]++;
+			}
+		}
+		return this;
+	}
+	private void allocate(final int bins){
+		if (counts.length < bins) counts = new long[bins];
+		else Arrays.fill(counts, 0, bins, 0);
+		numBins = bins;
+	}
+	/**
+	 * Counts the distinct values of the band in a hash table, which only holds the distinct values.
+	 * @return false, leaving the histogram untouched, if there are more than {@link #MAX_DENSE_BINS} distinct values
+	 */
+	private boolean countDistinct(final Image img, final int band, final int width, final int height){
+		long[] keys = new long[64], occurrences = new long[64]; //open addressing, an empty slot has no occurrences
+		int distinct = 0;
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			img.getRow(i, band, row);
+			for (int j=0; j<width; j++){
+				final long key = Double.doubleToLongBits(row[j] + 0.0); //-0.0 and 0.0 in the same bin
+				int slot = slotOf(keys, occurrences, key);
+				if (occurrences[slot] == 0){
+					if (++distinct > MAX_DENSE_BINS) return false;
+					if (2*distinct > keys.length){ //keeps the table at most half full
+						final long[] oldKeys = keys, oldOccurrences = occurrences;
+						keys = new long[2*oldKeys.length];
+						occurrences = new long[2*oldKeys.length];
+						for (int k=0; k<oldKeys.length; k++){
+							if (oldOccurrences[k] == 0) continue;
+							final int s = slotOf(keys, occurrences, oldKeys[k]);
+							keys[s] = oldKeys[k];
+							occurrences[s] = oldOccurrences[k];
+						}
+						slot = slotOf(keys, occurrences, key);
+					}
+					keys[slot] = key;
+				}
+				occurrences[slot]++;
+			}
+		}
+		allocate(distinct);
+		values = new double[distinct];
+		int bin = 0;
+		for (int k=0; k<keys.length; k++) if (occurrences[k] > 0) values[bin++] = Double.longBitsToDouble(keys[k]);
+		Arrays.sort(values);
+		for (int b=0; b<distinct; b++) counts[b] = occurrences[slotOf(keys, occurrences, Double.doubleToLongBits(values[b]))];
+		return true;
+	}
+	private static int slotOf(final long[] keys, final long[] occurrences, final long key){
+		final int mask = keys.length - 1;
+		long hash = key*0x9E3779B97F4A7C15L;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (occurrences[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+		return slot;
+	}
+	private int binOf(final double value){
+		final int bin = (int) ((value - min)/binWidth);
+		return (bin >= numBins) ? numBins - 1 : bin;
+	}
+
+	/**
+	 * Moves one occurrence from the previous value of a pixel to its new value.
+	 * @return false if the new value does not fit in the current bins, in which case the histogram must be computed again
+	 */
+	boolean update(final double previousValue, final double value){
+		final int from = getBin(previousValue), to = getBin(value);
+		if (from < 0 || to < 0 || counts[from] == 0) return false;
+		if (from == to) return true;
+		counts[from]--;
+		counts[to]++;
+		map = null;
+		return true;
+	}
+
+	/**
+	 * Returns the bin of the value or -1 if there is no bin for it.
+	 * When the bins have a fixed width, returns the bin whose interval contains the value.
+	 * @param value
+	 * @return
+	 */
+	public int getBin(final double value){
+		if (values != null){
+			final int bin = Arrays.binarySearch(values, 0, numBins, value);
+			return (bin >= 0) ? bin : -1;
+		}
+		if (binned){
+			if (value < min || value > min + binWidth*numBins) return -1;
+			return binOf(value);
+		}
+		final double bin = (value - min)/binWidth;
+		if (bin < 0 || bin >= numBins || bin != (int) bin) return -1;
+		return (int) bin;
+	}
+	public int getNumBins(){return numBins;}
+	/**
+	 * Returns the intensity of the bin, or the lower bound of its interval when the bins have a fixed width.
+	 * @param bin
+	 * @return
+	 */
+	public double getValue(final int bin){return (values != null) ? values[bin] : min + bin*binWidth;}
+	public long getCount(final int bin){return counts[bin];}
+	/**
+	 * Returns how many pixels have the intensity.
+	 * @param value
+	 * @return
+	 */
+	public long getCount(final double value){
+		final int bin = getBin(value);
+		return (bin < 0) ? 0 : counts[bin];
+	}
+	public boolean contains(final double value){return getCount(value) > 0;}
+	public long getMaxCount(){
+		long max = 0;
+		for (int b=0; b<numBins; b++) if (counts[b] > max) max = counts[b];
+		return max;
+	}
+	/**
+	 * Returns the number of bins with at least one pixel.
+	 * @return
+	 */
+	public int getNumIntensities(){
+		int n = 0;
+		for (int b=0; b<numBins; b++) if (counts[b] > 0) n++;
+		return n;
+	}
+	/**
+	 * Returns the histogram as a map from the intensities to their number of pixels, without the empty bins.
+	 * The map is built on the first call and kept until the histogram changes.
+	 * @return
+	 */
+	public TreeMap<Double, Integer> asTreeMap(){
+		if (map != null) return map;
+		map = new TreeMap<Double, Integer>();
+		for (int b=0; b<numBins; b++){
+			if (counts[b] > 0) map.put(getValue(b), (int) counts[b]);
+		}
+		return map;
+	}
+}
@@ -9,13 +9,9 @@ import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
@@ -35,6 +31,7 @@ import morphology.MorphologyConstants;
 import similarity.SimilarityMeasure;
 
 import static image.Image.BoundaryOperationType.*;
+import static image.Image.StorageType.*;
 /**
  * Class representing an image.
  * @author �rick Oliveira Rodrigues (erickr@id.uff.br)
@@ -42,6 +39,15 @@ import static image.Image.BoundaryOperationType.*;
 public class Image{
 	public static MorphologyConstants MorphologyConstants;
 	public static enum BoundaryOperationType{BOUNDARY_MODULE, BOUNDARY_REFLECT, BOUNDARY_AVERAGE}
+	/**
+	 * Where the pixels of the image are stored. {@link StorageType#STORAGE_HEAP} keeps them in Java arrays,
+	 * {@link StorageType#STORAGE_DIRECT} in direct buffers (outside the Java heap), {@link StorageType#STORAGE_MAPPED}
+	 * in memory-mapped temporary files, which are paged by the operating system and may exceed the heap size,
+	 * {@link StorageType#STORAGE_SPARSE} in tiles that are only allocated once a non-zero value is written to them (binary masks, labels), and
+	 * {@link StorageType#STORAGE_SHARED} in the data buffer of a BufferedImage, so converting from and to BufferedImage costs nothing
+	 * (8-bit and 16-bit images only, other images fall back to the heap).
+	 */
+	public static enum StorageType{STORAGE_HEAP, STORAGE_DIRECT, STORAGE_MAPPED, STORAGE_SPARSE, STORAGE_SHARED}
 
 	public static class InterpolationType{
 		public static final Object BICUBIC = RenderingHints.VALUE_INTERPOLATION_BICUBIC,
@@ -59,11 +65,16 @@ public class Image{
 	}
 
 
-	private List<TreeMap<Double, Integer>> intensities = null; //ascendingly ordered
+	private Histogram[] histograms = null; //reused when computed again
+	private boolean[] validHistograms = null;
+	private int histogramBins = 0;
 	//private int[][] pixelValue;
 	private PixelMap pixMap = null;
 	private BufferedImage bufferedImage = null;
-	private boolean updateBufferedImage = true, updateHistogram = true, updateMean = true;
+	private boolean updateBufferedImage = true;
+	//modified areas since the statistics (min, max and mean) and the buffered image were last computed, null if everything changed
+	private DirtyRegion statisticsRegion = null, bufferedImageRegion = null;
+	private int bulkWrites = 0;
 	//private boolean[][] binaryImgs;
 	private byte bands = 1;
 	private int type = -1;
@@ -83,15 +94,23 @@ public class Image{
 	
 	private void instantiateMorphology(){if (morphology == null) morphology = new Morphology(this);}
 	
+	/**
+	 * Makes this image a copy of img. The pixels are shared by both images until one of them is written (copy-on-write).
+	 * @param img
+	 * @return
+	 */
 	public Image set(Image img){
-		pixMap = new PixelMap(img.getWidth(), img.getHeight(), img.getNumBands(), img.getBitDepth(), img.containsFloatValues());
-		for (int b=0; b<img.getNumBands(); b++){
-			pixMap.setPixelData(img.pixMap.getPixelData(b).clone(), b, img.getBitDepth());
-		}
+		return set(img, false);
+	}
+	private Image set(Image img, final boolean copyNow){
+		if (img == this) return this;
+		final PixelMap previousMap = pixMap;
+		pixMap = img.pixMap.copy(copyNow);
+		if (previousMap != null) previousMap.dispose();
 		this.type = img.getType();
 		this.bands = (byte) img.getNumBands();
-		updateBufferedImage = true; updateHistogram = true; updateMean = true;
-		display = null; morphology = null; bufferedImage = null; intensities = null; minMax = null;
+		this.setToUpdateBuffers();
+		display = null; morphology = null; bufferedImage = null; histograms = null; validHistograms = null;
 		return this;
 	}
 	
@@ -116,6 +135,20 @@ public class Image{
 		pixMap = new PixelMap(width, height, numBands, bitDepth, canAssumeFloatValues);
 		this.bands = (byte) numBands;
 	}
+	/**
+	 * Instantiates a new image whose pixels are stored according to storage.
+	 * Images with {@link StorageType#STORAGE_DIRECT} or {@link StorageType#STORAGE_MAPPED} do not occupy the Java heap and are useful for images bigger than the heap.
+	 * @param width
+	 * @param height
+	 * @param numBands
+	 * @param bitDepth
+	 * @param canAssumeFloatValues
+	 * @param storage - where the pixels are stored
+	 */
+	public Image(int width, int height, int numBands, int bitDepth, boolean canAssumeFloatValues, StorageType storage){
+		pixMap = new PixelMap(width, height, numBands, bitDepth, canAssumeFloatValues, storage);
+		this.bands = (byte) numBands;
+	}
 	/**
 	 * Assumes the image is grey and the image values are at most 32 bits depth and creates a new image based on the values of matrix img.
 	 * @param img - input matrix
@@ -162,6 +195,15 @@ public class Image{
 	public Image(BufferedImage img){
 		setImageFromBufferedImage(img);
 	}
+	/**
+	 * Creates an image from a BufferedImage. With {@link StorageType#STORAGE_SHARED} the pixels are not copied: the image reads and writes
+	 * the data buffer of img directly and {@link #getBufferedImage()} returns img itself.
+	 * @param img
+	 * @param storage
+	 */
+	public Image(BufferedImage img, StorageType storage){
+		setImageFromBufferedImage(img, storage);
+	}
 	public Image(String imagePath) throws IOException{
 		setImageFromBufferedImage(ImageIO.read(new File(imagePath)));
 	}
@@ -265,10 +307,33 @@ public class Image{
 			}
 		}
 
-		this.setToUpdateBuffers();
+		this.bufferedImageRegion = new DirtyRegion(width, height, this.getNumBands());
+		this.bufferedImageRegion.clear();
 		this.updateBufferedImage = false;
 		return bufferedImage;
 	}
+	/**
+	 * Renders only the modified areas of the image on the buffered image previously created by {@link #updateBufferedImage(int, int)}.
+	 * @return false if the buffered image has to be created again
+	 */
+	private boolean refreshBufferedImage(){
+		final int width = this.getWidth(), height = this.getHeight();
+		if (this.bufferedImage == null || this.bufferedImageRegion == null || !this.bufferedImageRegion.fits(width, height, this.getNumBands())) return false;
+		if (this.bufferedImage.getWidth() != width || this.bufferedImage.getHeight() != height) return false;
+		WritableRaster raster = this.bufferedImage.getRaster();
+		for (int b=0; b<this.getNumBands() && b<raster.getNumBands(); b++){
+			if (!this.bufferedImageRegion.isDirty(b)) continue;
+			final int minX = this.bufferedImageRegion.getMinX(b), maxX = this.bufferedImageRegion.getMaxX(b);
+			for (int i=this.bufferedImageRegion.getMinY(b); i<=this.bufferedImageRegion.getMaxY(b); i++){
+				for (int j=minX; j<=maxX; j++){
+					raster.setSample(j, i, b, (int) this.getPixel(j, i, b));
+				}
+			}
+			this.bufferedImageRegion.clear(b);
+		}
+		this.updateBufferedImage = false;
+		return true;
+	}
 	
 	public void showHistogram() throws Exception{
 		showHistogram(0);
@@ -288,12 +353,8 @@ public class Image{
 		final int MAX_HIST_HEIGHT = histogramHeight, HIST_LENGTH = histogramWidth;
 		Image histogram = new Image(HIST_LENGTH, MAX_HIST_HEIGHT);
 		
-		TreeMap<Double, Integer> hist = this.getHistogram(band);
-		double max = Integer.MIN_VALUE;
-		for (double intensity : hist.keySet()){
-			if (hist.get(intensity) > max)
-				max = hist.get(intensity);
-		}
+		final Histogram hist = this.getBandHistogram(band);
+		final double max = hist.getMaxCount();
 		
 		float divisor = 1f;
 		if (max > MAX_HIST_HEIGHT){
@@ -301,7 +362,7 @@ public class Image{
 		}
 		
 		for (int j=0; j<histogram.getWidth(); j++){
-			for (int i=0; i<(int)(hist.get((double)j)*divisor); i++){
+			for (int i=0; i<(int)(hist.getCount((double)j)*divisor); i++){
 				histogram.setPixel(j, histogram.getHeight() - i - 1, 255);
 			}
 		}
@@ -309,28 +370,58 @@ public class Image{
 		return histogram;
 	}
 	
+	/**
+	 * Returns the histogram of the band as a map from the intensities to their number of pixels.
+	 * Built from {@link #getBandHistogram(int)}, which is much faster to query.
+	 * @param band
+	 * @return
+	 */
 	public TreeMap<Double, Integer> getHistogram(final int band){
-		return this.getHistogram().get(band);
+		return this.getBandHistogram(band).asTreeMap();
 	}
-	
-	private ArrayList<TreeMap<Double,Integer>> getHistogram(){
-		if (!this.updateHistogram && intensities != null) return (ArrayList<TreeMap<Double, Integer>>) intensities;
-
-		intensities = new ArrayList<TreeMap<Double, Integer>>(this.getNumBands());
-		for (int k=0; k<this.getNumBands(); k++) intensities.add(new TreeMap<Double, Integer>());
-		for (int b=0; b<this.getNumBands(); b++){
-			for (int i=0; i<this.getHeight(); i++){
-				for (int j=0; j<this.getWidth(); j++){
-					if (!intensities.get(b).containsKey(this.getPixel(j, i)))
-						intensities.get(b).put(this.getPixel(j, i), 1);
-					else{
-						intensities.get(b).put(this.getPixel(j, i), intensities.get(b).remove(this.getPixel(j, i)) + 1);
-					}
-				}
-			}
+	/**
+	 * Returns the histogram of the band. It is kept up to date after single writes and only computed again when the image changes too much.
+	 * @param band
+	 * @return
+	 */
+	public Histogram getBandHistogram(final int band){
+		if (histograms == null || histograms.length != this.getNumBands()){
+			histograms = new Histogram[this.getNumBands()];
+			validHistograms = new boolean[this.getNumBands()];
 		}
-		this.updateHistogram = false;
-		return (ArrayList<TreeMap<Double, Integer>>) intensities;
+		if (histograms[band] == null) histograms[band] = new Histogram();
+		if (!validHistograms[band]){
+			histograms[band].compute(this, band, histogramBins);
+			validHistograms[band] = true;
+		}
+		return histograms[band];
+	}
+	/**
+	 * Sets the number of bins of the histograms of float and 32-bit images. With 0 (default), there is one bin per distinct value,
+	 * or {@link Histogram#MAX_DENSE_BINS} bins of the same width if the band has more distinct values than that.
+	 * Integer images of up to 16 bits always have one bin per intensity.
+	 * @param bins
+	 * @return
+	 */
+	public Image setHistogramBins(final int bins){
+		if (bins != this.histogramBins) invalidateHistograms();
+		this.histogramBins = bins;
+		return this;
+	}
+	public int getHistogramBins(){return this.histogramBins;}
+	private void invalidateHistograms(){
+		if (validHistograms != null) Arrays.fill(validHistograms, false);
+	}
+	private boolean isHistogramValid(final int band){
+		return validHistograms != null && band < validHistograms.length && validHistograms[band];
+	}
+	/**
+	 * Moves one occurrence of the histogram from the previous value of a pixel to its new value, so the histogram does not have to be computed again after single writes.
+	 * Inside a bulk write, the histogram is simply computed again when requested.
+	 */
+	private void updateHistogram(final int band, final double previousValue, final double value){
+		if (this.bulkWrites > 0 || !histograms[band].update(previousValue, value))
+			validHistograms[band] = false;
 	}
 	
 	
@@ -362,71 +453,79 @@ public class Image{
 				return this.backgroundColor[band];
 			}else{
 				if (this.getBoundaryOperation() == BOUNDARY_AVERAGE) return this.getAverageIntensity(band);
-
-				int nX = 0, nY = 0;
-				if (x < 0){
-					switch(this.getBoundaryOperation()){
-					case BOUNDARY_MODULE:
-						nX = WIDTH - 1 - Math.abs(x % WIDTH);
-						break;
-					case BOUNDARY_REFLECT:
-						nX = Math.abs(x % WIDTH);
-						break;
-					}
-				}else if (x >= WIDTH){
-					switch(this.getBoundaryOperation()){
-					case BOUNDARY_MODULE:
-						nX = Math.abs(x % WIDTH);
-						break;
-					case BOUNDARY_REFLECT:
-						nX = WIDTH - 1 - Math.abs(x % WIDTH);
-						break;
-					}
-				}
-				if (y < 0){
-					switch(this.getBoundaryOperation()){
-					case BOUNDARY_MODULE:
-						nY = HEIGHT - 1 - Math.abs(y % HEIGHT);
-						break;
-					case BOUNDARY_REFLECT:
-						nY = Math.abs(y % HEIGHT);
-						break;
-					}
-				}else if (y >= HEIGHT){
-					switch(this.getBoundaryOperation()){
-					case BOUNDARY_MODULE:
-						nY = Math.abs(y % HEIGHT);
-						break;
-					case BOUNDARY_REFLECT:
-						nY = HEIGHT - 1 - Math.abs(y % HEIGHT);
-						break;
-					}
-				}
-				return this.getPixel(nX, nY, band);
+				return this.getPixel(getBoundaryCoordinate(x, WIDTH, this.getBoundaryOperation()), getBoundaryCoordinate(y, HEIGHT, this.getBoundaryOperation()), band);
 			}
 		}
 		return this.getPixel(x, y, band);
 	}
+	/**
+	 * Maps a coordinate outside the image (x or y) to a coordinate inside it, according to the boundary operation.
+	 * Coordinates inside the image are returned unchanged.
+	 * @param c - the coordinate
+	 * @param size - the width or the height of the image
+	 * @param boundaryOperation
+	 * @return
+	 */
+	public static int getBoundaryCoordinate(final int c, final int size, final BoundaryOperationType boundaryOperation){
+		if (c < 0){
+			switch(boundaryOperation){
+			case BOUNDARY_MODULE:
+				return size - 1 - Math.abs(c % size);
+			case BOUNDARY_REFLECT:
+				return Math.abs(c % size);
+			}
+			return 0;
+		}else if (c >= size){
+			switch(boundaryOperation){
+			case BOUNDARY_MODULE:
+				return Math.abs(c % size);
+			case BOUNDARY_REFLECT:
+				return size - 1 - Math.abs(c % size);
+			}
+			return 0;
+		}
+		return c;
+	}
 	public double getPixel(int x, int y){
 		return getPixel(x, y, 0);
 	}
 	public double getPixel(int x, int y, int band){
 		return this.pixMap.get(x, y, band);
 	}
+	/**
+	 * Copies the row y of the band to the array passed as parameter, which must have at least {@link #getWidth()} positions.
+	 * Much faster than calling {@link #getPixel(int, int, int)} for every pixel of the row.
+	 * @param y
+	 * @param band
+	 * @param row - the destination array
+	 * @return row
+	 */
+	public double[] getRow(int y, int band, double[] row){
+		return this.pixMap.getRow(y, band, row);
+	}
+	/**
+	 * Copies the row y of the band to the array passed as parameter, which must have at least {@link #getWidth()} positions.
+	 * Float values are truncated.
+	 * @param y
+	 * @param band
+	 * @param row - the destination array
+	 * @return row
+	 */
+	public int[] getRow(int y, int band, int[] row){
+		return this.pixMap.getRow(y, band, row);
+	}
 
 	public int[][] getMatrixImage() throws Exception{
 		return this.pixMap.getIntegerPixelData(0);
 	}
 	public Set<Double> getIntensities(int band){
-		return getHistogram().get(band).keySet();
+		return getHistogram(band).keySet();
 	}
 	public int getHeight(){return this.pixMap.getHeight();}
 	public int getWidth(){return this.pixMap.getWidth();}
 	public float getDiagonalLength(){return (float) Math.pow(Math.pow(this.getWidth(), 2) + Math.pow(this.getHeight(), 2), 1/2d);}
 	public boolean containsIntensity(double intensity, int band){
-		if (this.getHistogram().get(band).containsKey(intensity)) 
-			return this.getHistogram().get(band).get(intensity) >= 1; 
-		return false;
+		return this.getBandHistogram(band).contains(intensity);
 	}
 	public byte getNumBands(){return bands;}
 	/**
@@ -435,7 +534,9 @@ public class Image{
 	 * @throws Exception
 	 */
 	public BufferedImage getBufferedImage() {
+		if (this.pixMap.getSharedBufferedImage() != null) return this.pixMap.getSharedBufferedImage(); //always up to date
 		if (!this.updateBufferedImage) return this.bufferedImage;
+		if (refreshBufferedImage()) return this.bufferedImage; //only the modified areas are rendered again
 
 		this.bufferedImage = updateBufferedImage();
 		return this.bufferedImage;
@@ -452,29 +553,39 @@ public class Image{
 			}
 		return type;
 	}
-	//private Vector minMax = null; 
-	private HashMap<Integer, Vector> minMax = null;
+	//per band statistics, only the rows of the statisticsRegion are visited again when requested
+	private Statistics[] statistics = null;
+	private Vector[] minMax = null;
 	public Vector getMinMaxIntensity(int band){
-		if (this.updateHistogram) {minMax = null; this.updateHistogram = false;}
-		if (minMax == null){
-			minMax = new HashMap<Integer, Vector>();
+		final Statistics s = getStatistics(band);
+		if (minMax[band] == null) minMax[band] = new Vector(s.getMinimum(), s.getMaximum());
+		return minMax[band];
+	}
+	/**
+	 * Returns the minimum, maximum, sum, mean and variance of the band.
+	 * They are computed for all bands at once and kept until the image changes, then only the modified rows are visited again.
+	 * @param band
+	 * @return
+	 */
+	public Statistics getStatistics(final int band){
+		final int width = this.getWidth(), height = this.getHeight(), numBands = this.getNumBands();
+		if (statisticsRegion == null || !statisticsRegion.fits(width, height, numBands)){
+			statisticsRegion = new DirtyRegion(width, height, numBands);
+			statistics = new Statistics[numBands];
+			minMax = new Vector[numBands];
 		}
-		if (!minMax.containsKey(band)){
-			double min = Long.MAX_VALUE, max = Long.MIN_VALUE;
-			double value = 0;
-			for (int i=0; i<this.getHeight(); i++){
-				for (int j=0; j<this.getWidth(); j++){
-					if (this.isGray()) value = this.getPixel(j, i);
-					else value = this.getPixel(j, i, band);
-					if (value < min)
-						min = value;
-					if (value > max)
-						max = value;
-				}
-			}
-			minMax.put(band,  new Vector(min, max));
+		if (!statisticsRegion.isDirty(band)) return statistics[band];
+
+		final double[] row = new double[width];
+		for (int b=0; b<numBands; b++){
+			if (!statisticsRegion.isDirty(b)) continue;
+			if (statistics[b] == null) statistics[b] = new Statistics(width, height);
+			statistics[b].updateRows(this, b, statisticsRegion.getMinY(b), statisticsRegion.getMaxY(b), row);
+			statistics[b].reduce();
+			statisticsRegion.clear(b);
+			minMax[b] = null;
 		}
-		return minMax.get(band);
+		return statistics[band];
 	}
 	public double getMinimalIntesity(int band){
 		return this.getMinMaxIntensity(band).x;
@@ -484,31 +595,54 @@ public class Image{
 	}
 	public int getBitDepth(){return this.pixMap.getBitDepth();}//acertar dps
 	public boolean containsFloatValues(){return this.pixMap.containsFloatValues();}
+	public StorageType getStorageType(){return this.pixMap.getStorageType();}
+	/**
+	 * Moves the pixels of the image to another kind of storage.
+	 * @param storage
+	 * @return
+	 */
+	public Image setStorageType(final StorageType storage){
+		if (storage == this.getStorageType()) return this;
+		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), this.getNumBands(), this.getBitDepth(), this.containsFloatValues(), storage);
+		final double[] row = new double[this.getWidth()];
+		for (int b=0; b<this.getNumBands(); b++){
+			for (int i=0; i<this.getHeight(); i++){
+				pm.setRow(i, b, this.getRow(i, b, row));
+			}
+		}
+		this.pixMap.dispose();
+		this.pixMap = pm;
+		this.setToUpdateBuffers();
+		return this;
+	}
+	/**
+	 * Returns the words of a bit-packed binary band (64 pixels per long, every row starts on a new word) or null if the band is not bit-packed.
+	 * Used by the word-parallel binary operations, the words must only be read. To write them, use {@link #getWritableBinaryWords(int)} and call {@link #setToUpdateBuffers()} afterwards.
+	 */
+	long[] getBinaryWords(int band){return this.pixMap.getBinaryWords(band);}
+	long[] getWritableBinaryWords(int band){return this.pixMap.getWritableBinaryWords(band);}
+	int getBinaryWordsPerRow(){return this.pixMap.getBinaryWordsPerRow();}
+	long getBinaryLastWordMask(){return this.pixMap.getBinaryLastWordMask();}
+	/**
+	 * Returns the size of the tiles of images with {@link StorageType#STORAGE_SPARSE}.
+	 * @return
+	 */
+	public int getTileSize(){return this.pixMap.getTileSize();}
+	/**
+	 * Checks whether a rectangle of a {@link StorageType#STORAGE_SPARSE} image was never written, i.e., all of its pixels are 0 and no memory is allocated for them.
+	 * Always returns false for the other storage types. Useful to skip empty areas of the image.
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @param band
+	 * @return
+	 */
+	public boolean isRegionEmpty(int x, int y, int width, int height, int band){return this.pixMap.isRegionEmpty(x, y, width, height, band);}
 	private int getAssociatedNumBands(int imgType){return (imgType == BufferedImage.TYPE_BYTE_GRAY) ? 1 : (imgType == BufferedImage.TYPE_INT_RGB) ? 3 : 4;}
 	private int getAssociatedType(int numBands){return (numBands == 1) ? BufferedImage.TYPE_BYTE_GRAY : (numBands == 3) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;}
-	double meanIntensity = 0;
-	byte meanBandBuffer = 0;
 	public double getAverageIntensity(int band){
-		if (!this.updateMean && meanBandBuffer == band) 
-			return meanIntensity;
-		
-		BigDecimal bd = BigDecimal.valueOf(0);
-		for (int i=0; i<this.getHeight(); i++){
-			for (int j=0; j<this.getWidth(); j++){
-				final double p = this.getPixel(j, i, band);
-				//if (Double.isNaN(p)) continue;
-				bd = bd.add(BigDecimal.valueOf(p));
-			}
-		}
-		try{
-			bd = bd.divide(BigDecimal.valueOf(this.getWidth()*this.getHeight()));
-		}catch(Exception e){
-			bd = bd.divide(BigDecimal.valueOf(this.getWidth()*this.getHeight()), 2, RoundingMode.HALF_UP); //not exact divisions
-		}
-		this.updateMean = false;
-		this.meanBandBuffer = (byte) band;
-		this.meanIntensity = bd.doubleValue();
-		return meanIntensity;
+		return this.getStatistics(band).getMean();
 	}
 	
 	/**
@@ -565,13 +699,17 @@ public class Image{
 	 * @param newMaximum
 	 */
 	public Image stretchOrShrinkRange(double newMinimum, double newMaximum){
+		final double[] row = new double[this.getWidth()];
 		for (int b=0; b<this.getNumBands(); b++){
-			final double max = this.getMaximalIntensity(b), min = this.getMinimalIntesity(b);
+			final Statistics s = this.getStatistics(b);
+			final double max = s.getMaximum(), min = s.getMinimum();
+			final double scale = (newMinimum - newMaximum)/(min - max);
 			for (int i=0; i<this.getHeight(); i++){
-				for (int j=0; j<this.getWidth(); j++){
-					final double r = ((newMinimum - newMaximum)/(min - max))*this.getPixel(j, i, b) +  newMaximum -(((newMinimum - newMaximum)/(min - max))*max);
-					this.setPixel(j, i, b, r);
+				this.getRow(i, b, row);
+				for (int j=0; j<row.length; j++){
+					row[j] = scale*row[j] + newMaximum - scale*max;
 				}
+				this.setRow(i, b, row);
 			}
 		}
 		return this;
@@ -624,14 +762,24 @@ public class Image{
 	 * @return
 	 */
 	public double countValue(final double value, final int band, boolean otherThan){
+		final long[] words = this.getBinaryWords(band);
+		if (words != null){ //bit-packed binary image, counts 64 pixels at once
+			double ones = 0;
+			for (int w=0; w<words.length; w++) ones += Long.bitCount(words[w]);
+			final double total = (double) this.getWidth()*this.getHeight();
+			final double count = (value == 255) ? ones : (value == 0) ? total - ones : 0;
+			return otherThan ? total - count : count;
+		}
 		double counter = 0;
+		final double[] row = new double[this.getWidth()];
 		for (int i=0; i<this.getHeight(); i++){
-			for (int j=0; j<this.getWidth(); j++){
+			this.getRow(i, band, row);
+			for (int j=0; j<row.length; j++){
 				if (!otherThan){
-					if (this.getPixel(j, i, band) == value)
+					if (row[j] == value)
 						counter++;
 				}else{
-					if (this.getPixel(j, i, band) != value)
+					if (row[j] != value)
 						counter++;
 				}
 			}
@@ -712,23 +860,88 @@ public class Image{
 	public void setBoundaryOperation(final BoundaryOperationType boundaryOperation){
 		this.boundaryOperation = boundaryOperation;
 	}
-	public void setToUpdateBuffers(){this.updateBufferedImage = true; this.updateHistogram = true; this.updateMean = true; this.updateHashCode = true;}
+	/**
+	 * Flags every data derived from the pixels (statistics, histogram and buffered image) to be computed again from the whole image.
+	 * Must be called after the pixels are modified without the setters of this class. If the modified area is known, prefer {@link #setToUpdateBuffers(int, int, int, int, int)}.
+	 */
+	public void setToUpdateBuffers(){
+		this.updateBufferedImage = true; this.updateHashCode = true;
+		this.statisticsRegion = null; this.bufferedImageRegion = null;
+		this.invalidateHistograms();
+	}
+	/**
+	 * Flags a rectangle of the band as modified, so the data derived from the pixels is only computed again over this area.
+	 * The histogram of the band is computed again.
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @param band
+	 */
+	public void setToUpdateBuffers(int x, int y, int width, int height, int band){
+		if (this.statisticsRegion != null) this.statisticsRegion.add(x, y, width, height, band);
+		if (this.bufferedImageRegion != null) this.bufferedImageRegion.add(x, y, width, height, band);
+		this.updateBufferedImage = true; this.updateHashCode = true;
+		if (this.isHistogramValid(band)) this.validHistograms[band] = false;
+	}
+	private void setToUpdateBuffers(int x, int y, int band){
+		if (this.statisticsRegion != null) this.statisticsRegion.add(x, y, band);
+		if (this.bufferedImageRegion != null) this.bufferedImageRegion.add(x, y, band);
+		this.updateBufferedImage = true; this.updateHashCode = true;
+	}
+	/**
+	 * Starts a sequence of writes. Until {@link #endBulkWrite()} is called, the setters only record the modified area
+	 * instead of keeping the histogram up to date on every write, which is faster when many pixels are written.
+	 * The statistics are still correct if requested inside the sequence. Calls can be nested.
+	 * @return
+	 */
+	public Image beginBulkWrite(){
+		this.bulkWrites++;
+		return this;
+	}
+	/**
+	 * Ends a sequence of writes started with {@link #beginBulkWrite()}.
+	 * @return
+	 */
+	public Image endBulkWrite(){
+		if (this.bulkWrites > 0) this.bulkWrites--;
+		return this;
+	}
+	public boolean isBulkWriting(){return this.bulkWrites > 0;}
 	public void setPixelAllBands(int x, int y, double value){
-		for (int b=0; b<this.getNumBands(); b++) this.pixMap.set(x, y, b, value); setToUpdateBuffers();
+		for (int b=0; b<this.getNumBands(); b++) setPixel(x, y, b, value);
 	}
-	public void setPixel(int x, int y, double value){this.pixMap.set(x, y, value); setToUpdateBuffers();}
+	public void setPixel(int x, int y, double value){setPixel(x, y, 0, value);}
 	public void setPixel(int x, int y, int band, double value){
-		//this.updateBuffered = true;
-		setToUpdateBuffers();
+		final boolean histogram = this.isHistogramValid(band);
+		final double previousValue = histogram ? this.pixMap.get(x, y, band) : 0;
 		this.pixMap.set(x, y, band, value);
+		setToUpdateBuffers(x, y, band);
+		if (histogram) updateHistogram(band, previousValue, this.pixMap.get(x, y, band));
+	}
+	/**
+	 * Sets the row y of the band with the first {@link #getWidth()} values of the array passed as parameter.
+	 * @param y
+	 * @param band
+	 * @param row
+	 * @return
+	 */
+	public Image setRow(int y, int band, double[] row){
+		setToUpdateBuffers(0, y, this.getWidth(), 1, band);
+		this.pixMap.setRow(y, band, row);
+		return this;
+	}
+	public Image setRow(int y, int band, int[] row){
+		setToUpdateBuffers(0, y, this.getWidth(), 1, band);
+		this.pixMap.setRow(y, band, row);
+		return this;
 	}
 	public void setPixel(int x, int y, int band, Color color){
-		setToUpdateBuffers();
 		switch (band){
-		case 0: this.pixMap.set(x, y, 0, color.getRed()); break;
-		case 1: if (this.getNumBands() <= 1) break; this.pixMap.set(x, y, 1, color.getGreen()); break;
-		case 2: if (this.getNumBands() <= 2) break; this.pixMap.set(x, y, 2, color.getBlue()); break;
-		case 3: if (this.getNumBands() <= 3) break; this.pixMap.set(x, y, 3, color.getAlpha()); break;
+		case 0: this.setPixel(x, y, 0, color.getRed()); break;
+		case 1: if (this.getNumBands() <= 1) break; this.setPixel(x, y, 1, color.getGreen()); break;
+		case 2: if (this.getNumBands() <= 2) break; this.setPixel(x, y, 2, color.getBlue()); break;
+		case 3: if (this.getNumBands() <= 3) break; this.setPixel(x, y, 3, color.getAlpha()); break;
 		}
 	}
 	public void setPixel(int x, int y, Color color){
@@ -746,7 +959,7 @@ public class Image{
 		return convertToRGB(8);
 	}
 	public Image convertToRGB(final int bitDepth) throws Exception{
-		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), 3, bitDepth, false);
+		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), 3, bitDepth, false, this.getStorageType());
 		for (int b=0; b<3; b++){
 			for (int i=0; i<this.getHeight(); i++){
 				for (int j=0; j<this.getWidth(); j++){
@@ -763,7 +976,7 @@ public class Image{
 	}
 	public Image convertToGray() throws Exception{return convertToGray(0, 8);}
 	public Image convertToGray(int band, int bitDepth) throws Exception{
-		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), 1, bitDepth, false);
+		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), 1, bitDepth, false, this.getStorageType());
 		for (int i=0; i<this.getHeight(); i++){
 			for (int j=0; j<this.getWidth(); j++){
 				pm.set(j, i, this.getPixel(j, i, band));
@@ -772,14 +985,18 @@ public class Image{
 		this.setConfiguration(1, BufferedImage.TYPE_BYTE_GRAY);
 
 		this.pixMap = pm;
+		this.setToUpdateBuffers();
 		return this;
 	}
 	public Image convertToBinary(float threshold) throws Exception{
-		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), 1, 1, false);
+		PixelMap pm = new PixelMap(this.getWidth(), this.getHeight(), 1, 1, false, this.getStorageType());
+		final double[] row = new double[this.getWidth()];
 		for (int i=0; i<this.getHeight(); i++){
-			for (int j=0; j<this.getWidth(); j++){
-				pm.set(j, i, this.getPixel(j, i, 0) >= threshold ? 255 : 0);
+			this.getRow(i, 0, row);
+			for (int j=0; j<row.length; j++){
+				row[j] = row[j] >= threshold ? 255 : 0;
 			}
+			pm.setRow(i, 0, row); //packed a word at a time
 		}
 		this.setNumBands(1);
 		this.setType(BufferedImage.TYPE_BYTE_BINARY);
@@ -803,7 +1020,8 @@ public class Image{
 		PixelMap previousMap = this.pixMap;
 		this.bands = (byte) numBands;
 		this.type = getAssociatedType(numBands);
-		this.pixMap = new PixelMap(this.getWidth(), this.getHeight(), numBands, bitDepth, containsFloatValues);
+		this.pixMap = new PixelMap(this.getWidth(), this.getHeight(), numBands, bitDepth, containsFloatValues, previousMap.getStorageType());
+		this.setToUpdateBuffers();
 		for (int i=0; i<this.getHeight(); i++){
 			for (int j=0; j<this.getWidth(); j++){
 				for (int b=0; b<numBands; b++){
@@ -826,8 +1044,23 @@ public class Image{
 		}
 	}
 	public void setImageFromBufferedImage(BufferedImage img){
+		setImageFromBufferedImage(img, (pixMap != null) ? pixMap.getStorageType() : STORAGE_HEAP);
+	}
+	private void setImageFromBufferedImage(BufferedImage img, final StorageType storage){
 		if (pixMap != null) pixMap.dispose();
 
+		if (storage == STORAGE_SHARED){
+			final PixelMap shared = PixelMap.share(img);
+			if (shared != null){ //no copy at all, the image works directly on the data buffer of img
+				this.setToUpdateBuffers();
+				this.bufferedImage = img;
+				this.type = img.getType();
+				this.bands = (byte) shared.getNumBands();
+				pixMap = shared;
+				return;
+			}
+		}
+
 		if (img.getType() == BufferedImage.TYPE_BYTE_INDEXED) {
 			BufferedImage rgb = new BufferedImage(img.getWidth(null), img.getHeight(null), BufferedImage.TYPE_INT_ARGB);
 			rgb.createGraphics().drawImage(img, 0, 0, null);
@@ -841,7 +1074,7 @@ public class Image{
 		
 		WritableRaster raster = img.getRaster();
 		this.bands = (byte) raster.getNumBands();
-		pixMap = new PixelMap(img.getWidth(), img.getHeight(), raster.getNumBands(), 8, false);
+		pixMap = new PixelMap(img.getWidth(), img.getHeight(), raster.getNumBands(), 8, false, storage);
 
 
 		//fill the image
@@ -879,7 +1112,13 @@ public class Image{
 		return this;
 	}
 
+	/**
+	 * Sets the folder where the files of images using {@link StorageType#STORAGE_MAPPED} are created. The default is the temporary folder of the system.
+	 * @param directory
+	 */
+	public static void setMappedStorageDirectory(final File directory){PixelMap.setMappedStorageDirectory(directory);}
 	public void setBackgroundColor(final double[] bgColor){this.backgroundColor = bgColor;}
+	public double[] getBackgroundColor(){return this.backgroundColor;}
 	public void setBackgroundColor(double value, int numOfBands){
 		this.backgroundColor = new double[numOfBands];
 		for (int k=0; k<numOfBands; k++){
@@ -957,13 +1196,31 @@ public class Image{
 	public boolean hasBufferedImage(){return this.bufferedImage != null;}
 	
 	//others
-	public void dispose(){if (this.intensities != null) this.intensities.clear(); this.intensities = null; this.pixMap = null;}
+	/**
+	 * Releases the pixels, deleting the file of a {@link StorageType#STORAGE_MAPPED} image once no copy or window uses it.
+	 */
+	public void dispose(){
+		if (this.pixMap != null) this.pixMap.dispose();
+		this.histograms = null; this.validHistograms = null; this.pixMap = null;
+	}
 	public void disposeBufferedImage(){this.bufferedImage = null;}
 	
 	
+	/**
+	 * Clones the image. The pixels are not copied until either image is written (copy-on-write), so cloning is cheap.
+	 */
 	public Image clone() {
 		return new Image(this);
 	}
+	/**
+	 * Clones the image copying its pixels right away, in bulk ({@link System#arraycopy} for images on the heap).
+	 * Prefer {@link #clone()}, unless the copy is going to be written by several threads at once.
+	 * @return
+	 */
+	public Image copy(){
+		Image out = new Image(0, 0, this.getNumBands());
+		return out.set(this, true);
+	}
 	
 	public boolean equals(Image comparedImg, SimilarityMeasure sm) throws Exception{
 		sm.setImages(this, comparedImg);
@@ -1192,13 +1449,11 @@ public class Image{
 	 */
 	public Image subImage(int x, int y, int xShift, int yShift, int width, int height){
 		//if (width > this.getWidth() - x) width = this.getWidth() - x; if (height > this.getHeight() - y) height = this.getHeight() - y;
-		Image out = new Image(width, height, this.getNumBands(), this.getBitDepth(), this.containsFloatValues());
-		for (int i=0; i<height; i++)
-			for (int j=0; j<width; j++)
-				for (int b=0; b<out.getNumBands(); b++)
-					out.setPixel(j, i, b, this.getPixelBoundaryMode(j + x + xShift, i + y + yShift, b));
-
-		this.set(out);
+		//the previous pixels are only referenced by the window, they are copied when the image is written
+		this.pixMap = this.pixMap.view(x + xShift, y + yShift, width, height, this.getBoundaryOperation(), this.getBoundaryBackground());
+		this.type = -1;
+		this.setToUpdateBuffers();
+		display = null; morphology = null; bufferedImage = null; histograms = null; validHistograms = null;
 		return this;
 	}
 
@@ -1213,6 +1468,54 @@ public class Image{
 	public Image subImage(int x, int y, int width, int height){
 		return subImage(x, y, 0, 0, width, height);
 	}
+	/**
+	 * Returns a new image that is a window over the rectangle of this image starting at (x, y). No pixel is copied, so it is cheap to
+	 * create one window per position in sliding window algorithms. Pixels outside this image follow {@link #getPixelBoundaryMode(int, int, int)}.
+	 * The window behaves as a copy: writing to it copies its pixels first, and writing to this image while the window exists copies the pixels of this image (copy-on-write).
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public Image getSubImage(int x, int y, int width, int height){
+		return getSubImage(x, y, width, height, this.getBoundaryBackground());
+	}
+	/**
+	 * Same as {@link #getSubImage(int, int, int, int)}, but the pixels outside this image have the value background.
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @param background
+	 * @return
+	 */
+	public Image getSubImage(int x, int y, int width, int height, double background){
+		final double[] bg = new double[this.getNumBands()];
+		Arrays.fill(bg, background);
+		return getSubImage(x, y, width, height, bg);
+	}
+	private Image getSubImage(int x, int y, int width, int height, double[] background){
+		Image out = new Image(0, 0, this.getNumBands(), this.getBitDepth(), this.containsFloatValues());
+		out.pixMap = this.pixMap.view(x, y, width, height, this.getBoundaryOperation(), background);
+		out.setBoundaryOperation(this.getBoundaryOperation());
+		out.setBackgroundColor(this.backgroundColor);
+		return out;
+	}
+	/**
+	 * Values of the pixels outside the image when they do not depend on the coordinates (background color or average intensity), null otherwise.
+	 */
+	private double[] getBoundaryBackground(){
+		if (this.backgroundColor != null){
+			final double[] bg = new double[this.getNumBands()];
+			for (int b=0; b<bg.length; b++) bg[b] = (b < this.backgroundColor.length) ? this.backgroundColor[b] : 0;
+			return bg;
+		}
+		if (this.getBoundaryOperation() != BOUNDARY_AVERAGE) return null;
+		final double[] bg = new double[this.getNumBands()];
+		for (int b=0; b<bg.length; b++) bg[b] = this.getAverageIntensity(b);
+		return bg;
+	}
 	
 	public Image insertImage(Image imageToInsert, final int x, final int y){
 		for (int i=0; i<imageToInsert.getHeight(); i++){
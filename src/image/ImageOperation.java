@@ -226,6 +226,7 @@ public class ImageOperation {
 	*/
 	
 	public Image invert(){
+		if (operateBinary(null, OPERATION_NOT)) return associatedImg;
 		for (int b=0; b<associatedImg.getNumBands(); b++){
 			double maxTone = associatedImg.getMaximalIntensity(b);
 				for (int i=0; i<associatedImg.getHeight(); i++){
@@ -250,6 +251,7 @@ public class ImageOperation {
 	}
 	
 	public Image intersect(Image imgToIntersect){
+		if (operateBinary(imgToIntersect, OPERATION_AND)) return associatedImg;
 		double value = 0;
 		for (int i=0; i<associatedImg.getHeight(); i++){
 			for (int j=0; j<associatedImg.getWidth(); j++){
@@ -262,6 +264,7 @@ public class ImageOperation {
 		return associatedImg;
 	}
 	public Image getMaskedImage(Image mask){
+		if (operateBinary(mask, OPERATION_AND)) return associatedImg;
 		for (int b=0; b<associatedImg.getNumBands(); b++){
 			for (int i=0; i<associatedImg.getHeight(); i++){
 				for (int j=0; j<associatedImg.getWidth(); j++){
@@ -287,6 +290,7 @@ public class ImageOperation {
 	}
 	
 	public Image subtract(Image imgToSubtract){
+			if (operateBinary(imgToSubtract, OPERATION_XOR)) return associatedImg; //255 - 0, 0 - 255 != 0
 			for (int b=0; b<associatedImg.getNumBands(); b++){
 				for (int i=0; i<associatedImg.getHeight(); i++){
 					for (int j=0; j<associatedImg.getWidth(); j++){
@@ -297,6 +301,7 @@ public class ImageOperation {
 		return associatedImg;
 	}
 	public Image add(Image imgToSum){
+		if (operateBinary(imgToSum, OPERATION_OR)) return associatedImg;
 		for (int b=0; b<associatedImg.getNumBands(); b++){
 			for (int i=0; i<associatedImg.getHeight(); i++){
 				for (int j=0; j<associatedImg.getWidth(); j++){
@@ -316,6 +321,7 @@ public class ImageOperation {
 	public void setThresholdImageLowerValue(int value){this.lowerValue = value;}
 
 	public Image threshold(int thresholdLevel){
+		if (thresholdBinary(0 > thresholdLevel ? upperValue : lowerValue, 255 > thresholdLevel ? upperValue : lowerValue)) return associatedImg;
 		for (int i=0; i<associatedImg.getHeight(); i++){
 			for (int j=0; j<associatedImg.getWidth(); j++){
 				for (int b=0; b<associatedImg.getNumBands(); b++){
@@ -329,6 +335,8 @@ public class ImageOperation {
 		return associatedImg;
 	}
 	public Image threshold(int lowerThresholdLevel, int upperThresholdLevel){
+		if (thresholdBinary((0 > lowerThresholdLevel && 0 < upperThresholdLevel) ? upperValue : lowerValue,
+				(255 > lowerThresholdLevel && 255 < upperThresholdLevel) ? upperValue : lowerValue)) return associatedImg;
 		for (int i=0; i<associatedImg.getHeight(); i++){
 			for (int j=0; j<associatedImg.getWidth(); j++){
 				for (int b=0; b<associatedImg.getNumBands(); b++){
@@ -341,6 +349,64 @@ public class ImageOperation {
 		}
 		return associatedImg;
 	}
+	//word-parallel binary operations
+	private static final int OPERATION_NOT = 0, OPERATION_AND = 1, OPERATION_OR = 2, OPERATION_XOR = 3;
+
+	/**
+	 * Operates bit-packed binary images 64 pixels at a time. Returns false, doing nothing, if the images are not both bit-packed
+	 * binary images of the same size, in which case the pixel by pixel version must be used.
+	 * @param other - the second operand (a single band image is used for all bands), ignored by OPERATION_NOT
+	 * @param operation
+	 * @return
+	 */
+	private boolean operateBinary(final Image other, final int operation){
+		if (associatedImg.getBinaryWords(0) == null) return false;
+		if (other != null && (other.getBinaryWords(0) == null || other.getWidth() != associatedImg.getWidth() || other.getHeight() != associatedImg.getHeight()))
+			return false;
+		final int wordsPerRow = associatedImg.getBinaryWordsPerRow();
+		final long lastMask = associatedImg.getBinaryLastWordMask();
+		for (int b=0; b<associatedImg.getNumBands(); b++){
+			final long[] words = associatedImg.getWritableBinaryWords(b);
+			if (operation == OPERATION_NOT){
+				//the image is inverted in respect to its maximal intensity, an all black band remains black
+				boolean empty = true;
+				for (int w=0; w<words.length && empty; w++) empty = words[w] == 0;
+				if (empty) continue;
+				for (int w=0; w<words.length; w++)
+					words[w] = ((w % wordsPerRow) == wordsPerRow - 1) ? ~words[w] & lastMask : ~words[w];
+				continue;
+			}
+			final long[] otherWords = other.getBinaryWords(other.getNumBands() == 1 ? 0 : Math.min(b, other.getNumBands() - 1));
+			switch(operation){
+			case OPERATION_AND: for (int w=0; w<words.length; w++) words[w] &= otherWords[w]; break;
+			case OPERATION_OR: for (int w=0; w<words.length; w++) words[w] |= otherWords[w]; break;
+			case OPERATION_XOR: for (int w=0; w<words.length; w++) words[w] ^= otherWords[w]; break;
+			}
+		}
+		associatedImg.setToUpdateBuffers();
+		return true;
+	}
+
+	/**
+	 * Thresholds a bit-packed binary image word by word, given the values that black (0) and white (255) pixels are mapped to.
+	 * Returns false if the image is not bit-packed.
+	 */
+	private boolean thresholdBinary(final int blackTo, final int whiteTo){
+		if (associatedImg.getBinaryWords(0) == null) return false;
+		final boolean black = blackTo != 0, white = whiteTo != 0;
+		final int wordsPerRow = associatedImg.getBinaryWordsPerRow();
+		final long lastMask = associatedImg.getBinaryLastWordMask();
+		for (int b=0; b<associatedImg.getNumBands(); b++){
+			final long[] words = associatedImg.getWritableBinaryWords(b);
+			for (int w=0; w<words.length; w++){
+				final long mask = ((w % wordsPerRow) == wordsPerRow - 1) ? lastMask : -1L;
+				words[w] = ((white ? words[w] : 0) | (black ? ~words[w] : 0)) & mask;
+			}
+		}
+		associatedImg.setToUpdateBuffers();
+		return true;
+	}
+
 	public Image smoothThreshold(int lowerThresholdLevel, int upperThresholdLevel){
 		for (int i=0; i<associatedImg.getHeight(); i++){
 			for (int j=0; j<associatedImg.getWidth(); j++){
@@ -407,9 +473,14 @@ public class ImageOperation {
 		Image aux = new Image(associatedImg);
 		
 		double value = 0;
-		for (int i=0; i<associatedImg.getHeight(); i++){
-			for (int j=0; j<associatedImg.getWidth(); j++){
-				for (int b=0; b<associatedImg.getNumBands(); b++){
+		final boolean flat = Morphology.isFlatRectangle(structElement);
+		for (int b=0; b<associatedImg.getNumBands(); b++){
+			if (flat){
+				Morphology.dilateOrErodeRectangle(aux, structElement, b, dilation, associatedImg);
+				continue;
+			}
+			for (int i=0; i<associatedImg.getHeight(); i++){
+				for (int j=0; j<associatedImg.getWidth(); j++){
 					value = Morphology.getDilateErodeCentralValue(aux, structElement, j, i, b, dilation);
 					associatedImg.setPixel(j, i, b, value);
 				}
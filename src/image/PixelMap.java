@@ -1,284 +1,1119 @@
 package image;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import image.Image.StorageType;
+
+import static image.Image.StorageType.*;
+
+/**
+ * Stores the pixels of an image. Every layer (band) is kept in a single contiguous array in row-major order,
+ * where the pixel (x, y) is found at position y*stride + x.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
 class PixelMap {
 
 	private PixelData[] layers = null;
 	private int bitDepth = 0;
 	private int width, height;
 	private boolean floatValues = false;
-	
+	private StorageType storage = STORAGE_HEAP;
+	private BufferedImage sharedImage = null;
+	private boolean view = false; //the layers are windows over the layers of another map
+	private int[] owners = null; //number of maps (copies and windows) sharing the layers until one of them is written (copy-on-write), null if not shared
+	private boolean readOnly = false; //the layers must be copied before being written, either because it is a window or because they are shared
+	private static File mappedDirectory = null;
+
 	PixelMap(int width, int height, int numBands, int bitDepth, boolean floatValues){
+		this(width, height, numBands, bitDepth, floatValues, STORAGE_HEAP);
+	}
+
+	PixelMap(int width, int height, int numBands, int bitDepth, boolean floatValues, StorageType storage){
 		this.bitDepth = bitDepth;
 		this.width = width; this.height = height;
 		layers = new PixelData[numBands];
 		this.floatValues = floatValues;
-		if (floatValues){
-			if (bitDepth <= 32){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new FloatPixelData(width, height);
-			}
-			else if (bitDepth <= 64){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new DoublePixelData(width, height);
-			}
-		}else{
-			if (bitDepth == 1){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new BooleanPixelData(width, height);
-			}
-			else if (bitDepth <= 8){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new BytePixelData(width, height);
+		this.storage = storage;
+		if (storage == STORAGE_SHARED){
+			final BufferedImage img = createSharedBufferedImage(width, height, numBands, bitDepth, floatValues);
+			if (img != null){
+				wrap(img);
+				return;
 			}
-			else if (bitDepth <= 16){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new ShortPixelData(width, height);
-			}
-			else if (bitDepth <= 32){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new IntegerPixelData(width, height);
+			this.storage = STORAGE_HEAP; //layout that cannot be represented by a BufferedImage
+		}
+		for (int b=0; b<numBands; b++){
+			switch(storage){
+			case STORAGE_DIRECT: case STORAGE_MAPPED:
+				final int sampleType = (floatValues) ? ((bitDepth <= 32) ? BufferPixelData.FLOAT : BufferPixelData.DOUBLE) :
+					(bitDepth == 1) ? BufferPixelData.BOOLEAN : (bitDepth <= 8) ? BufferPixelData.BYTE : (bitDepth <= 16) ? BufferPixelData.SHORT :
+					(bitDepth <= 32) ? BufferPixelData.INTEGER : BufferPixelData.DOUBLE;
+				layers[b] = new BufferPixelData(width, height, sampleType, storage == STORAGE_MAPPED);
+				break;
+			case STORAGE_SPARSE:
+				layers[b] = new TiledPixelData(width, height);
+				break;
+			default:
+				layers[b] = createHeapPixelData(width, height);
+				break;
 			}
-			else if (bitDepth > 32){
-				for (int b=0; b<numBands; b++)
-					layers[b] = new DoublePixelData(width, height);
+		}
+	}
+
+	/**
+	 * Creates a pixel map that shares the data buffer of img, i.e., no pixel is copied and writing to one changes the other.
+	 * Returns null if the layout of img is not supported (see {@link #canShare(BufferedImage)}).
+	 * @param img
+	 * @return
+	 */
+	static PixelMap share(BufferedImage img){
+		if (!canShare(img)) return null;
+		PixelMap pm = new PixelMap(0, 0, 0, 8, false);
+		pm.storage = STORAGE_SHARED;
+		pm.wrap(img);
+		return pm;
+	}
+
+	/**
+	 * Images with 8-bit or 16-bit component samples (TYPE_BYTE_GRAY, TYPE_USHORT_GRAY, TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, ...)
+	 * or packed in integers (TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_INT_BGR) can be shared.
+	 */
+	static boolean canShare(BufferedImage img){
+		final SampleModel sm = img.getRaster().getSampleModel();
+		final DataBuffer db = img.getRaster().getDataBuffer();
+		if (sm instanceof ComponentSampleModel) return db instanceof DataBufferByte || db instanceof DataBufferUShort;
+		if (sm instanceof SinglePixelPackedSampleModel) return db instanceof DataBufferInt;
+		return false;
+	}
+
+	private static BufferedImage createSharedBufferedImage(int width, int height, int numBands, int bitDepth, boolean floatValues){
+		if (floatValues || bitDepth <= 1 || bitDepth > 16 || width <= 0 || height <= 0) return null;
+		if (numBands == 1) return new BufferedImage(width, height, (bitDepth <= 8) ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_USHORT_GRAY);
+		if (bitDepth > 8) return null;
+		if (numBands == 3) return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		if (numBands == 4) return new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+		return null;
+	}
+
+	private void wrap(BufferedImage img){
+		final WritableRaster raster = img.getRaster();
+		this.sharedImage = img;
+		this.width = img.getWidth(); this.height = img.getHeight();
+		this.floatValues = false;
+		this.bitDepth = (raster.getDataBuffer() instanceof DataBufferUShort) ? 16 : 8;
+		this.layers = new PixelData[raster.getNumBands()];
+		for (int b=0; b<layers.length; b++)
+			layers[b] = new RasterPixelData(raster, b);
+	}
+
+	/**
+	 * Returns the BufferedImage whose data buffer holds the pixels of a {@link StorageType#STORAGE_SHARED} map, null otherwise.
+	 */
+	BufferedImage getSharedBufferedImage(){return sharedImage;}
+
+	/**
+	 * Creates an independent copy of the map, with the same storage.
+	 * The copy shares the layers of this map until one of them is written, only then the written map copies them (copy-on-write).
+	 */
+	PixelMap copy(){
+		if (sharedImage == null && !view){
+			if (owners == null) owners = new int[]{1};
+			owners[0]++;
+			readOnly = true;
+			PixelMap pm = new PixelMap(0, 0, 0, bitDepth, floatValues, storage);
+			pm.width = width; pm.height = height;
+			pm.layers = layers.clone();
+			pm.owners = owners;
+			pm.readOnly = true;
+			return pm;
+		}
+		return copy(true);
+	}
+	/**
+	 * Creates an independent copy of the map, with the same storage.
+	 * @param copyNow - copies every layer right away (with {@link System#arraycopy} on the heap) instead of sharing them until the first write
+	 */
+	PixelMap copy(final boolean copyNow){
+		if (!copyNow) return copy();
+		if (view){ //windows are never written, so the copy can be another window over the same pixels
+			PixelMap pm = new PixelMap(0, 0, 0, bitDepth, floatValues, storage);
+			pm.width = width; pm.height = height;
+			pm.layers = layers.clone();
+			pm.view = true; pm.readOnly = true;
+			if (owners != null) owners[0]++;
+			pm.owners = owners;
+			return pm;
+		}
+		if (sharedImage != null){
+			final ColorModel cm = sharedImage.getColorModel();
+			final BufferedImage img = new BufferedImage(cm, sharedImage.copyData(null), cm.isAlphaPremultiplied(), null);
+			return share(img);
+		}
+		PixelMap pm = new PixelMap(0, 0, 0, bitDepth, floatValues, storage);
+		pm.width = width; pm.height = height;
+		pm.layers = new PixelData[layers.length];
+		for (int b=0; b<layers.length; b++) pm.layers[b] = layers[b].clone();
+		return pm;
+	}
+
+	/**
+	 * Creates a pixel map whose layers are a rectangle of the layers of this map, no pixel is copied.
+	 * The rectangle may exceed this map, then the pixels outside it are taken from background (one value per band) or, if it is null,
+	 * from the coordinates mapped by boundary (see {@link Image#getBoundaryCoordinate(int, int, Image.BoundaryOperationType)}).
+	 * Both maps share the pixels as copies do (see {@link #copy()}): the window is copied to its own storage right before the first write to it,
+	 * and this map copies its layers if written while the window exists, so the window always holds the pixels of the moment it was created.
+	 * Maps that share the data buffer of a BufferedImage cannot give it up, so their window is taken from a copy.
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 * @param boundary
+	 * @param background
+	 * @return
+	 */
+	PixelMap view(int x, int y, int width, int height, Image.BoundaryOperationType boundary, double[] background){
+		PixelMap pm = new PixelMap(0, 0, 0, bitDepth, floatValues, (storage == STORAGE_SHARED) ? STORAGE_HEAP : storage);
+		pm.width = width; pm.height = height;
+		pm.layers = new PixelData[layers.length];
+		final PixelData[] source = (sharedImage != null) ? copy(true).layers : layers;
+		for (int b=0; b<layers.length; b++)
+			pm.layers[b] = new ViewPixelData(source[b], x, y, width, height, boundary, (background == null) ? Double.NaN : background[b], background != null);
+		pm.view = true; pm.readOnly = true;
+		if (sharedImage == null){
+			if (owners == null) owners = new int[]{1};
+			owners[0]++;
+			readOnly = true;
+			pm.owners = owners;
+		}
+		return pm;
+	}
+	boolean isView(){return view;}
+	/**
+	 * Copies the pixels of a window to its own storage, which is then written normally.
+	 */
+	private void materialize(){
+		PixelMap pm = new PixelMap(width, height, layers.length, bitDepth, floatValues, storage);
+		final double[] row = new double[width];
+		for (int b=0; b<layers.length; b++){
+			for (int i=0; i<height; i++){
+				layers[b].getRow(i, row);
+				pm.layers[b].setRow(i, row);
 			}
 		}
+		layers = pm.layers;
+		view = false; readOnly = false;
+	}
+	/**
+	 * Gives the map its own layers before it is written.
+	 */
+	private void detach(){
+		if (view){
+			materialize();
+			if (owners != null) owners[0]--;
+			owners = null;
+			return;
+		}
+		if (owners[0] > 1){ //the other maps keep the current layers
+			owners[0]--;
+			for (int b=0; b<layers.length; b++) layers[b] = layers[b].clone();
+		}
+		owners = null;
+		readOnly = false;
+	}
 
+	private PixelData createHeapPixelData(int width, int height){
+		if (floatValues){
+			if (bitDepth <= 32)
+				return new FloatPixelData(width, height);
+			else
+				return new DoublePixelData(width, height);
+		}else{
+			if (bitDepth == 1)
+				return new BooleanPixelData(width, height);
+			else if (bitDepth <= 8)
+				return new BytePixelData(width, height);
+			else if (bitDepth <= 16)
+				return new ShortPixelData(width, height);
+			else if (bitDepth <= 32)
+				return new IntegerPixelData(width, height);
+			else
+				return new DoublePixelData(width, height);
+		}
 	}
-	
+
+	/**
+	 * Sets the folder where the files of memory-mapped images are created. If null, the temporary folder of the system is used.
+	 * @param directory
+	 */
+	static void setMappedStorageDirectory(File directory){mappedDirectory = directory;}
+
 	//get
 	public double get(int x, int y, int band){
 		return layers[band].get(x, y);
 	}
 	public double get(int x, int y){return layers[0].get(x, y);}
 	public PixelData getPixelData(int band){return layers[band];}
-	public int[][] getIntegerPixelData(int band) throws Exception{if (this.getBitDepth() != 32) throw new Exception("The bit depth of the image is not 32."); return ((IntegerPixelData)layers[band]).pixelData;}
+	/**
+	 * Returns a copy of the band as a matrix. The bit depth must be 32.
+	 * @param band
+	 * @return
+	 * @throws Exception
+	 */
+	public int[][] getIntegerPixelData(int band) throws Exception{
+		if (this.getBitDepth() != 32) throw new Exception("The bit depth of the image is not 32.");
+		int[][] matrix = new int[height][width];
+		for (int i=0; i<height; i++)
+			layers[band].getRow(i, matrix[i]);
+		return matrix;
+	}
 	public int getNumBands(){return this.layers.length;}
 	public int getBitDepth(){return this.bitDepth;}
 	public int getWidth(){return width;}
 	public int getHeight(){return height;}
-	
+	public int getStride(){return width;}
+	public StorageType getStorageType(){return storage;}
+	public int getTileSize(){return TiledPixelData.TILE_SIZE;}
+	/**
+	 * Returns true if every pixel inside the rectangle holds the fill value (0) without being stored,
+	 * which only happens with {@link StorageType#STORAGE_SPARSE}.
+	 */
+	public boolean isRegionEmpty(int x, int y, int width, int height, int band){
+		if (!(layers[band] instanceof TiledPixelData)) return false;
+		return ((TiledPixelData)layers[band]).isRegionEmpty(x, y, width, height);
+	}
+
+	/**
+	 * Copies the row y of the band to dst (dst must have at least width positions).
+	 */
+	public double[] getRow(int y, int band, double[] dst){layers[band].getRow(y, dst); return dst;}
+	/**
+	 * Copies the row y of the band to dst, truncating float values (dst must have at least width positions).
+	 */
+	public int[] getRow(int y, int band, int[] dst){layers[band].getRow(y, dst); return dst;}
+
+
+
 
-	
-	
 	//set
 	public void set(int x, int y, int band, double value){
+		if (readOnly) detach();
 		layers[band].set(x, y, value);
 	}
-	public void set(int x, int y, double value){layers[0].set(x, y, value);}
-	public void set(int x, int y, boolean value){((BooleanPixelData)layers[0]).set(x, y, value);}
-	
-	
-	//set
+	public void set(int x, int y, double value){if (readOnly) detach(); layers[0].set(x, y, value);}
+	public void set(int x, int y, boolean value){
+		if (readOnly) detach();
+		if (layers[0] instanceof BooleanPixelData) ((BooleanPixelData)layers[0]).set(x, y, value);
+		else layers[0].set(x, y, value ? 255 : 0);
+	}
+	public void setRow(int y, int band, double[] src){if (readOnly) detach(); layers[band].setRow(y, src);}
+	public void setRow(int y, int band, int[] src){if (readOnly) detach(); layers[band].setRow(y, src);}
+
+
+	//set, the heap layers are copied with System.arraycopy, the others row by row
 	public void setPixelData(int[][] pData, int band){
-		((IntegerPixelData)layers[band]).pixelData = pData;
+		if (readOnly) detach();
+		for (int i=0; i<height; i++) layers[band].setRow(i, pData[i]);
 	}
 	public void setPixelData(short[][] pData, int band){
-		((ShortPixelData)layers[band]).pixelData = pData;
+		if (readOnly) detach();
+		if (layers[band] instanceof ShortPixelData){
+			ShortPixelData pd = (ShortPixelData)layers[band];
+			for (int i=0; i<height; i++) System.arraycopy(pData[i], 0, pd.pixelData, i*width, width);
+			return;
+		}
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++) row[j] = pData[i][j];
+			layers[band].setRow(i, row);
+		}
 	}
 	public void setPixelData(byte[][] pData, int band){
-		((BytePixelData)layers[band]).pixelData = pData;
+		if (readOnly) detach();
+		if (layers[band] instanceof BytePixelData){
+			BytePixelData pd = (BytePixelData)layers[band];
+			for (int i=0; i<height; i++) System.arraycopy(pData[i], 0, pd.pixelData, i*width, width);
+			return;
+		}
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++) row[j] = pData[i][j] - BytePixelData.SHIFT;
+			layers[band].setRow(i, row);
+		}
 	}
 	public void setPixelData(boolean[][] pData, int band){
-		((BooleanPixelData)layers[band]).pixelData = pData;
+		if (readOnly) detach();
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++) row[j] = pData[i][j] ? 255 : 0;
+			layers[band].setRow(i, row);
+		}
 	}
 	public void setPixelData(float[][] pData, int band){
-		((FloatPixelData)layers[band]).pixelData = pData;
+		if (readOnly) detach();
+		if (layers[band] instanceof FloatPixelData){
+			FloatPixelData pd = (FloatPixelData)layers[band];
+			for (int i=0; i<height; i++) System.arraycopy(pData[i], 0, pd.pixelData, i*width, width);
+			return;
+		}
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++) row[j] = pData[i][j];
+			layers[band].setRow(i, row);
+		}
 	}
 	public void setPixelData(double[][] pData, int band){
-		((DoublePixelData)layers[band]).pixelData = pData;
+		if (readOnly) detach();
+		if (layers[band] instanceof DoublePixelData){
+			DoublePixelData pd = (DoublePixelData)layers[band];
+			for (int i=0; i<height; i++) System.arraycopy(pData[i], 0, pd.pixelData, i*width, width);
+			return;
+		}
+		for (int i=0; i<height; i++) layers[band].setRow(i, pData[i]);
 	}
 	public void setPixelData(PixelData pData, int band, int bitDepth){
-		if (floatValues){
-			if (bitDepth <= 32)
-				setPixelData(((FloatPixelData)pData).pixelData, band);
-			else if (bitDepth <= 64)
-				setPixelData(((DoublePixelData)pData).pixelData, band);
-		}else{
-			if (bitDepth == 1)
-				setPixelData(((BooleanPixelData)pData).pixelData, band);
-			else if (bitDepth <= 8)
-				setPixelData(((BytePixelData)pData).pixelData, band);
-			else if (bitDepth <= 16)
-				setPixelData(((ShortPixelData)pData).pixelData, band);
-			else if (bitDepth <= 32)
-				setPixelData(((IntegerPixelData)pData).pixelData, band);
-		}
+		if (readOnly) detach();
+		layers[band] = pData;
 	}
-	
+
 	public boolean containsFloatValues(){return floatValues;}
-	
-	
+
+	/**
+	 * Returns the bit-packed words of a binary band (64 pixels per word, each row starting on a new word),
+	 * or null if the band is not stored as packed bits on the heap. The array must not be written, see {@link #getWritableBinaryWords(int)}.
+	 */
+	long[] getBinaryWords(int band){
+		if (view) return null; //windows are not packed
+		if (!(layers[band] instanceof BooleanPixelData)) return null;
+		return ((BooleanPixelData)layers[band]).pixelData;
+	}
+	/**
+	 * Same as {@link #getBinaryWords(int)}, but writing to the array changes the image.
+	 */
+	long[] getWritableBinaryWords(int band){
+		if (view) return null;
+		if (readOnly) detach();
+		return getBinaryWords(band);
+	}
+	int getBinaryWordsPerRow(){return (width + 63) >>> 6;}
+	/**
+	 * Mask of the valid bits of the last word of each row of a binary band.
+	 */
+	long getBinaryLastWordMask(){return ((width & 63) == 0) ? -1L : (1L << width) - 1;}
+
+
 	abstract class PixelData{
+		protected final int width, height;
+
+		PixelData(int width, int height){this.width = width; this.height = height;}
+
 		public abstract double get(int x, int y);
 		public abstract void set(int x, int y, double value);
 		public abstract PixelData clone();
+
+		public int getWidth(){return width;}
+		public int getHeight(){return height;}
+		/**
+		 * Distance, in elements, between the first pixel of two consecutive rows.
+		 */
+		public int getStride(){return width;}
+		public int index(int x, int y){return y*getStride() + x;}
+
+		//bulk accessors, subclasses override them with direct array access
+		public void getRow(int y, double[] dst){for (int x=0; x<width; x++) dst[x] = get(x, y);}
+		/**
+		 * Copies length pixels of the row y, starting at x, to dst starting at offset.
+		 */
+		public void getRow(int x, int y, int length, double[] dst, int offset){for (int i=0; i<length; i++) dst[offset + i] = get(x + i, y);}
+		public void getRow(int y, int[] dst){for (int x=0; x<width; x++) dst[x] = (int) get(x, y);}
+		public void setRow(int y, double[] src){for (int x=0; x<width; x++) set(x, y, src[x]);}
+		public void setRow(int y, int[] src){for (int x=0; x<width; x++) set(x, y, src[x]);}
+		public void fill(double value){for (int y=0; y<height; y++) for (int x=0; x<width; x++) set(x, y, value);}
 	}
+	/**
+	 * Binary pixel data packed in bits, 64 pixels per long. Each row starts on a new word so that rows can be operated word by word.
+	 * Bits of the last word of a row that are beyond the width of the image are always 0.
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
 	private class BooleanPixelData extends PixelData{
-		boolean[][] pixelData;
-		
-		BooleanPixelData(int width, int height){pixelData = new boolean[height][width];}
-		
+		long[] pixelData;
+		final int wordsPerRow;
+
+		BooleanPixelData(int width, int height){super(width, height); wordsPerRow = (width + 63) >>> 6; pixelData = new long[wordsPerRow*height];}
+
 		@Override
 		public double get(int x, int y) {
-			return ((pixelData[y][x]) ? 255 : 0);
+			return (getBoolean(x, y) ? 255 : 0);
 		}
 		public boolean getBoolean(int x, int y){
-			return pixelData[y][x];
+			return (pixelData[y*wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
 		}
 
 		@Override
 		public void set(int x, int y, double value) {
-			pixelData[y][x] = (value != 0);
+			set(x, y, value != 0);
 		}
 		public void set(int x, int y, boolean value) {
-			pixelData[y][x] = value;
+			if (value) pixelData[y*wordsPerRow + (x >>> 6)] |= (1L << x);
+			else pixelData[y*wordsPerRow + (x >>> 6)] &= ~(1L << x);
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int off = y*wordsPerRow;
+			for (int x=0; x<width; x++) dst[x] = ((pixelData[off + (x >>> 6)] & (1L << x)) != 0) ? 255 : 0;
+		}
+		@Override
+		public void setRow(int y, double[] src) {
+			final int off = y*wordsPerRow;
+			for (int w=0; w<wordsPerRow; w++){
+				long word = 0;
+				final int x0 = w << 6, x1 = Math.min(width, x0 + 64);
+				for (int x=x0; x<x1; x++) if (src[x] != 0) word |= (1L << x);
+				pixelData[off + w] = word;
+			}
+		}
+		@Override
+		public void fill(double value) {
+			if (value == 0){Arrays.fill(pixelData, 0L); return;}
+			final long last = getBinaryLastWordMask();
+			for (int y=0; y<height; y++){
+				Arrays.fill(pixelData, y*wordsPerRow, (y + 1)*wordsPerRow, -1L);
+				pixelData[(y + 1)*wordsPerRow - 1] = last;
+			}
 		}
-		
+
 		@Override
 		public PixelData clone() {
-			BooleanPixelData n = new BooleanPixelData(this.pixelData[0].length, this.pixelData.length);
-			for (int i=0; i<pixelData.length; i++)
-				for (int j=0; j<pixelData[0].length; j++)
-					n.set(j, i, this.get(j, i));					
+			BooleanPixelData n = new BooleanPixelData(width, height);
+			System.arraycopy(pixelData, 0, n.pixelData, 0, pixelData.length);
 			return n;
 		}
-		
+
 	}
 	/**
 	 * Byte images cannot receive negative values!!! Just short or higher ones are able to do this.
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	private class BytePixelData extends PixelData{
-		byte[][] pixelData;
+		byte[] pixelData;
 		final static byte SHIFT = Byte.MIN_VALUE;
-		
-		BytePixelData(int width, int height){pixelData = new byte[height][width]; for (int i=0; i<pixelData.length; i++) for (int j=0; j<pixelData[0].length; j++) pixelData[i][j] = SHIFT;}
-		
+
+		BytePixelData(int width, int height){super(width, height); pixelData = new byte[width*height]; Arrays.fill(pixelData, SHIFT);}
+
 		@Override
 		public double get(int x, int y) {
-			return pixelData[y][x] - SHIFT;
+			return pixelData[y*width + x] - SHIFT;
 		}
 
 		@Override
 		public void set(int x, int y, double value) {
-			pixelData[y][x] = (byte) (value + SHIFT);
+			pixelData[y*width + x] = (byte) (value + SHIFT);
 		}
-		
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) dst[x] = pixelData[off + x] - SHIFT;
+		}
+		@Override
+		public void getRow(int x, int y, int length, double[] dst, int offset) {
+			final int off = y*width + x;
+			for (int i=0; i<length; i++) dst[offset + i] = pixelData[off + i] - SHIFT;
+		}
+		@Override
+		public void getRow(int y, int[] dst) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) dst[x] = pixelData[off + x] - SHIFT;
+		}
+		@Override
+		public void setRow(int y, double[] src) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) pixelData[off + x] = (byte) (src[x] + SHIFT);
+		}
+		@Override
+		public void setRow(int y, int[] src) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) pixelData[off + x] = (byte) (src[x] + SHIFT);
+		}
+		@Override
+		public void fill(double value) {
+			Arrays.fill(pixelData, (byte) (value + SHIFT));
+		}
+
 		@Override
 		public PixelData clone() {
-			BytePixelData n = new BytePixelData(this.pixelData[0].length, this.pixelData.length);
-			for (int i=0; i<pixelData.length; i++)
-				for (int j=0; j<pixelData[0].length; j++)
-					n.set(j, i, this.get(j, i));					
+			BytePixelData n = new BytePixelData(width, height);
+			System.arraycopy(pixelData, 0, n.pixelData, 0, pixelData.length);
 			return n;
 		}
 
 	}
 	private class ShortPixelData extends PixelData{
-		short[][] pixelData;
+		short[] pixelData;
 		//final static short SHIFT = 128;
-		
-		ShortPixelData(int width, int height){pixelData = new short[height][width]; }
-		
+
+		ShortPixelData(int width, int height){super(width, height); pixelData = new short[width*height]; }
+
 		@Override
 		public double get(int x, int y) {
-			return pixelData[y][x];
+			return pixelData[y*width + x];
 		}
 
 		@Override
 		public void set(int x, int y, double value) {
-			pixelData[y][x] = (short) (value);
+			pixelData[y*width + x] = (short) (value);
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) dst[x] = pixelData[off + x];
+		}
+		@Override
+		public void getRow(int x, int y, int length, double[] dst, int offset) {
+			final int off = y*width + x;
+			for (int i=0; i<length; i++) dst[offset + i] = pixelData[off + i];
+		}
+		@Override
+		public void getRow(int y, int[] dst) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) dst[x] = pixelData[off + x];
+		}
+		@Override
+		public void setRow(int y, double[] src) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) pixelData[off + x] = (short) src[x];
+		}
+		@Override
+		public void setRow(int y, int[] src) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) pixelData[off + x] = (short) src[x];
 		}
-		
+		@Override
+		public void fill(double value) {
+			Arrays.fill(pixelData, (short) value);
+		}
+
 		@Override
 		public PixelData clone() {
-			ShortPixelData n = new ShortPixelData(this.pixelData[0].length, this.pixelData.length);
-			for (int i=0; i<pixelData.length; i++)
-				for (int j=0; j<pixelData[0].length; j++)
-					n.set(j, i, this.get(j, i));					
+			ShortPixelData n = new ShortPixelData(width, height);
+			System.arraycopy(pixelData, 0, n.pixelData, 0, pixelData.length);
 			return n;
 		}
 
 	}
 	private class IntegerPixelData extends PixelData{
-		int[][] pixelData;
-		
-		IntegerPixelData(int width, int height){pixelData = new int[height][width]; }
-		
+		int[] pixelData;
+
+		IntegerPixelData(int width, int height){super(width, height); pixelData = new int[width*height]; }
+
 		@Override
 		public double get(int x, int y) {
-			return pixelData[y][x];
+			return pixelData[y*width + x];
 		}
 
 		@Override
 		public void set(int x, int y, double value) {
-			pixelData[y][x] = (int) value;
+			pixelData[y*width + x] = (int) value;
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) dst[x] = pixelData[off + x];
+		}
+		@Override
+		public void getRow(int x, int y, int length, double[] dst, int offset) {
+			final int off = y*width + x;
+			for (int i=0; i<length; i++) dst[offset + i] = pixelData[off + i];
+		}
+		@Override
+		public void getRow(int y, int[] dst) {
+			System.arraycopy(pixelData, y*width, dst, 0, width);
+		}
+		@Override
+		public void setRow(int y, double[] src) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) pixelData[off + x] = (int) src[x];
+		}
+		@Override
+		public void setRow(int y, int[] src) {
+			System.arraycopy(src, 0, pixelData, y*width, width);
 		}
-		
+		@Override
+		public void fill(double value) {
+			Arrays.fill(pixelData, (int) value);
+		}
+
 		@Override
 		public PixelData clone() {
-			IntegerPixelData n = new IntegerPixelData(this.pixelData[0].length, this.pixelData.length);
-			for (int i=0; i<pixelData.length; i++)
-				for (int j=0; j<pixelData[0].length; j++)
-					n.set(j, i, this.get(j, i));					
+			IntegerPixelData n = new IntegerPixelData(width, height);
+			System.arraycopy(pixelData, 0, n.pixelData, 0, pixelData.length);
 			return n;
 		}
 	}
 	private class FloatPixelData extends PixelData{
-		float[][] pixelData;
-		
-		FloatPixelData(int width, int height){pixelData = new float[height][width];}
-		
+		float[] pixelData;
+
+		FloatPixelData(int width, int height){super(width, height); pixelData = new float[width*height];}
+
 		@Override
 		public double get(int x, int y) {
-			return pixelData[y][x];
+			return pixelData[y*width + x];
 		}
 
 		@Override
 		public void set(int x, int y, double value) {
-			pixelData[y][x] = (float) value;
+			pixelData[y*width + x] = (float) value;
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) dst[x] = pixelData[off + x];
+		}
+		@Override
+		public void getRow(int x, int y, int length, double[] dst, int offset) {
+			final int off = y*width + x;
+			for (int i=0; i<length; i++) dst[offset + i] = pixelData[off + i];
 		}
-		
+		@Override
+		public void setRow(int y, double[] src) {
+			final int off = y*width;
+			for (int x=0; x<width; x++) pixelData[off + x] = (float) src[x];
+		}
+		@Override
+		public void fill(double value) {
+			Arrays.fill(pixelData, (float) value);
+		}
+
 		@Override
 		public PixelData clone() {
-			FloatPixelData n = new FloatPixelData(this.pixelData[0].length, this.pixelData.length);
-			for (int i=0; i<pixelData.length; i++)
-				for (int j=0; j<pixelData[0].length; j++)
-					n.set(j, i, this.get(j, i));					
+			FloatPixelData n = new FloatPixelData(width, height);
+			System.arraycopy(pixelData, 0, n.pixelData, 0, pixelData.length);
 			return n;
 		}
-		
+
 	}
 	private class DoublePixelData extends PixelData{
-		double[][] pixelData;
-		
-		DoublePixelData(int width, int height){pixelData = new double[height][width];}
-		
+		double[] pixelData;
+
+		DoublePixelData(int width, int height){super(width, height); pixelData = new double[width*height];}
+
+		@Override
+		public double get(int x, int y) {
+			return pixelData[y*width + x];
+		}
+
+		@Override
+		public void set(int x, int y, double value) {
+			pixelData[y*width + x] = value;
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			System.arraycopy(pixelData, y*width, dst, 0, width);
+		}
+		@Override
+		public void getRow(int x, int y, int length, double[] dst, int offset) {
+			System.arraycopy(pixelData, y*width + x, dst, offset, length);
+		}
+		@Override
+		public void setRow(int y, double[] src) {
+			System.arraycopy(src, 0, pixelData, y*width, width);
+		}
+		@Override
+		public void fill(double value) {
+			Arrays.fill(pixelData, value);
+		}
+
+		@Override
+		public PixelData clone() {
+			DoublePixelData n = new DoublePixelData(width, height);
+			System.arraycopy(pixelData, 0, n.pixelData, 0, pixelData.length);
+			return n;
+		}
+
+	}
+	/**
+	 * Pixel data read from and written directly to the data buffer of a BufferedImage.
+	 * Samples are unsigned, as in the raster of the BufferedImage.
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
+	private class RasterPixelData extends PixelData{
+		private byte[] bytes = null;
+		private short[] shorts = null;
+		private int[] ints = null;
+		private final int base, scanlineStride, pixelStride, mask, shift;
+		private final WritableRaster raster;
+		private final int band;
+
+		RasterPixelData(WritableRaster raster, int band){
+			super(raster.getWidth(), raster.getHeight());
+			this.raster = raster; this.band = band;
+			final SampleModel sm = raster.getSampleModel();
+			final DataBuffer db = raster.getDataBuffer();
+			final int tX = raster.getSampleModelTranslateX(), tY = raster.getSampleModelTranslateY();
+			if (sm instanceof ComponentSampleModel){
+				final ComponentSampleModel csm = (ComponentSampleModel) sm;
+				final int bank = csm.getBankIndices()[band];
+				if (db instanceof DataBufferByte) bytes = ((DataBufferByte) db).getData(bank);
+				else shorts = ((DataBufferUShort) db).getData(bank);
+				scanlineStride = csm.getScanlineStride();
+				pixelStride = csm.getPixelStride();
+				base = db.getOffsets()[bank] + csm.getBandOffsets()[band] + tY*scanlineStride + tX*pixelStride;
+				mask = 0; shift = 0;
+			}else{
+				final SinglePixelPackedSampleModel psm = (SinglePixelPackedSampleModel) sm;
+				ints = ((DataBufferInt) db).getData();
+				scanlineStride = psm.getScanlineStride();
+				pixelStride = 1;
+				base = db.getOffset() + tY*scanlineStride + tX;
+				mask = psm.getBitMasks()[band];
+				shift = psm.getBitOffsets()[band];
+			}
+		}
+
+		@Override
+		public int getStride(){return scanlineStride;}
+
+		@Override
+		public double get(int x, int y) {
+			final int i = base + y*scanlineStride + x*pixelStride;
+			if (bytes != null) return bytes[i] & 0xFF;
+			if (shorts != null) return shorts[i] & 0xFFFF;
+			return (ints[i] & mask) >>> shift;
+		}
+
+		@Override
+		public void set(int x, int y, double value) {
+			final int i = base + y*scanlineStride + x*pixelStride;
+			if (bytes != null) bytes[i] = (byte) (int) value;
+			else if (shorts != null) shorts[i] = (short) (int) value;
+			else ints[i] = (ints[i] & ~mask) | (((int) value << shift) & mask);
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			int i = base + y*scanlineStride;
+			if (bytes != null) for (int x=0; x<width; x++, i+=pixelStride) dst[x] = bytes[i] & 0xFF;
+			else if (shorts != null) for (int x=0; x<width; x++, i+=pixelStride) dst[x] = shorts[i] & 0xFFFF;
+			else for (int x=0; x<width; x++, i++) dst[x] = (ints[i] & mask) >>> shift;
+		}
+
+		@Override
+		public PixelData clone() {
+			//a standalone copy of this band, with the same sample layout
+			final WritableRaster r = raster.createCompatibleWritableRaster();
+			r.setRect(raster);
+			return new RasterPixelData(r, band);
+		}
+	}
+
+	/**
+	 * Pixel data split in square tiles that are only allocated when a value other than the fill value (0) is written to them.
+	 * Reading from a tile that was never written returns the fill value, so mostly empty images (masks, labels) cost almost no memory.
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
+	private class TiledPixelData extends PixelData{
+		final static int TILE_SIZE = 64;
+		private final int tilesX, tilesY;
+		private PixelData[] tiles;
+
+		TiledPixelData(int width, int height){
+			super(width, height);
+			tilesX = (width + TILE_SIZE - 1)/TILE_SIZE;
+			tilesY = (height + TILE_SIZE - 1)/TILE_SIZE;
+			tiles = new PixelData[tilesX*tilesY];
+		}
+
+		private PixelData allocateTile(int tX, int tY){
+			PixelData tile = createHeapPixelData(Math.min(TILE_SIZE, width - tX*TILE_SIZE), Math.min(TILE_SIZE, height - tY*TILE_SIZE));
+			tiles[tY*tilesX + tX] = tile;
+			return tile;
+		}
+
 		@Override
 		public double get(int x, int y) {
-			return pixelData[y][x];
+			final PixelData tile = tiles[(y/TILE_SIZE)*tilesX + x/TILE_SIZE];
+			if (tile == null) return 0;
+			return tile.get(x % TILE_SIZE, y % TILE_SIZE);
 		}
 
 		@Override
 		public void set(int x, int y, double value) {
-			pixelData[y][x] = value;
+			final int tX = x/TILE_SIZE, tY = y/TILE_SIZE;
+			PixelData tile = tiles[tY*tilesX + tX];
+			if (tile == null){
+				if (value == 0) return;
+				tile = allocateTile(tX, tY);
+			}
+			tile.set(x % TILE_SIZE, y % TILE_SIZE, value);
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int tY = y/TILE_SIZE, tileY = y % TILE_SIZE;
+			for (int tX=0; tX<tilesX; tX++){
+				final PixelData tile = tiles[tY*tilesX + tX];
+				final int x0 = tX*TILE_SIZE, x1 = Math.min(width, x0 + TILE_SIZE);
+				if (tile == null)
+					Arrays.fill(dst, x0, x1, 0);
+				else
+					for (int x=x0; x<x1; x++) dst[x] = tile.get(x - x0, tileY);
+			}
+		}
+
+		@Override
+		public void setRow(int y, double[] src) {
+			for (int x=0; x<width; x++) set(x, y, src[x]);
+		}
+
+		@Override
+		public void fill(double value) {
+			if (value == 0){
+				tiles = new PixelData[tilesX*tilesY];
+				return;
+			}
+			for (int tY=0; tY<tilesY; tY++)
+				for (int tX=0; tX<tilesX; tX++){
+					PixelData tile = tiles[tY*tilesX + tX];
+					if (tile == null) tile = allocateTile(tX, tY);
+					tile.fill(value);
+				}
+		}
+
+		boolean isTileEmpty(int tX, int tY){return tiles[tY*tilesX + tX] == null;}
+
+		boolean isRegionEmpty(int x, int y, int regionWidth, int regionHeight){
+			final int tX0 = Math.max(0, x/TILE_SIZE), tY0 = Math.max(0, y/TILE_SIZE),
+					tX1 = Math.min(tilesX - 1, (x + regionWidth - 1)/TILE_SIZE), tY1 = Math.min(tilesY - 1, (y + regionHeight - 1)/TILE_SIZE);
+			for (int tY=tY0; tY<=tY1; tY++)
+				for (int tX=tX0; tX<=tX1; tX++)
+					if (tiles[tY*tilesX + tX] != null) return false;
+			return true;
+		}
+
+		@Override
+		public PixelData clone() {
+			TiledPixelData n = new TiledPixelData(width, height);
+			for (int t=0; t<tiles.length; t++)
+				if (tiles[t] != null) n.tiles[t] = tiles[t].clone();
+			return n;
+		}
+	}
+
+	/**
+	 * Pixel data stored outside of the Java heap, either in a direct buffer or in a memory-mapped file.
+	 * Mapped files are split in chunks of rows, since a single mapping cannot exceed 2GB.
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
+	private class BufferPixelData extends PixelData{
+		final static int BOOLEAN = 0, BYTE = 1, SHORT = 2, INTEGER = 3, FLOAT = 4, DOUBLE = 5;
+		private final int sampleType, bytesPerSample, rowsPerChunk;
+		private final boolean mapped;
+		private ByteBuffer[] chunks;
+		private File file = null;
+
+		BufferPixelData(int width, int height, int sampleType, boolean mapped){
+			super(width, height);
+			this.sampleType = sampleType;
+			this.mapped = mapped;
+			switch(sampleType){
+			case SHORT: bytesPerSample = 2; break;
+			case INTEGER: case FLOAT: bytesPerSample = 4; break;
+			case DOUBLE: bytesPerSample = 8; break;
+			default: bytesPerSample = 1;
+			}
+			final long rowBytes = (long) width*bytesPerSample;
+			rowsPerChunk = (int) Math.max(1, Math.min(height, Integer.MAX_VALUE/Math.max(1, rowBytes)));
+			chunks = new ByteBuffer[(height + rowsPerChunk - 1)/rowsPerChunk];
+			RandomAccessFile raf = null;
+			try{
+				if (mapped){
+					file = File.createTempFile("pixelmap", ".raw", mappedDirectory);
+					raf = new RandomAccessFile(file, "rw");
+					raf.setLength(rowBytes*height);
+				}
+				for (int c=0; c<chunks.length; c++){
+					final int rows = Math.min(rowsPerChunk, height - c*rowsPerChunk);
+					if (mapped)
+						chunks[c] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, c*rowsPerChunk*rowBytes, rows*rowBytes);
+					else
+						chunks[c] = ByteBuffer.allocateDirect((int) (rows*rowBytes));
+					chunks[c].order(ByteOrder.nativeOrder());
+				}
+			}catch(IOException e){
+				if (file != null) file.delete();
+				throw new RuntimeException("Could not map the pixel data to a file: " + e.getMessage(), e);
+			}finally{
+				if (raf != null) try{raf.close();}catch(IOException e){} //the mappings remain valid after the channel is closed
+			}
+			if (sampleType == BYTE) fill(0);
+		}
+
+		private ByteBuffer chunk(int y){return chunks[y/rowsPerChunk];}
+		private int position(int x, int y){return ((y % rowsPerChunk)*width + x)*bytesPerSample;}
+
+		@Override
+		public double get(int x, int y) {
+			final ByteBuffer buf = chunk(y);
+			final int pos = position(x, y);
+			switch(sampleType){
+			case BOOLEAN: return (buf.get(pos) != 0) ? 255 : 0;
+			case BYTE: return buf.get(pos) - BytePixelData.SHIFT;
+			case SHORT: return buf.getShort(pos);
+			case INTEGER: return buf.getInt(pos);
+			case FLOAT: return buf.getFloat(pos);
+			default: return buf.getDouble(pos);
+			}
+		}
+
+		@Override
+		public void set(int x, int y, double value) {
+			final ByteBuffer buf = chunk(y);
+			final int pos = position(x, y);
+			switch(sampleType){
+			case BOOLEAN: buf.put(pos, (byte) ((value != 0) ? 1 : 0)); break;
+			case BYTE: buf.put(pos, (byte) (value + BytePixelData.SHIFT)); break;
+			case SHORT: buf.putShort(pos, (short) value); break;
+			case INTEGER: buf.putInt(pos, (int) value); break;
+			case FLOAT: buf.putFloat(pos, (float) value); break;
+			default: buf.putDouble(pos, value);
+			}
+		}
+
+		@Override
+		public void getRow(int y, int[] dst) {
+			if (sampleType != INTEGER){super.getRow(y, dst); return;}
+			final ByteBuffer buf = chunk(y).duplicate().order(ByteOrder.nativeOrder());
+			buf.position(position(0, y));
+			buf.asIntBuffer().get(dst, 0, width);
+		}
+		@Override
+		public void setRow(int y, int[] src) {
+			if (sampleType != INTEGER){super.setRow(y, src); return;}
+			final ByteBuffer buf = chunk(y).duplicate().order(ByteOrder.nativeOrder());
+			buf.position(position(0, y));
+			buf.asIntBuffer().put(src, 0, width);
+		}
+		@Override
+		public void getRow(int y, double[] dst) {
+			if (sampleType != DOUBLE){super.getRow(y, dst); return;}
+			final ByteBuffer buf = chunk(y).duplicate().order(ByteOrder.nativeOrder());
+			buf.position(position(0, y));
+			buf.asDoubleBuffer().get(dst, 0, width);
 		}
-		
+		@Override
+		public void setRow(int y, double[] src) {
+			if (sampleType != DOUBLE){super.setRow(y, src); return;}
+			final ByteBuffer buf = chunk(y).duplicate().order(ByteOrder.nativeOrder());
+			buf.position(position(0, y));
+			buf.asDoubleBuffer().put(src, 0, width);
+		}
+
 		@Override
 		public PixelData clone() {
-			DoublePixelData n = new DoublePixelData(this.pixelData[0].length, this.pixelData.length);
-			for (int i=0; i<pixelData.length; i++)
-				for (int j=0; j<pixelData[0].length; j++)
-					n.set(j, i, this.get(j, i));					
+			BufferPixelData n = new BufferPixelData(width, height, sampleType, mapped);
+			for (int c=0; c<chunks.length; c++){
+				ByteBuffer src = chunks[c].duplicate();
+				src.clear();
+				ByteBuffer dst = n.chunks[c].duplicate();
+				dst.clear();
+				dst.put(src);
+			}
 			return n;
 		}
-		
+
+		void dispose(){
+			chunks = null;
+			//deleting may fail while the mapping is still referenced (e.g., on Windows), only then it is left to the exit of the JVM
+			if (file != null && !file.delete()) file.deleteOnExit();
+			file = null;
+		}
 	}
+
+	/**
+	 * Window over a rectangle of another layer, nothing is copied.
+	 * Never written: {@link PixelMap} replaces it with a copy before the first write.
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+	 */
+	private class ViewPixelData extends PixelData{
+		private final PixelData source;
+		private final int x0, y0;
+		private final Image.BoundaryOperationType boundary;
+		private final double background;
+		private final boolean hasBackground;
+
+		ViewPixelData(PixelData source, int x, int y, int width, int height, Image.BoundaryOperationType boundary, double background, boolean hasBackground){
+			super(width, height);
+			this.source = source;
+			this.x0 = x; this.y0 = y;
+			this.boundary = boundary;
+			this.background = background; this.hasBackground = hasBackground;
+		}
+
+		@Override
+		public double get(int x, int y) {
+			final int sx = x + x0, sy = y + y0;
+			if (sx >= 0 && sy >= 0 && sx < source.width && sy < source.height) return source.get(sx, sy);
+			if (hasBackground) return background;
+			return source.get(Image.getBoundaryCoordinate(sx, source.width, boundary), Image.getBoundaryCoordinate(sy, source.height, boundary));
+		}
+
+		@Override
+		public void set(int x, int y, double value) {
+			throw new UnsupportedOperationException("Windows are copied before being written.");
+		}
+
+		@Override
+		public void getRow(int y, double[] dst) {
+			final int sy = y + y0;
+			if (sy >= 0 && sy < source.height && x0 >= 0 && x0 + width <= source.width) source.getRow(x0, sy, width, dst, 0);
+			else super.getRow(y, dst);
+		}
+		@Override
+		public void getRow(int x, int y, int length, double[] dst, int offset) {
+			final int sx = x + x0, sy = y + y0;
+			if (sy >= 0 && sy < source.height && sx >= 0 && sx + length <= source.width) source.getRow(sx, sy, length, dst, offset);
+			else super.getRow(x, y, length, dst, offset);
+		}
+
+		@Override
+		public PixelData clone() {
+			return this; //read-only
+		}
+
+	}
+
 	public void dispose() {
-		// TODO Auto-generated method stub
-		
+		if (owners != null && owners[0] > 1){ //the layers are still used by a copy or a window
+			owners[0]--;
+			owners = null;
+			return;
+		}
+		for (int b=0; b<layers.length; b++){
+			//the last window over a layer releases it
+			final PixelData layer = (layers[b] instanceof ViewPixelData) ? ((ViewPixelData)layers[b]).source : layers[b];
+			if (layer instanceof BufferPixelData) ((BufferPixelData)layer).dispose();
+		}
 	}
-		
-	
+
+
 }
@@ -6,7 +6,7 @@ public interface PixelOperation {
 	 * Pixels of the image in ascending order.
 	 * @param p
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double compute(double... p);
 	
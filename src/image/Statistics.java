@@ -0,0 +1,92 @@
+package image;
+
+/**
+ * Minimum, maximum, sum, mean and variance of a band of an {@link Image}, obtained with {@link Image#getStatistics(int)}.
+ * They are kept per row, so only the rows modified since the last request are visited again.
+ * Sums are compensated (Kahan-Babuska), which keeps them accurate for large images without {@link java.math.BigDecimal}.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class Statistics {
+	private final double[] rowMin, rowMax, rowSum, rowM2; //rowM2 is the sum of the squared differences to the mean of the row
+	private final int width;
+	private double min = 0, max = 0, sum = 0, mean = 0, variance = 0;
+	private long count = 0;
+
+	Statistics(final int width, final int height){
+		this.width = width;
+		rowMin = new double[height]; rowMax = new double[height];
+		rowSum = new double[height]; rowM2 = new double[height];
+	}
+
+	/**
+	 * Computes the rows minY to maxY of the band again.
+	 * @param row - buffer with at least width positions
+	 */
+	void updateRows(final Image img, final int band, final int minY, final int maxY, final double[] row){
+		for (int i=minY; i<=maxY; i++){
+			img.getRow(i, band, row);
+			double min = Long.MAX_VALUE, max = Long.MIN_VALUE, sum = 0, c = 0;
+			for (int j=0; j<width; j++){
+				final double value = row[j];
+				if (value < min)
+					min = value;
+				if (value > max)
+					max = value;
+				final double t = sum + value;
+				if (Math.abs(sum) >= Math.abs(value)) c += (sum - t) + value;
+				else c += (value - t) + sum;
+				sum = t;
+			}
+			sum += c;
+			final double rowMean = sum/width;
+			double m2 = 0;
+			for (int j=0; j<width; j++){
+				final double d = row[j] - rowMean;
+				m2 += d*d;
+			}
+			rowMin[i] = min; rowMax[i] = max; rowSum[i] = sum; rowM2[i] = m2;
+		}
+	}
+
+	/**
+	 * Combines the rows into the statistics of the whole band.
+	 */
+	void reduce(){
+		double min = Long.MAX_VALUE, max = Long.MIN_VALUE, sum = 0, c = 0;
+		double mean = 0, m2 = 0;
+		long n = 0;
+		for (int i=0; i<rowSum.length; i++){
+			if (rowMin[i] < min)
+				min = rowMin[i];
+			if (rowMax[i] > max)
+				max = rowMax[i];
+			final double t = sum + rowSum[i];
+			if (Math.abs(sum) >= Math.abs(rowSum[i])) c += (sum - t) + rowSum[i];
+			else c += (rowSum[i] - t) + sum;
+			sum = t;
+			//pairwise combination of the variances (Chan et al.)
+			final double rowMean = rowSum[i]/width, delta = rowMean - mean;
+			final long total = n + width;
+			mean += delta*width/total;
+			m2 += rowM2[i] + delta*delta*((double) n*width/total);
+			n = total;
+		}
+		this.min = min; this.max = max;
+		this.sum = sum + c;
+		this.count = n;
+		this.mean = (n == 0) ? 0 : this.sum/n;
+		this.variance = (n == 0) ? 0 : m2/n;
+	}
+
+	public double getMinimum(){return min;}
+	public double getMaximum(){return max;}
+	public double getSum(){return sum;}
+	public double getMean(){return mean;}
+	/**
+	 * Population variance of the band.
+	 * @return
+	 */
+	public double getVariance(){return variance;}
+	public double getStandardDeviation(){return Math.sqrt(variance);}
+	public long getCount(){return count;}
+}
@@ -0,0 +1,150 @@
+package matrices;
+
+import java.util.Arrays;
+
+/**
+ * Dense co-occurrence matrix of grey levels from 0 to levels - 1, whose Haralick features (energy, contrast, homogeneity, entropy and moment)
+ * are kept up to date whenever a pair is added or removed, so a window that slides over an image only adds the pairs that enter it and
+ * removes the ones that leave it. The features are the ones of {@link CoOccurrenceMatrix}, with the grey levels in place of the grey values.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class CoOccurrenceCounts {
+	private final int levels;
+	private final boolean symmetric;
+	private final int[] counts;
+	//weights of the linear features for each difference between the levels, from -(levels - 1) to levels - 1
+	private final double[] contrastWeights, homogeneityWeights, momentWeights;
+	//c*ln(c) for each count c, grown when needed
+	private double[] xLogX = new double[64];
+	private double energy = 0, contrast = 0, homogeneity = 0, entropy = 0, moment = 0;
+	private int total = 0;
+
+	/**
+	 * @param levels - number of grey levels
+	 * @param symmetric - if true, each pair (a,b) also counts as (b,a), as with {@link CoOccurrenceMatrix#setToComputeBothOrientations(boolean)}
+	 * @param momentDegree - degree of {@link #getMoment()}
+	 */
+	public CoOccurrenceCounts(final int levels, final boolean symmetric, final float momentDegree){
+		this.levels = levels;
+		this.symmetric = symmetric;
+		this.counts = new int[levels*levels];
+		this.contrastWeights = new double[2*levels - 1];
+		this.homogeneityWeights = new double[2*levels - 1];
+		this.momentWeights = new double[2*levels - 1];
+		for (int d=-(levels - 1); d<levels; d++){
+			contrastWeights[d + levels - 1] = (double) d*d;
+			homogeneityWeights[d + levels - 1] = 1/(1 + Math.abs((double) d));
+			momentWeights[d + levels - 1] = Math.pow(d, momentDegree);
+		}
+		for (int c=1; c<xLogX.length; c++) xLogX[c] = c*Math.log(c);
+	}
+
+	/**
+	 * Returns the level of the value when the range [min, max] is split in levels equal parts. Values out of the range go to the first or
+	 * to the last level.
+	 * @param value
+	 * @param min
+	 * @param max
+	 * @param levels
+	 * @return
+	 */
+	public static int getLevel(final double value, final double min, final double max, final int levels){
+		if (max <= min) return 0;
+		final int level = (int) ((value - min)*levels/(max - min));
+		return (level < 0) ? 0 : (level >= levels) ? levels - 1 : level;
+	}
+
+	/**
+	 * Adds the pair of levels (a,b).
+	 * @param a
+	 * @param b
+	 */
+	public void add(final int a, final int b){
+		increment(a, b, 1);
+		if (symmetric && a != b) increment(b, a, 1);
+	}
+	/**
+	 * Removes the pair of levels (a,b), which must have been added.
+	 * @param a
+	 * @param b
+	 */
+	public void remove(final int a, final int b){
+		increment(a, b, -1);
+		if (symmetric && a != b) increment(b, a, -1);
+	}
+	private void increment(final int a, final int b, final int step){
+		final int index = a*levels + b, before = counts[index], after = before + step, d = a - b + levels - 1;
+		if (after >= xLogX.length) growTable(after);
+		counts[index] = after;
+		total += step;
+		energy += (double) after*after - (double) before*before;
+		contrast += step*contrastWeights[d];
+		homogeneity += step*homogeneityWeights[d];
+		entropy += xLogX[after] - xLogX[before];
+		moment += step*momentWeights[d];
+	}
+	private void growTable(final int count){
+		final double[] table = new double[Math.max(2*xLogX.length, count + 1)];
+		System.arraycopy(xLogX, 0, table, 0, xLogX.length);
+		for (int c=xLogX.length; c<table.length; c++) table[c] = c*Math.log(c);
+		xLogX = table;
+	}
+	/**
+	 * Removes all the pairs.
+	 */
+	public void clear(){
+		Arrays.fill(counts, 0);
+		total = 0;
+		energy = contrast = homogeneity = entropy = moment = 0;
+	}
+
+	public int getLevels(){return levels;}
+	public boolean isSymmetric(){return symmetric;}
+	/**
+	 * Returns the number of co-occurrences of the levels a and b.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public int get(final int a, final int b){return counts[a*levels + b];}
+	/**
+	 * Returns the sum of the counts.
+	 * @return
+	 */
+	public int getTotal(){return total;}
+	/**
+	 * Returns the counts as a levels x levels matrix.
+	 * @return
+	 */
+	public int[][] toArray(){
+		final int[][] matrix = new int[levels][levels];
+		for (int a=0; a<levels; a++) System.arraycopy(counts, a*levels, matrix[a], 0, levels);
+		return matrix;
+	}
+
+	/**
+	 * Returns the sum of the squared counts.
+	 * @return
+	 */
+	public double getEnergy(){return energy;}
+	/**
+	 * Returns the sum of the counts times the squared difference between their levels.
+	 * @return
+	 */
+	public double getContrast(){return contrast;}
+	/**
+	 * Returns the sum of the counts divided by 1 plus the difference between their levels.
+	 * @return
+	 */
+	public double getHomogeneity(){return homogeneity;}
+	/**
+	 * Returns the sum of c*ln(c) over the counts c.
+	 * @return
+	 */
+	public double getEntropy(){return entropy;}
+	/**
+	 * Returns the sum of the counts times the difference between their levels raised to the moment degree.
+	 * @return
+	 */
+	public double getMoment(){return moment;}
+}
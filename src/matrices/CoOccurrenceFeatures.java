@@ -0,0 +1,152 @@
+package matrices;
+
+import image.Image;
+
+/**
+ * Haralick features (energy, contrast, homogeneity, entropy and moment) of the co-occurrence matrices of several offsets, e.g., 0, 45, 90
+ * and 135 degrees at several distances, computed in a single sweep over the image. The band is quantized once in a number of grey levels
+ * and each pixel adds its pair of every offset to the dense matrix of that offset (see {@link CoOccurrenceCounts}), whose features are
+ * kept up to date while the pairs are added. The features are packed offset after offset, in the order of the constants of this class.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class CoOccurrenceFeatures {
+	/**
+	 * Position of each feature among the ones of an offset, the same order as the types of filters.matrices.CoOccurrenceFilter.
+	 */
+	public final static int ENERGY = 0, CONTRAST = 1, HOMOGENEITY = 2, ENTROPY = 3, MOMENT = 4;
+	/**
+	 * Number of features of each offset.
+	 */
+	public final static int NUM_OF_FEATURES = 5;
+
+	private final int greyLevels;
+	private final int[][] offsets;
+	private boolean computeBothOrientations = false;
+	private float momentDegree = 2;
+
+	/**
+	 * @param greyLevels - number of grey levels in which the range of the band is split, e.g., from 8 to 256
+	 * @param offsets - the {deltaX, deltaY} of each co-occurrence matrix, see {@link #getOffsets(int...)}
+	 */
+	public CoOccurrenceFeatures(final int greyLevels, final int[][] offsets){
+		this.greyLevels = greyLevels;
+		this.offsets = new int[offsets.length][];
+		for (int k=0; k<offsets.length; k++) this.offsets[k] = new int[]{offsets[k][0], offsets[k][1]};
+	}
+
+	/**
+	 * Returns the offsets {deltaX, deltaY} of 0, 45, 90 and 135 degrees for each distance, the y axis pointing down.
+	 * @param distances
+	 * @return
+	 */
+	public static int[][] getOffsets(final int... distances){
+		final int[][] offsets = new int[4*distances.length][];
+		for (int k=0; k<distances.length; k++){
+			final int d = distances[k];
+			offsets[4*k] = new int[]{d, 0};
+			offsets[4*k + 1] = new int[]{d, -d};
+			offsets[4*k + 2] = new int[]{0, -d};
+			offsets[4*k + 3] = new int[]{-d, -d};
+		}
+		return offsets;
+	}
+
+	/**
+	 * Sets to count each pair in both orientations, see {@link CoOccurrenceMatrix#setToComputeBothOrientations(boolean)}.
+	 * @param computeBoth
+	 */
+	public void setToComputeBothOrientations(final boolean computeBoth){
+		this.computeBothOrientations = computeBoth;
+	}
+	/**
+	 * Sets the degree of the moment.
+	 * @param degree
+	 */
+	public void setMomentDegree(final float degree){
+		this.momentDegree = degree;
+	}
+	public int getGreyLevels(){return greyLevels;}
+	public int getNumOfOffsets(){return offsets.length;}
+	/**
+	 * Returns the length of the vectors returned by {@link #getFeatures(Image, int)}.
+	 * @return
+	 */
+	public int getNumOfFeatures(){return offsets.length*NUM_OF_FEATURES;}
+	/**
+	 * Returns the position of the feature of an offset in the vectors returned by {@link #getFeatures(Image, int)}.
+	 * @param offset - index of the offset
+	 * @param feature - e.g., {@link #CONTRAST}
+	 * @return
+	 */
+	public static int getIndex(final int offset, final int feature){
+		return offset*NUM_OF_FEATURES + feature;
+	}
+
+	/**
+	 * Returns the co-occurrence matrix of each offset over the whole band, counting the pixels whose pair is inside the image.
+	 * @param image
+	 * @param band
+	 * @return
+	 */
+	public CoOccurrenceCounts[] getCounts(final Image image, final int band){
+		final int width = image.getWidth(), height = image.getHeight();
+		final double min = image.getMinimalIntesity(band), max = image.getMaximalIntensity(band);
+		final int[] pixels = new int[width*height];
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			image.getRow(i, band, row);
+			for (int j=0; j<width; j++) pixels[i*width + j] = CoOccurrenceCounts.getLevel(row[j], min, max, greyLevels);
+		}
+
+		final CoOccurrenceCounts[] counts = new CoOccurrenceCounts[offsets.length];
+		for (int k=0; k<offsets.length; k++) counts[k] = new CoOccurrenceCounts(greyLevels, computeBothOrientations, momentDegree);
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++){
+				final int level = pixels[i*width + j];
+				for (int k=0; k<offsets.length; k++){
+					final int x = j + offsets[k][0], y = i + offsets[k][1];
+					if (x < 0 || y < 0 || x >= width || y >= height) continue;
+					counts[k].add(level, pixels[y*width + x]);
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the features of every offset, packed as in {@link #getIndex(int, int)}.
+	 * @param image
+	 * @param band
+	 * @return
+	 */
+	public double[] getFeatures(final Image image, final int band){
+		final CoOccurrenceCounts[] counts = getCounts(image, band);
+		final double[] features = new double[getNumOfFeatures()];
+		for (int k=0; k<counts.length; k++)
+			for (int f=0; f<NUM_OF_FEATURES; f++) features[getIndex(k, f)] = getFeature(counts[k], f);
+		return features;
+	}
+
+	/**
+	 * Returns a feature of the co-occurrence matrix.
+	 * @param counts
+	 * @param feature - e.g., {@link #ENTROPY}
+	 * @return
+	 */
+	public static double getFeature(final CoOccurrenceCounts counts, final int feature){
+		switch(feature){
+		case ENERGY:
+			return counts.getEnergy();
+		case CONTRAST:
+			return counts.getContrast();
+		case HOMOGENEITY:
+			return counts.getHomogeneity();
+		case ENTROPY:
+			return counts.getEntropy();
+		case MOMENT:
+			return counts.getMoment();
+		default:
+			throw new IllegalArgumentException("Unknown feature " + feature);
+		}
+	}
+}
@@ -4,6 +4,7 @@ import static distances.Distance.*;
 
 import java.util.ArrayList;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import distances.Distance;
 import image.Image;
@@ -18,6 +19,7 @@ public class CoOccurrenceMatrix {
 	
 	private int deltaX = 1, deltaY = 0;
 	private int band = 0;
+	private int greyLevels = 0;
 	
 	private int lastHash = 0;
 	
@@ -70,6 +72,7 @@ public class CoOccurrenceMatrix {
 	public void setImage(final Image image){
 		this.image = image;
 		this.lastHash = image.hashCode();
+		this.update = true;
 		this.setKernelRadius(image.getHeight() > image.getWidth() ? ((image.getHeight() - 1)/2f) : (image.getWidth() - 1)/2f);
 	}
 	
@@ -86,7 +89,7 @@ public class CoOccurrenceMatrix {
 	 * Sets the distance measurement regarding the kernel radius. If the distance of the central pixel of the image to the one being computed is greater than the
 	 * radius, respecting this set distance measure, then the pixel is ignored. The default distance measure is Chebyshev Distance (so, we consider a squared region around the processed pixel).
 	 * @param distance
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setKernelRadialDistanceMeasure(final Distance distance){
 		if (!this.distance.equals(distance)) this.update = true;
@@ -103,28 +106,88 @@ public class CoOccurrenceMatrix {
 	/**
 	 * Sets the image band to compute the co-occurrence matrix from.
 	 * @param band
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setBand(final int band){
 		if (band != this.band) update = true;
 		this.band = band;
 	}
 	
+	/**
+	 * Quantizes the band in the given number of grey levels (e.g., from 8 to 256), which split the range of the band in equal parts, so the
+	 * matrix is a dense array of counts (see {@link #getCounts()}) and the features are computed from the levels instead of the grey values.
+	 * If 0, which is the default, the grey values are compared as they are.
+	 * @param levels
+	 */
+	public void setGreyLevels(final int levels){
+		if (levels != this.greyLevels) update = true;
+		this.greyLevels = levels;
+	}
+	public int getGreyLevels(){return greyLevels;}
+	
 	private TreeMap<Double, TreeMap<Double, Integer>> bufferedMatrix = null;
+	private CoOccurrenceCounts bufferedCounts = null;
+	
+	/**
+	 * Returns the dense co-occurrence matrix of the grey levels set by {@link #setGreyLevels(int)}, or of 256 levels if none were set.
+	 * @return
+	 */
+	public CoOccurrenceCounts getCounts(){
+		if (band >= image.getNumBands()) band = 0;
+		
+		if (lastHash == this.image.hashCode() && !update && bufferedCounts != null) return bufferedCounts;
+		
+		update = false;
+		lastHash = this.image.hashCode();
+		
+		final int levels = (greyLevels > 0) ? greyLevels : 256, width = image.getWidth(), height = image.getHeight();
+		final double min = image.getMinimalIntesity(band), max = image.getMaximalIntensity(band);
+		final int[] pixels = new int[width*height];
+		for (int i=0; i<height; i++)
+			for (int j=0; j<width; j++)
+				pixels[i*width + j] = CoOccurrenceCounts.getLevel(image.getPixel(j, i, band), min, max, levels);
+		
+		final CoOccurrenceCounts counts = new CoOccurrenceCounts(levels, computeBothOrientations, 2);
+		final float centralX = ((width - 1)/2f),
+				centralY = ((height - 1)/2f);
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++){
+				if (distance.compute(centralX, centralY, j, i) > kernelRadius) continue;
+				if (i + deltaY >= height || j + deltaX >= width || i + deltaY < 0 || j + deltaX < 0) continue;
+				counts.add(pixels[i*width + j], pixels[(i + deltaY)*width + j + deltaX]);
+			}
+		}
+		this.bufferedCounts = counts;
+		this.bufferedMatrix = null;
+		return counts;
+	}
 	
 	/**
 	 * Returns a tree map that contains another tree map. 
 	 * The keys of the tree maps represent the grey values we want to compare. The returned result corresponds to the number of co-occurrences.
 	 * For instance, f we want to check how many times 120 co-occurred with 150, then that would be equal to: getMatrix(band, deltaX, deltaY).get(120).get(150).
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public TreeMap<Double, TreeMap<Double, Integer>> getMatrix(){
+		if (greyLevels > 0){
+			final CoOccurrenceCounts counts = getCounts();
+			final TreeMap<Double, TreeMap<Double, Integer>> matrix = new TreeMap<Double, TreeMap<Double, Integer>>();
+			for (int a=0; a<greyLevels; a++){
+				for (int b=0; b<greyLevels; b++){
+					if (counts.get(a, b) == 0) continue;
+					if (!matrix.containsKey((double) a)) matrix.put((double) a, new TreeMap<Double, Integer>());
+					matrix.get((double) a).put((double) b, counts.get(a, b));
+				}
+			}
+			return matrix;
+		}
 		if (band >= image.getNumBands()) band = 0;
 		
-		if ((lastHash == this.image.hashCode() || update) && bufferedMatrix != null) return bufferedMatrix;
+		if (lastHash == this.image.hashCode() && !update && bufferedMatrix != null) return bufferedMatrix;
 		
 		update = false;
+		lastHash = this.image.hashCode();
 		
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = new TreeMap<Double, TreeMap<Double, Integer>>();
 		
@@ -176,6 +239,7 @@ public class CoOccurrenceMatrix {
 		}
 		
 		this.bufferedMatrix = matrix;
+		this.bufferedCounts = null;
 		return matrix;
 	}
 	
@@ -184,40 +248,22 @@ public class CoOccurrenceMatrix {
 	/**
 	 * Returns the co-occurrence matrix in the form of a real matrix.
 	 * The matrix is n x n where n is the number of different grey values within the image.
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public int[][] getRawMatrix(){
+		if (greyLevels > 0){
+			orderedValues = new ArrayList<Double>(greyLevels);
+			for (int a=0; a<greyLevels; a++) orderedValues.add((double) a);
+			return getCounts().toArray();
+		}
 		
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = getMatrix();
 		
-		ArrayList<Double> values = new ArrayList<Double>(matrix.size());
-		
-		for (double p1 : matrix.keySet()){
-			
-			if (!values.contains(p1)) values.add(p1);
-			
-			for (double p2 : matrix.get(p1).keySet()){
-				
-				if (!values.contains(p2)) values.add(p2);
-				
-			}
-			
-		}
-		
-		orderedValues = new ArrayList<Double>(values.size());
+		//the set keeps the values sorted
+		TreeSet<Double> values = new TreeSet<Double>(matrix.keySet());
+		for (double p1 : matrix.keySet()) values.addAll(matrix.get(p1).keySet());
 		
-		while(values.size() > 0){
-			double min = Integer.MAX_VALUE;
-			int rightK = 0;
-			for (int k=0; k<values.size(); k++){
-				if (values.get(k) < min){
-					min = values.get(k);
-					rightK = k;
-				}
-			}
-			
-			orderedValues.add(values.remove(rightK));
-		}
+		orderedValues = new ArrayList<Double>(values);
 		
 		int[][] pMatrix = new int[orderedValues.size()][orderedValues.size()];
 		
@@ -282,9 +328,10 @@ public class CoOccurrenceMatrix {
 	 * Returns the squared sum of the co-occurrences in the matrix. Equivalent to the Haralick's energy.
 	 * In other words, the greater the number of co-occurrences, the greater the returned value.
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double getEnergy(){
+		if (greyLevels > 0) return getCounts().getEnergy();
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = getMatrix();
 		
 		double sum = 0;
@@ -299,9 +346,10 @@ public class CoOccurrenceMatrix {
 	/**
 	 * Returns the equivalent of the Haralick contrast.
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double getContrast(){
+		if (greyLevels > 0) return getCounts().getContrast();
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = getMatrix();
 		
 		double sum = 0;
@@ -317,9 +365,10 @@ public class CoOccurrenceMatrix {
 	/**
 	 * Returns the equivalent of Haralick's Homogeneity
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double getHomogeneity(){
+		if (greyLevels > 0) return getCounts().getHomogeneity();
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = getMatrix();
 		
 		double sum = 0;
@@ -335,9 +384,10 @@ public class CoOccurrenceMatrix {
 	/**
 	 * Returns the equivalent of Haralick's Entropy
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double getEntropy(){
+		if (greyLevels > 0) return getCounts().getEntropy();
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = getMatrix();
 		
 		double sum = 0;
@@ -354,9 +404,17 @@ public class CoOccurrenceMatrix {
 	 * Returns the moment of the co-occurrence matrix
 	 * @param g
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double getMoment(final float g){
+		if (greyLevels > 0){
+			final CoOccurrenceCounts counts = getCounts();
+			double sum = 0;
+			for (int a=0; a<greyLevels; a++)
+				for (int b=0; b<greyLevels; b++)
+					if (counts.get(a, b) != 0) sum += counts.get(a, b) * Math.pow(a - b, g);
+			return sum;
+		}
 		TreeMap<Double, TreeMap<Double, Integer>> matrix = getMatrix();
 		
 		double sum = 0;
@@ -0,0 +1,147 @@
+package matrices;
+
+/**
+ * Dense run length matrix of grey levels from 0 to levels - 1, i.e., the number of maximal runs of each level and length along an orientation.
+ * Each run is counted once, at its last pixel, so the matrices of the four orientations are computed together in a single pass over the
+ * pixels, which keeps the length of the run that reaches each pixel in every orientation.
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
+ */
+public class RunLengthCounts {
+	/**
+	 * The orientations, in degrees, along which runs can be counted.
+	 */
+	public final static int[] ORIENTATIONS = {0, 45, 90, 135};
+
+	private final int levels, maxLength;
+	private final int[] counts;
+	private int runs = 0, pixels = 0;
+
+	/**
+	 * @param levels - number of grey levels
+	 * @param maxLength - length of the longest run that can be counted
+	 */
+	public RunLengthCounts(final int levels, final int maxLength){
+		this.levels = levels;
+		this.maxLength = maxLength;
+		this.counts = new int[levels*maxLength];
+	}
+
+	/**
+	 * Returns the step {dx, dy} from a pixel to the next one of its run in the orientation (0, 45, 90 or 135 degrees), the y axis pointing down.
+	 * @param orientation
+	 * @return
+	 */
+	public static int[] getStep(final int orientation){
+		switch(orientation){
+		case 0:
+			return new int[]{1, 0};
+		case 45:
+			return new int[]{1, 1};
+		case 90:
+			return new int[]{0, 1};
+		case 135:
+			return new int[]{-1, 1};
+		default:
+			throw new IllegalArgumentException("The orientation must be 0, 45, 90 or 135, not " + orientation);
+		}
+	}
+
+	/**
+	 * Counts the maximal runs of the pixels of a region in each of the orientations with a single pass over the pixels.
+	 * @param pixels - level of each pixel, row after row
+	 * @param region - whether each pixel belongs to the region, null for all of them; runs do not go through pixels out of the region
+	 * @param width
+	 * @param height
+	 * @param levels
+	 * @param orientations - e.g., {@link #ORIENTATIONS}
+	 * @return the matrix of each orientation
+	 */
+	public static RunLengthCounts[] getCounts(final int[] pixels, final boolean[] region, final int width, final int height, final int levels,
+			final int... orientations){
+		final int n = orientations.length;
+		final int[][] steps = new int[n][];
+		final RunLengthCounts[] counts = new RunLengthCounts[n];
+		for (int o=0; o<n; o++){
+			steps[o] = getStep(orientations[o]);
+			counts[o] = new RunLengthCounts(levels, Math.max(width, height));
+		}
+		//length of the run that reaches each pixel of the previous and of the current row, in each orientation
+		final int[][][] lengths = new int[n][2][width];
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++){
+				final int index = i*width + j;
+				if (region != null && !region[index]){
+					for (int o=0; o<n; o++) lengths[o][i & 1][j] = 0;
+					continue;
+				}
+				final int level = pixels[index];
+				for (int o=0; o<n; o++){
+					final int dx = steps[o][0], dy = steps[o][1];
+					final int px = j - dx, py = i - dy, nx = j + dx, ny = i + dy;
+					final boolean continues = px >= 0 && px < width && py >= 0 && pixels[py*width + px] == level && (region == null || region[py*width + px]);
+					final int length = continues ? lengths[o][py & 1][px] + 1 : 1;
+					lengths[o][i & 1][j] = length;
+					final boolean ends = nx < 0 || nx >= width || ny >= height || pixels[ny*width + nx] != level || (region != null && !region[ny*width + nx]);
+					if (ends) counts[o].increment(level, length);
+					counts[o].pixels++;
+				}
+			}
+		}
+		return counts;
+	}
+	private void increment(final int level, final int length){
+		counts[level*maxLength + length - 1]++;
+		runs++;
+	}
+
+	public int getLevels(){return levels;}
+	public int getMaxLength(){return maxLength;}
+	/**
+	 * Returns the number of runs of the level with the given length, from 1 to {@link #getMaxLength()}.
+	 * @param level
+	 * @param length
+	 * @return
+	 */
+	public int get(final int level, final int length){return counts[level*maxLength + length - 1];}
+	/**
+	 * Returns the number of runs.
+	 * @return
+	 */
+	public int getNumOfRuns(){return runs;}
+	/**
+	 * Returns the number of pixels that the runs cover.
+	 * @return
+	 */
+	public int getNumOfPixels(){return pixels;}
+	/**
+	 * Returns the counts as a levels x maxLength matrix, the column l holding the runs of length l + 1.
+	 * @return
+	 */
+	public int[][] toArray(){
+		final int[][] matrix = new int[levels][maxLength];
+		for (int g=0; g<levels; g++) System.arraycopy(counts, g*maxLength, matrix[g], 0, maxLength);
+		return matrix;
+	}
+
+	/**
+	 * Returns the sum over the levels of the squared number of runs of the level, divided by the number of runs.
+	 * @return
+	 */
+	public double getGreyLevelNonUniformity(){
+		if (runs == 0) return 0;
+		double sum = 0;
+		for (int g=0; g<levels; g++){
+			double innerSum = 0;
+			for (int l=0; l<maxLength; l++) innerSum += counts[g*maxLength + l];
+			sum += innerSum*innerSum;
+		}
+		return sum/runs;
+	}
+	/**
+	 * Returns the number of runs divided by the number of pixels.
+	 * @return
+	 */
+	public double getRunPercentage(){
+		return (pixels == 0) ? 0 : runs/(double) pixels;
+	}
+}
@@ -4,6 +4,7 @@ import static distances.Distance.*;
 
 import java.util.ArrayList;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import distances.Distance;
 import image.Image;
@@ -17,6 +18,7 @@ public class RunLengthMatrix {
 	private int band = 0;
 	private Distance distance = CHEBYSHEV_DISTANCE;
 	private double kernelRadius = 7;
+	private int greyLevels = 0;
 	
 	public RunLengthMatrix(final Image image){
 		this.setImage(image);
@@ -41,6 +43,7 @@ public class RunLengthMatrix {
 	public void setImage(final Image image){
 		this.image = image;
 		this.lastHash = image.hashCode();
+		this.update = true;
 		this.setKernelRadius(image.getHeight() > image.getWidth() ? ((image.getHeight() - 1)/2f) : (image.getWidth() - 1)/2f);
 	}
 	
@@ -52,7 +55,7 @@ public class RunLengthMatrix {
 	/**
 	 * Orientation degree (in degrees). It can be 0, 45, 90 or 135.
 	 * @param delta
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public void setOrientation(final int delta){
 		if (delta != this.orientation) this.update = true;
@@ -68,102 +71,145 @@ public class RunLengthMatrix {
 		this.distance = distance;
 	}
 	
+	/**
+	 * Quantizes the band in the given number of grey levels (e.g., from 8 to 256), which split the range of the band in equal parts, so the
+	 * matrix is a dense array of counts (see {@link #getCounts()}) and the runs are made of pixels of the same level. If 0, which is the
+	 * default, the grey values are compared as they are.
+	 * @param levels
+	 */
+	public void setGreyLevels(final int levels){
+		if (levels != this.greyLevels) this.update = true;
+		this.greyLevels = levels;
+	}
+	public int getGreyLevels(){return greyLevels;}
+	
+	//whether each pixel is within the kernel radius from the center of the image
+	private boolean[] getRegion(){
+		final int width = image.getWidth(), height = image.getHeight();
+		final float centralX = ((width - 1)/2f),
+				centralY = ((height - 1)/2f);
+		final boolean[] region = new boolean[width*height];
+		for (int i=0; i<height; i++)
+			for (int j=0; j<width; j++)
+				region[i*width + j] = distance.compute(centralX, centralY, j, i) <= kernelRadius;
+		return region;
+	}
+	
+	private RunLengthCounts bufferedCounts = null;
+	/**
+	 * Returns the dense run length matrix of the orientation, with the grey levels set by {@link #setGreyLevels(int)}, or 256 levels if
+	 * none were set.
+	 * @return
+	 */
+	public RunLengthCounts getCounts(){
+		if (lastHash == this.image.hashCode() && !update && bufferedCounts != null) return bufferedCounts;
+		bufferedCounts = getCounts(orientation)[0];
+		bufferedMatrix = null;
+		update = false;
+		lastHash = this.image.hashCode();
+		return bufferedCounts;
+	}
+	/**
+	 * Returns the dense run length matrices of several orientations (e.g., {@link RunLengthCounts#ORIENTATIONS}), computed together in a
+	 * single pass over the band.
+	 * @param orientations
+	 * @return
+	 */
+	public RunLengthCounts[] getCounts(final int... orientations){
+		final int levels = (greyLevels > 0) ? greyLevels : 256, width = image.getWidth(), height = image.getHeight();
+		final double min = image.getMinimalIntesity(band), max = image.getMaximalIntensity(band);
+		final int[] pixels = new int[width*height];
+		final double[] row = new double[width];
+		for (int i=0; i<height; i++){
+			image.getRow(i, band, row);
+			for (int j=0; j<width; j++) pixels[i*width + j] = CoOccurrenceCounts.getLevel(row[j], min, max, levels);
+		}
+		return RunLengthCounts.getCounts(pixels, getRegion(), width, height, levels, orientations);
+	}
+	
 	private TreeMap<Double, TreeMap<Integer, Integer>> bufferedMatrix = null;
 	/**
 	 * Returns a TreeMap that contains the grey value as the first key and the number of consecutive occurrences of this value given a certain orientation
 	 * as the second key. The result of the treemap is the number of consecutive occurrences. For instance, getMatrix().get(200).get(2). In this case we would
 	 * be looking for how many times the grey value 200 occurred with length of 2, i.e., occurred two times consecutive (two pixels of 200, one after the other).
+	 * Each maximal run of the region is counted once, and if grey levels are set, the keys are the levels.
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public TreeMap<Double, TreeMap<Integer, Integer>> getMatrix(){
-		if ((lastHash == this.image.hashCode() || update) && bufferedMatrix != null) return bufferedMatrix;
+		if (greyLevels > 0){
+			final RunLengthCounts counts = getCounts();
+			final TreeMap<Double, TreeMap<Integer, Integer>> matrix = new TreeMap<Double, TreeMap<Integer, Integer>>();
+			for (int g=0; g<counts.getLevels(); g++){
+				for (int l=1; l<=counts.getMaxLength(); l++){
+					if (counts.get(g, l) == 0) continue;
+					if (!matrix.containsKey((double) g)) matrix.put((double) g, new TreeMap<Integer, Integer>());
+					matrix.get((double) g).put(l, counts.get(g, l));
+				}
+			}
+			return matrix;
+		}
+		if (lastHash == this.image.hashCode() && !update && bufferedMatrix != null) return bufferedMatrix;
 		update = false;
+		lastHash = this.image.hashCode();
 		
 		TreeMap<Double, TreeMap<Integer, Integer>> matrix = new TreeMap<Double, TreeMap<Integer, Integer>>();
 		
-		int dx = 0, dy = 0;
-		switch(orientation){
-		case 0:
-			dx = 1;
-			break;
-		case 45:
-			dx = 1; dy = 1;
-			break;
-		case 90:
-			dy = 1;
-			break;
-		case 135:
-			dx = -1;
-			dy = 1;
-			break;
-		}
+		final int[] step = RunLengthCounts.getStep(orientation);
+		final int dx = step[0], dy = step[1], width = image.getWidth(), height = image.getHeight();
+		final boolean[] region = getRegion();
 		
-		float centralX = ((image.getWidth() - 1)/2f),
-				centralY = ((image.getHeight() - 1)/2f);
-		
-		int length = 0;
-		double p1;
-		int currentX = dx, currentY = dy;
-		for (int i=0; i<image.getHeight(); i++){
-			for (int j=0; j<image.getWidth(); j++){
-				if (distance.compute(centralX, centralY, j, i) > kernelRadius) continue;
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++){
+				if (!region[i*width + j]) continue;
 				
-				p1 = image.getPixel(j, i, band);
+				final double p1 = image.getPixel(j, i, band);
 				
-				currentX = dx; currentY = dy;
-				length = 1;
+				//the run is counted from its first pixel only
+				final int px = j - dx, py = i - dy;
+				if (px >= 0 && px < width && py >= 0 && region[py*width + px] && image.getPixel(px, py, band) == p1) continue;
+				
+				int length = 1, currentX = j + dx, currentY = i + dy;
+				while (currentX >= 0 && currentX < width && currentY < height && region[currentY*width + currentX] &&
+						image.getPixel(currentX, currentY, band) == p1){
+					length++;
+					currentX += dx;
+					currentY += dy;
+				}
 				
-				//for length 1
 				if (!matrix.containsKey(p1)) matrix.put(p1, new TreeMap<Integer, Integer>());
 				
 				if (matrix.get(p1).containsKey(length))
-					matrix.get(p1).put(length, matrix.get(p1).remove(length) + 1);
+					matrix.get(p1).put(length, matrix.get(p1).get(length) + 1);
 				else
 					matrix.get(p1).put(length, 1);
-				//
-				
-				if (j + currentX >= 0 && j + currentX < image.getWidth() && i + currentY < image.getHeight()){
-					while (p1 == image.getPixelBoundaryMode(j + currentX, i + currentY, band)){
-						if (j + currentX < 0 || j + currentX >= image.getWidth() || i + currentY >= image.getHeight()) break;
-						
-						length++;
-						
-						if (!matrix.containsKey(p1)) matrix.put(p1, new TreeMap<Integer, Integer>());
-						
-						if (matrix.get(p1).containsKey(length))
-							matrix.get(p1).put(length, matrix.get(p1).remove(length) + 1);
-						else
-							matrix.get(p1).put(length, 1);
-							
-						currentX += dx;
-						currentY += dy;
-					}
-				}
-				
 			}
 		}
 		
 		bufferedMatrix = matrix;
+		bufferedCounts = null;
 		return matrix;
 	}
 
 	private ArrayList<Double> values;
 	private ArrayList<Integer> lengths;
 	public int[][] getRawMatrix(){
+		if (greyLevels > 0){
+			final RunLengthCounts counts = getCounts();
+			values = new ArrayList<Double>(greyLevels);
+			for (int g=0; g<greyLevels; g++) values.add((double) g);
+			lengths = new ArrayList<Integer>(counts.getMaxLength());
+			for (int l=1; l<=counts.getMaxLength(); l++) lengths.add(l);
+			return counts.toArray();
+		}
 		
 		TreeMap<Double, TreeMap<Integer, Integer>> matrix = getMatrix();
-		values = new ArrayList<Double>(matrix.size());
-		lengths = new ArrayList<Integer>();
+		values = new ArrayList<Double>(matrix.keySet());
 		
-		for (double p1 : matrix.keySet()){
-			if (!values.contains(p1)) values.add(p1);
-			
-			for (int l : matrix.get(p1).keySet()){
-				if (!lengths.contains(l))
-					lengths.add(l);
-			}
-		}
+		//the set keeps the lengths sorted
+		TreeSet<Integer> lengthSet = new TreeSet<Integer>();
+		for (double p1 : matrix.keySet()) lengthSet.addAll(matrix.get(p1).keySet());
+		lengths = new ArrayList<Integer>(lengthSet);
 		
 		int[][] pMatrix = new int[matrix.size()][lengths.size()];
 		
@@ -219,6 +265,7 @@ public class RunLengthMatrix {
 	
 	
 	public double getGreyLevelNonUniformity(){
+		if (greyLevels > 0) return getCounts().getGreyLevelNonUniformity();
 		TreeMap<Double, TreeMap<Integer, Integer>> matrix = getMatrix();
 		
 		double sum = 0, straightSum = 0;
@@ -235,7 +282,12 @@ public class RunLengthMatrix {
 	}
 	
 	
+	/**
+	 * Returns the number of runs divided by the number of pixels of the image, or of the region if grey levels are set.
+	 * @return
+	 */
 	public double getRunPercentage(){
+		if (greyLevels > 0) return getCounts().getRunPercentage();
 		TreeMap<Double, TreeMap<Integer, Integer>> matrix = getMatrix();
 		
 		double straightSum = 0;
@@ -1,11 +1,14 @@
 package morphology;
 
+import java.util.Arrays;
+
+import filters.SlidingMinMax;
 import image.Image;
 import image.ImageOperation;
 
 /**
  * General class for morphology, including dilations, erosions, reconstructions, etc.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Morphology implements MorphologyConstants{
 	
@@ -84,27 +87,87 @@ public class Morphology implements MorphologyConstants{
 		final int tX = (int) (Math.ceil(structElement.getHeight()/2f) - 1),
 				tY = (int) (Math.ceil(structElement.getWidth()/2f) - 1);
 		
-		//esse for itera os valores i e j de acordo com a posio do structElement(structuring element) em cima da imagem source
+		//esse for itera os valores i e j de acordo com a posição do structElement(structuring element) em cima da imagem source
 		for (int i=(int)-tY + y; i<= tY + y; i++){
 			for (int j=(int) -tX + x; j<= tX + x; j++){
-				//se as variveis i e j no estiverem extrapolando os limites da imagem src e no forem igual s coordenadas do pixel central do structuring element
+				//se as variáveis i e j não estiverem extrapolando os limites da imagem src e não forem igual às coordenadas do pixel central do structuring element
 				if (j >= 0 && i >=0 && j < src.getWidth() && i < src.getHeight() /*&& !(i == y && j == i)*/){
-					double sub = 0; //subtrao
+					double sub = 0; //subtração
 					int structBand = (structElement.getNumBands() > band ? band : structElement.getNumBands() - 1);
 					double structValue = structElement.getPixel(j-x+tX, i-y+tY, structBand);
 					if (structValue == 255) structValue = max;
-					if (!dilate) sub = src.getPixel(j, i, band) - structValue; //se for pra eroso
+					if (!dilate) sub = src.getPixel(j, i, band) - structValue; //se for pra erosão
 					else sub = (max-structValue) - src.getPixel(j, i, band); //se for pra dilatar
 					if (sub < min)
 						min = sub;
 				}
 			}
 		}
-		double result = min+max; //para imagens binrias 'min' pode ser -255 ou 0
+		double result = min+max; //para imagens binárias 'min' pode ser -255 ou 0
 		if (dilate) result = max-result; //inverter a imagem se for pra dilatar
 
 		//System.out.println(result);
 		return result;
 	}
 	
+	/**
+	 * Tells whether all the pixels of each band of the structuring element read by {@link #getDilateErodeCentralValue} have the same value
+	 * (e.g., {@link #STRUCT_SUP} and {@link #STRUCT_SIMPLE_BINARY_RECT}), in which case the image can be dilated or eroded with
+	 * {@link #dilateOrErodeRectangle}.
+	 * @param structElement
+	 * @return
+	 */
+	public static boolean isFlatRectangle(Image structElement){
+		final int tX = (int) (Math.ceil(structElement.getHeight()/2f) - 1),
+				tY = (int) (Math.ceil(structElement.getWidth()/2f) - 1);
+		if (2*tX >= structElement.getWidth() || 2*tY >= structElement.getHeight()) return false;
+		for (int b=0; b<structElement.getNumBands(); b++)
+			for (int i=0; i<=2*tY; i++)
+				for (int j=0; j<=2*tX; j++)
+					if (structElement.getPixel(j, i, b) != structElement.getPixel(0, 0, b)) return false;
+		return true;
+	}
+	
+	/**
+	 * Dilates or erodes a band of src into dst as {@link #getDilateErodeCentralValue} does for each pixel, for structuring elements
+	 * that are {@link #isFlatRectangle flat rectangles}. The maximum or minimum of each window is found with {@link SlidingMinMax},
+	 * so each pixel costs the same whatever the size of the structuring element.
+	 * @param src
+	 * @param structElement
+	 * @param band
+	 * @param dilate
+	 * @param dst
+	 */
+	public static void dilateOrErodeRectangle(Image src, Image structElement, int band, boolean dilate, Image dst){
+		double max = src.getMaximalIntensity(band);
+		if (max < 255) max = 255;
+		
+		final int tX = (int) (Math.ceil(structElement.getHeight()/2f) - 1),
+				tY = (int) (Math.ceil(structElement.getWidth()/2f) - 1);
+		double structValue = structElement.getPixel(0, 0, (structElement.getNumBands() > band ? band : structElement.getNumBands() - 1));
+		if (structValue == 255) structValue = max;
+		
+		//the pixels outside the image are not regarded, so they are padded with values that are never the extremum
+		final int width = src.getWidth(), height = src.getHeight(), stride = width + 2*tX;
+		final double[] values = new double[(height + 2*tY)*stride], row = new double[width];
+		Arrays.fill(values, dilate ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+		for (int i=0; i<height; i++){
+			src.getRow(i, band, row);
+			System.arraycopy(row, 0, values, (i + tY)*stride + tX, width);
+		}
+		final double[] extrema = new double[width*height];
+		SlidingMinMax.filter(values, width, tX, tY, height, dilate, extrema);
+		
+		for (int i=0; i<height; i++){
+			for (int j=0; j<width; j++){
+				//the same operations of getDilateErodeCentralValue, applied to the extremum of the window
+				final double sub = dilate ? (max-structValue) - extrema[i*width + j] : extrema[i*width + j] - structValue;
+				double result = (sub < 0 ? sub : 0)+max;
+				if (dilate) result = max-result;
+				row[j] = result;
+			}
+			dst.setRow(i, band, row);
+		}
+	}
+	
 }
@@ -9,7 +9,7 @@ import similarity.SimilarityMeasure;
 
 /**
  * Still needs to be finished.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class TemplateMatching{
 	private Image reference = null, template = null, referenceWindow = null;
@@ -25,6 +25,10 @@ public class TemplateMatching{
 	public void setTemplatePosition(int x, int y){
 		this.templateX = x;
 		this.templateY = y;
+		if (template.getNumBands() <= 3){ //no transparency, the window is just a view of the reference image
+			referenceWindow = reference.getSubImage(x, y, template.getWidth(), template.getHeight(), 0); //if exceeds the boundary of the image then treats as 0
+			return;
+		}
 		referenceWindow = new Image(template.getWidth(), template.getHeight());
 		double pixelValue = 0;
 		for (int i=0; i<template.getHeight(); i++){
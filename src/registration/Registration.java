@@ -66,7 +66,7 @@ public class Registration {
 	 * Processes the registration, the registration parameters and images must have been set already
 	 * @return - the best affine transform of the registration
 	 * @throws Exception
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public Image process() {
 		String log = "", bestName = "", bestParams = "";
@@ -115,7 +115,7 @@ public class Registration {
 	 * @param params
 	 * @return - the best affine transform of the registration
 	 * @throws Exception
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public Image process(Image referenceImage, Image sensibleImage, RegistrationParameters params) throws Exception{
 		this.setParameters(params);
@@ -260,7 +260,7 @@ public class RegistrationParameters {
 	/**
 	 * Returns the parameters of the affine transformation that is currently being iterated
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public String getParametersAsString(){
 		int idx = (tCounter - 1 < 0) ? 0 : tCounter - 1;
@@ -7,7 +7,7 @@ import image.Image;
 
 /**
  * Class to compute the Chamfer Distance. It is mainly used with binary images, but we have made it to work with grey images as well.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class ChamferDistance extends SimilarityMeasure {
 	public static final Distance EUCLIDEAN_DISTANCE = Distance.EUCLIDEAN_DISTANCE, MANHATTAN_DISTANCE = Distance.MANHATTAN_DISTANCE, 
@@ -6,7 +6,7 @@ import image.Image;
 
 /**
  * A class implementing a tweaked version of the Dice Index.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class DiceIndex extends SimilarityMeasure{
 	private float relevance = 0f;
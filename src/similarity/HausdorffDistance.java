@@ -6,7 +6,7 @@ import image.Image;
 
 /**
  * A class implementing the Hausdorff distance. Brute force, which is very slow. Works with binary images only.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class HausdorffDistance extends SimilarityMeasure{
 	public static final Distance EUCLIDEAN_DISTANCE = Distance.EUCLIDEAN_DISTANCE, MANHATTAN_DISTANCE = Distance.MANHATTAN_DISTANCE, 
@@ -7,7 +7,7 @@ import image.Image;
 /**
  * Implements a hybrid sum of differences. More details on: http://www.cmpbjournal.com/article/S0169-2607(15)00244-8/abstract
  * Works with grey images.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class HybridSumOfDifferences extends SimilarityMeasure {
 	
@@ -59,13 +59,16 @@ public class HybridSumOfDifferences extends SimilarityMeasure {
 
 			long fScore = 0, fCounter = 1;
 			double delta = 0, mSample = 0;
+			final double[] row1 = new double[img1.getWidth()], row2 = new double[img2.getWidth()];
 			for (int b=bandI; b<bandF; b++){
-				img1MaxIntensity = img1.getMaximalIntensity(b);
-				img2MaxIntensity = img2.getMaximalIntensity(b);
+				img1MaxIntensity = img1.getStatistics(b).getMaximum();
+				img2MaxIntensity = img2.getStatistics(b).getMaximum();
 				for (int i=0; i<height; i++){
+					img1.getRow(i, b, row1);
+					img2.getRow(i, b, row2);
 					for (int j=0; j<width; j++){
-						delta = img1.getPixel(j, i, b);
-						mSample = (img2.getPixel(j, i, b)*(img1MaxIntensity/img2MaxIntensity));
+						delta = row1[j];
+						mSample = (row2[j]*(img1MaxIntensity/img2MaxIntensity));
 						fCounter = 1;
 						//if (img1.getPixel(j, i, b) >= 0){
 							if (mSample > threshold){
@@ -96,8 +99,8 @@ public class HybridSumOfDifferences extends SimilarityMeasure {
 			BigDecimal fScore = BigDecimal.valueOf(0), fCounter = BigDecimal.valueOf(1);
 			double delta = 0, mSample = 0;
 			for (int b=bandI; b<bandF; b++){
-				img1MaxIntensity = img1.getMaximalIntensity(b);
-				img2MaxIntensity = img2.getMaximalIntensity(b);
+				img1MaxIntensity = img1.getStatistics(b).getMaximum();
+				img2MaxIntensity = img2.getStatistics(b).getMaximum();
 				for (int i=0; i<height; i++){
 					for (int j=0; j<width; j++){
 						delta = img1.getPixel(j, i, b);
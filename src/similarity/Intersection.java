@@ -1,12 +1,11 @@
 package similarity;
 
-import java.util.Set;
-
+import image.Histogram;
 import image.Image;
 
 /**
  * Implements an intersection between images, counts how many intensities they have in common.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class Intersection extends SimilarityMeasure {
 
@@ -32,14 +31,14 @@ public class Intersection extends SimilarityMeasure {
 	public double compare(Image img1, Image img2, int band) {
 		final int bandI = (band == ALL_BANDS) ? 0 : band, bandF = (band == ALL_BANDS) ? Math.min(img1.getNumBands(), img2.getNumBands()) : band + 1;
 		
-		Set<Double> i1 = null, i2 = null;
+		Histogram h1 = null, h2 = null;
 		
 		long sum = 0;
 		for (int b=bandI; b<bandF; b++){
-			i1 = img1.getIntensities(b);
-			i2 = img2.getIntensities(b);
-			for (double k : i2){
-				if (i1.contains(k)) sum++;
+			h1 = img1.getBandHistogram(b);
+			h2 = img2.getBandHistogram(b);
+			for (int k=0; k<h2.getNumBins(); k++){
+				if (h2.getCount(k) > 0 && h1.contains(h2.getValue(k))) sum++;
 			}
 		}
 		return sum/(double)bandF;
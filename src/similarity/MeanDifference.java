@@ -4,7 +4,7 @@ import image.Image;
 
 /**
  * Class implementing a simple mean difference measure. Works for binary and grey images.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class MeanDifference extends SumOfDifferences{
 	
@@ -5,7 +5,7 @@ import image.Image;
 
 /**
  * Implements a mutual information measure. The lower the better.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class MutualInformation extends WeightedMutualInformation{
 	
@@ -3,10 +3,11 @@ package similarity;
 import java.math.BigDecimal;
 
 import image.Image;
+import image.Statistics;
 
 /**
  * Normalized cross correlation measure.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class NormalizedCrossCorrelation extends SimilarityMeasure{
 
@@ -33,16 +34,29 @@ public class NormalizedCrossCorrelation extends SimilarityMeasure{
 			double img1MeanIntensity = 0, img2MeanIntensity = 0;
 			double result = 0;
 			
+			//when both images have the same size, the denominators are the variances already kept by the images
+			final boolean sameSize = img1.getWidth() == img2.getWidth() && img1.getHeight() == img2.getHeight();
+			final double[] row1 = new double[img1.getWidth()], row2 = new double[img2.getWidth()];
 			for (int b=bandI; b<bandF; b++){
-				img1MeanIntensity = img1.getAverageIntensity(b);
-				img2MeanIntensity = img2.getAverageIntensity(b);
+				final Statistics s1 = img1.getStatistics(b), s2 = img2.getStatistics(b);
+				img1MeanIntensity = s1.getMean();
+				img2MeanIntensity = s2.getMean();
 				for (int i=0; i<height; i++){
+					img1.getRow(i, b, row1);
+					img2.getRow(i, b, row2);
 					for (int j=0; j<width; j++){
-						numerator += (img1.getPixel(j, i, b)-img1MeanIntensity)*(img2.getPixel(j, i, b)-img2MeanIntensity);
-						denominator1 += Math.pow((img1.getPixel(j, i, b)-img1MeanIntensity), 2);
-						denominator2 += Math.pow((img2.getPixel(j, i, b)-img2MeanIntensity), 2);
+						final double d1 = row1[j]-img1MeanIntensity, d2 = row2[j]-img2MeanIntensity;
+						numerator += d1*d2;
+						if (!sameSize){
+							denominator1 += d1*d1;
+							denominator2 += d2*d2;
+						}
 					}
 				}
+				if (sameSize){
+					denominator1 += s1.getVariance()*s1.getCount();
+					denominator2 += s2.getVariance()*s2.getCount();
+				}
 				result += Math.abs(numerator/(Math.pow(denominator1*denominator2,1/2f)));
 			}
 			
@@ -65,7 +65,7 @@ public abstract class SimilarityMeasure {
 	 * @param img1
 	 * @param img2
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double compareUnified(Image img1, Image img2){
 		if (invert()) return Long.MAX_VALUE - compare(img1, img2);
@@ -79,7 +79,7 @@ public abstract class SimilarityMeasure {
 	 * @param img2
 	 * @param band
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public double compareUnified(Image img1, Image img2, int band){
 		if (invert()) return Long.MAX_VALUE - compare(img1, img2, band);
@@ -146,7 +146,7 @@ public abstract class SimilarityMeasure {
 	 * Returns false if it is a measure like Mean Differences, Hausdorff Distance, etc, where the lower the number returned the better
 	 * and returns true otherwise
 	 * @return
-	 * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+	 * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
 	 */
 	public abstract boolean invert();
 }
@@ -6,7 +6,7 @@ import image.Image;
 
 /**
  * Sum of differences of the errors. Works for both binary (in this case it will be the hamming distance) and also for grey images. Faster than {@link MeanDifference}.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class SumOfDifferences extends SimilarityMeasure{
 	private float g = 1;
@@ -42,10 +42,13 @@ public class SumOfDifferences extends SimilarityMeasure{
 		final int width = Math.min(img1.getWidth(), img2.getWidth()), height = Math.min(img1.getHeight(), img2.getHeight());
 		if (this.fastComputation()){//for commonplace images
 			long sum = 0;
+			final double[] row1 = new double[img1.getWidth()], row2 = new double[img2.getWidth()];
 			for (int b=bandI; b<bandF; b++){
 				for (int i=0; i<height; i++){
+					img1.getRow(i, b, row1);
+					img2.getRow(i, b, row2);
 					for (int j=0; j<width; j++){
-						sum += Math.abs(Math.pow(img1.getPixel(j, i, b)-img2.getPixel(j, i, b), g));
+						sum += Math.abs(Math.pow(row1[j]-row2[j], g));
 					}
 				}
 			}
@@ -9,7 +9,7 @@ import image.Image;
  * A weighted mutual information combing the mutual information and mean difference measures. 
  * More details on: http://www.cmpbjournal.com/article/S0169-2607(15)00244-8/abstract , be advised that the WMI equation in this paper is inverted (the higher the better). 
  * Here, the lower the better.
- * @author rick Oliveira Rodrigues (erickr@id.uff.br)
+ * @author Érick Oliveira Rodrigues (erickr@id.uff.br)
  */
 public class WeightedMutualInformation extends SimilarityMeasure {
 